@@ -0,0 +1,44 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of {@link com.geophile.z.Cursor}. Instead of blocking, each operation returns a
+ * {@link java.util.concurrent.CompletableFuture}, which is completed when the operation is done, or completed
+ * exceptionally, e.g. with an {@link java.io.IOException}, if the operation fails. An operation must not be
+ * started until the previous operation on the same AsyncCursor has completed.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} visited by this AsyncCursor.
+ */
+
+public abstract class AsyncCursor<RECORD extends Record>
+{
+    // AsyncCursor interface
+
+    /**
+     * Moves the AsyncCursor as for {@link com.geophile.z.Cursor#next()}. If the index's records are not stable,
+     * the record is valid only until the next operation on this AsyncCursor is started.
+     * @return A future completed with the {@link com.geophile.z.Record} at the new position, or with null if the
+     * AsyncCursor was moved past the last record.
+     */
+    public abstract CompletableFuture<RECORD> next();
+
+    /**
+     * Positions the AsyncCursor as for {@link com.geophile.z.Cursor#goTo(Record)}. The key may be modified by the
+     * caller as soon as this method returns.
+     * @param key The key to search for.
+     * @return A future completed when the AsyncCursor has been positioned.
+     */
+    public abstract CompletableFuture<Void> goTo(RECORD key);
+
+    /**
+     * Mark the AsyncCursor as no longer usable. This implementation does nothing.
+     */
+    public void close()
+    {}
+}
@@ -0,0 +1,85 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The asynchronous counterpart of {@link com.geophile.z.Index}, for an index in a high-latency store. Operations
+ * that may wait, e.g. for I/O, return a {@link java.util.concurrent.CompletableFuture} instead of blocking, so that
+ * a thread is not tied up for each operation in progress. An AsyncIndex is searched using an
+ * {@link com.geophile.z.AsyncCursor}, and can be joined with another by an
+ * {@link com.geophile.z.AsyncSpatialJoin}.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} contained by this AsyncIndex.
+ */
+
+public abstract class AsyncIndex<RECORD extends Record>
+{
+    /**
+     * Adds a {@link com.geophile.z.Record} to this index, as for {@link com.geophile.z.Index#add(Record)}.
+     * The record may be modified by the caller as soon as this method returns.
+     * @param record The record being added to this AsyncIndex.
+     * @return A future completed when the record has been added.
+     */
+    public abstract CompletableFuture<Void> add(RECORD record);
+
+    /**
+     * Removes a {@link com.geophile.z.Record} from this index, as for
+     * {@link com.geophile.z.Index#remove(long, com.geophile.z.Record.Filter)}.
+     * @param z z-value of the record to be removed.
+     * @param filter identifies which {@link com.geophile.z.Record} with the given z-value should be removed.
+     * @return A future completed with the value that {@link com.geophile.z.Index#remove(long, Record.Filter)}
+     * would return.
+     */
+    public abstract CompletableFuture<Boolean> remove(long z, Record.Filter<RECORD> filter);
+
+    /**
+     * Returns an {@link com.geophile.z.AsyncCursor} that can visit this AsyncIndex's records. The AsyncCursor must
+     * be positioned by {@link com.geophile.z.AsyncCursor#goTo(Record)} before it is used.
+     * @return An {@link com.geophile.z.AsyncCursor} that can visit this AsyncIndex's records.
+     */
+    public abstract AsyncCursor<RECORD> cursor();
+
+    /**
+     * Returns a {@link com.geophile.z.Record} that can be added to this AsyncIndex.
+     * @return A {@link com.geophile.z.Record} that can be added to this AsyncIndex.
+     */
+    public abstract RECORD newRecord();
+
+    /**
+     * Returns a {@link com.geophile.z.Record} that can be used as a key to search this AsyncIndex.
+     * @return A {@link com.geophile.z.Record} that can be used as a key to search this AsyncIndex.
+     */
+    public RECORD newKeyRecord()
+    {
+        return newRecord();
+    }
+
+    /**
+     * Indicates whether records retrieved from this AsyncIndex are stable, as for
+     * {@link com.geophile.z.Index#stableRecords()}.
+     * @return true iff records retrieved from this AsyncIndex are stable.
+     */
+    public abstract boolean stableRecords();
+
+    /**
+     * Generates the z-values that a spatial join must search for, in looking for the largest ancestor of z
+     * contained in this AsyncIndex, as for {@link com.geophile.z.Index#ancestorCandidates(long, long, long[])}.
+     * This implementation returns all ancestors of z greater than zLowerBound.
+     * @param z The z-value whose ancestors are sought.
+     * @param zLowerBound Only ancestors greater than this z-value are needed.
+     * @param candidates Receives z, followed by the candidate ancestors of z. Must have room for
+     *                   {@link com.geophile.z.space.SpaceImpl#MAX_Z_BITS} z-values.
+     * @return The number of z-values written to candidates.
+     */
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        return SpaceImpl.ancestorCandidates(z, zLowerBound, SpaceImpl.ALL_Z_LENGTHS, candidates);
+    }
+}
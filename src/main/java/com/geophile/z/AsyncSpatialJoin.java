@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+import com.geophile.z.spatialjoin.AsyncSpatialJoinImpl;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Provides the API for a spatial join of {@link com.geophile.z.AsyncIndex}es. The join uses the same algorithm as
+ * {@link com.geophile.z.SpatialJoin}, but runs as a state machine instead of blocking: When the join must wait for
+ * an {@link com.geophile.z.AsyncCursor} operation, it returns, and resumes in the thread that completes the
+ * operation. A thread is therefore not tied up for each join in progress, and thousands of joins against a
+ * high-latency store can be in progress at once.
+ * </p><p>
+ * Both indexes must contain the z-values of {@link com.geophile.z.SpatialObject}s in the same
+ * {@link com.geophile.z.Space}, e.g. as created by {@link com.geophile.z.SpatialIndex#add(SpatialObject,
+ * com.geophile.z.Record.Factory)}. Join output is passed to an {@link com.geophile.z.AsyncSpatialJoin.Output} as it
+ * is found. As with Duplicates.INCLUDE, the output may contain duplicates, and a Filter can remove false positives.
+ * </p>
+ */
+
+public abstract class AsyncSpatialJoin
+{
+    /**
+     * Creates and configures a new AsyncSpatialJoin object.
+     *
+     * @param filter   Used to eliminate false positives from the spatial join output.
+     * @param <LEFT>   Type of object passed to the left filter argument.
+     * @param <RIGHT>  Type of object passed to the right filter argument.
+     * @return A configured AsyncSpatialJoin object. All spatial joins computed using it will use the given filter.
+     */
+    public static <LEFT, RIGHT> AsyncSpatialJoin newAsyncSpatialJoin(SpatialJoin.Filter<LEFT, RIGHT> filter)
+    {
+        return new AsyncSpatialJoinImpl(filter);
+    }
+
+    /**
+     * Creates a new AsyncSpatialJoin object. False positives will be included in spatial join output.
+     * @return A new AsyncSpatialJoin object.
+     */
+    public static AsyncSpatialJoin newAsyncSpatialJoin()
+    {
+        return new AsyncSpatialJoinImpl(null);
+    }
+
+    /**
+     * Starts a spatial join of the given indexes.
+     *
+     * @param <LEFT_RECORD>  Type of {@link com.geophile.z.Record} in left.
+     * @param <RIGHT_RECORD> Type of {@link com.geophile.z.Record} in right.
+     * @param left           One spatial join input.
+     * @param right          The other spatial join input.
+     * @param output         Receives the spatial join output. Calls are made by one thread at a time, but not
+     *                       necessarily the same thread.
+     * @return A future completed when all output has been passed to output, or completed exceptionally if
+     * the join fails.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    CompletableFuture<Void> join(AsyncIndex<LEFT_RECORD> left,
+                                 AsyncIndex<RIGHT_RECORD> right,
+                                 Output<LEFT_RECORD, RIGHT_RECORD> output);
+
+    /**
+     * Receives the output of an asynchronous spatial join.
+     *
+     * @param <LEFT_RECORD>  Type of {@link com.geophile.z.Record} in the left input.
+     * @param <RIGHT_RECORD> Type of {@link com.geophile.z.Record} in the right input.
+     */
+    public interface Output<LEFT_RECORD, RIGHT_RECORD>
+    {
+        /**
+         * Receives a pair of (possibly) overlapping records.
+         *
+         * @param left  Record from the left input.
+         * @param right Record from the right input.
+         */
+        void add(LEFT_RECORD left, RIGHT_RECORD right);
+    }
+}
@@ -35,6 +35,40 @@ public abstract class Cursor<RECORD extends Record>
      */
     public abstract RECORD next() throws IOException, InterruptedException;
 
+    /**
+     * Retrieves up to max records, as if by successive calls to {@link #next()}. The z-value of the i-th record
+     * retrieved is stored in zs[i]. If records is not null, the i-th record is stored in records[i]: If the
+     * index's records are stable, then records[i] is set to the record itself. Otherwise the record is copied
+     * into records[i], which is first set to a new record if it is null, so that the records array can be reused
+     * across calls. On return, the Cursor is positioned as if next() had just returned the last record retrieved,
+     * so {@link #deleteCurrent()} applies to that record. However, if fewer than max records were retrieved because
+     * the end of the index was reached, the Cursor may instead have moved past the last record.
+     * <p>
+     * An implementation may retrieve fewer than max records, e.g. to avoid reading another page, even if more
+     * records remain. This implementation calls next() repeatedly. An implementation that retrieves records
+     * directly from its index's storage avoids the per-record cost of next(), including the copy of each
+     * record to the Cursor's current record.
+     * @param zs Receives the z-values of the records retrieved.
+     * @param records Receives the records retrieved, or null if only the z-values are needed.
+     * @param max The maximum number of records to retrieve. Must be positive.
+     * @return The number of records retrieved, or 0 if the Cursor was moved past the last record.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        int n = 0;
+        RECORD record;
+        while (n < max && (record = next()) != null) {
+            zs[n] = record.z();
+            if (records != null) {
+                batchRecord(records, n, record);
+            }
+            n++;
+        }
+        return n;
+    }
+
     /**
      * Position the Cursor at the {@link com.geophile.z.Record} with the given key. If there is
      * no such record, then the Cursor position is "between" records, and a call to {@link #next()}
@@ -45,6 +79,31 @@ public abstract class Cursor<RECORD extends Record>
      */
     public abstract void goTo(RECORD key) throws IOException, InterruptedException;
 
+    /**
+     * Position the Cursor at the {@link com.geophile.z.Record} with the given key, as for {@link #goTo(Record)}.
+     * The caller expects the key to be a short distance past the Cursor's current position, so an implementation
+     * may search forward from that position, and fall back to a search of the entire index only if the key
+     * is behind the Cursor or far ahead of it. The result is the same as that of {@link #goTo(Record)}, in all
+     * cases. This implementation calls {@link #goTo(Record)}.
+     * @param key The key to search for.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void goToForward(RECORD key) throws IOException, InterruptedException
+    {
+        goTo(key);
+    }
+
+    /**
+     * A hint that the Cursor may soon be positioned by {@link #goTo(Record)}, using a key whose z-value is z. An
+     * implementation may start retrieving the records at that position, e.g. by reading pages in the background,
+     * so that the goTo and the calls to {@link #next()} that follow don't have to wait for them. The Cursor's
+     * position is not changed, and the hint may be ignored. This implementation does nothing.
+     * @param z The z-value of a key that is likely to be passed to goTo.
+     */
+    public void prefetch(long z)
+    {}
+
     /**
      * Delete the record returned by the immediately preceding call to next.
      * The return value is true if a record was deleted. If the record returned was null,
@@ -83,10 +142,33 @@ public abstract class Cursor<RECORD extends Record>
         if (stableRecords) {
             current = record;
         } else {
-            record.copyTo(current);
+            if (record != recordBuffer) {
+                record.copyTo(recordBuffer);
+            }
+            current = recordBuffer;
+        }
+    }
+
+    // Stores record in records[i], as specified by nextBatch.
+    protected final void batchRecord(RECORD[] records, int i, RECORD record)
+    {
+        if (stableRecords) {
+            records[i] = record;
+        } else {
+            if (records[i] == null) {
+                records[i] = index.newRecord();
+            }
+            record.copyTo(records[i]);
         }
     }
 
+    // For an index whose records are not stable, returns the record into which current(RECORD) copies records. A
+    // record materialized directly into it need not be copied, so current(RECORD) doesn't copy it.
+    protected final RECORD recordBuffer()
+    {
+        return recordBuffer;
+    }
+
     protected State state()
     {
         return state;
@@ -100,13 +182,18 @@ public abstract class Cursor<RECORD extends Record>
 
     protected Cursor(Index<RECORD> index)
     {
+        this.index = index;
         stableRecords = index.stableRecords();
-        current = stableRecords ? null : index.newRecord();
+        recordBuffer = stableRecords ? null : index.newRecord();
     }
 
     // Object state
 
+    private final Index<RECORD> index;
     private final boolean stableRecords;
+    // For an index whose records are not stable, records are copied into recordBuffer. close() clears current
+    // but not recordBuffer, so that the cursor can be repositioned by goTo after it has been closed.
+    private final RECORD recordBuffer;
     private RECORD current;
     private State state = State.NEVER_USED;
 
@@ -6,6 +6,8 @@
 
 package com.geophile.z;
 
+import com.geophile.z.space.SpaceImpl;
+
 import java.io.IOException;
 
 /**
@@ -81,4 +83,41 @@ public abstract class Index<RECORD extends Record>
      * @return true iff records retrieved from this index are stable.
      */
     public abstract boolean stableRecords();
+
+    /**
+     * Returns the lengths of the z-values that may be present in this Index, as a bitmask: bit i is set if
+     * z-values of length i may be present. In an index of points, for example, all z-values have the same
+     * length. Bits need not be cleared when records are removed. This implementation returns a mask with the
+     * bit for every length set, for an Index that doesn't keep track of z-value lengths.
+     * @return A mask of the lengths of z-values that may be present in this Index.
+     */
+    public long zLengths()
+    {
+        return ALL_Z_LENGTHS;
+    }
+
+    /**
+     * Generates the z-values that a spatial join must search for, in looking for the largest ancestor of z
+     * contained in this Index. On return, candidates[0] is z, and candidates[1:n) contains the ancestors of z that
+     * are greater than zLowerBound and that may be present in this Index, in decreasing order (i.e., starting
+     * with the parent of z). The value returned is n. This implementation returns all ancestors of z greater than
+     * zLowerBound whose lengths may be present, according to {@link #zLengths()}. An Index that can determine
+     * cheaply that some of those z-values are not present should override this method and omit them.
+     * @param z The z-value whose ancestors are sought.
+     * @param zLowerBound Only ancestors greater than this z-value are needed.
+     * @param candidates Receives z, followed by the candidate ancestors of z. Must have room for
+     *                   {@link com.geophile.z.space.SpaceImpl#MAX_Z_BITS} z-values.
+     * @return The number of z-values written to candidates.
+     */
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        return SpaceImpl.ancestorCandidates(z, zLowerBound, zLengths(), candidates);
+    }
+
+    // For use by subclasses
+
+    /**
+     * A mask, as returned by {@link #zLengths()}, with the bit for every z-value length set.
+     */
+    protected static final long ALL_Z_LENGTHS = SpaceImpl.ALL_Z_LENGTHS;
 }
@@ -10,6 +10,7 @@ import com.geophile.z.spatialjoin.SpatialJoinImpl;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>Provides the API for specifying a spatial join.
@@ -24,6 +25,8 @@ import java.util.Iterator;
  * Duplicates.EXCLUDE suppresses duplicates, which is more convenient for applications, but
  * requires the storing of all returned results, and checking each
  * {@link com.geophile.z.Pair} to see whether it has already been returned.
+ * Duplicates.EXCLUDE_LOCAL also suppresses duplicates, deciding from each {@link com.geophile.z.Pair}'s z-values
+ * whether it is a duplicate, so that returned results do not have to be stored.
  * </p><p>
  * A spatial join may yield false positives, which a Filter can remove.
  * </p>
@@ -98,6 +101,51 @@ public abstract class SpatialJoin
                                                        SpatialIndex<RIGHT_RECORD> rightSpatialIndex)
         throws IOException, InterruptedException;
 
+    /**
+     * Computes a spatial join, passing each pair of (possibly) overlapping records to the consumer as soon as it is
+     * found. Unlike {@link #iterator(SpatialIndex, SpatialIndex)}, no {@link com.geophile.z.Pair} objects are
+     * created, and output is not buffered, (except as needed to suppress duplicates, with Duplicates.EXCLUDE).
+     * The join stops early if the consumer returns false.
+     *
+     * @param <LEFT_RECORD>     Type of {@link com.geophile.z.Record} in leftSpatialIndex.
+     * @param <RIGHT_RECORD>    Type of {@link com.geophile.z.Record} in rightSpatialIndex.
+     * @param leftSpatialIndex  One spatial join input.
+     * @param rightSpatialIndex The other spatial join input.
+     * @param consumer          Receives the spatial join output.
+     * @return true if the spatial join was completed, false if it was stopped by the consumer.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    boolean join(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                 SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                 PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer)
+        throws IOException, InterruptedException;
+
+    /**
+     * Returns an {@link java.util.Iterator} that will provide access to spatial join results, computed in parallel.
+     * z-space is divided into partitions containing roughly equal numbers of the inputs' z-values, and
+     * the join of each partition is computed by a task run by the given executor. Each {@link com.geophile.z.Pair}
+     * is reported by exactly one partition, so the results are the same as for
+     * {@link #iterator(SpatialIndex, SpatialIndex)}, but in no particular order. InputObservers are not notified.
+     * <p>
+     * The indexes must support concurrent reads by multiple cursors, and must not be updated until the
+     * {@link java.util.Iterator} has been consumed. The {@link java.util.Iterator} should be consumed to the end,
+     * since tasks wait when results are produced faster than they are consumed.
+     *
+     * @param <LEFT_RECORD>     Type of {@link com.geophile.z.Record} in leftSpatialIndex.
+     * @param <RIGHT_RECORD>    Type of {@link com.geophile.z.Record} in rightSpatialIndex.
+     * @param leftSpatialIndex  One spatial join input.
+     * @param rightSpatialIndex The other spatial join input.
+     * @param executor          Runs the tasks computing the join of each partition.
+     * @param partitions        The number of partitions. Fewer may be used, e.g. for small inputs.
+     * @return An {@link java.util.Iterator} providing access to spatial join results.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> parallelIterator(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                               SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                               ExecutorService executor,
+                                                               int partitions)
+        throws IOException, InterruptedException;
+
     /**
      * Returns an {@link java.util.Iterator} that will provide access to spatial join results.
      * The objects accessed through the {@link java.util.Iterator} are {@link com.geophile.z.SpatialObject}s
@@ -130,7 +178,20 @@ public abstract class SpatialJoin
          * is somewhat slower, and has a higher memory requirement, proportional to the number of
          * {@link com.geophile.z.Pair}s retrieved, but should be more convenient for the application.
          */
-        EXCLUDE
+        EXCLUDE,
+
+        /**
+         * Suppress duplicate {@link com.geophile.z.Pair}s without remembering the {@link com.geophile.z.Pair}s
+         * already retrieved. Two spatial objects are paired once for each pair of their z-values that overlap, and
+         * a {@link com.geophile.z.Pair} is returned only for the z-value pair whose intersection comes first
+         * in z-order. The memory requirement is constant, but the z-values of spatial objects must be recomputed,
+         * (except where an object from a single-cell input is contained by a z-value of the other object,
+         * e.g. for points). Records must therefore be {@link com.geophile.z.index.RecordWithSpatialObject}s,
+         * added to their spatial indexes using the spatial objects' own maxZ.
+         * For the one/many join, whose output is bounded by the size of the data, this option is equivalent
+         * to EXCLUDE.
+         */
+        EXCLUDE_LOCAL
     }
 
     /**
@@ -199,4 +260,22 @@ public abstract class SpatialJoin
          */
         boolean overlap(LEFT left, RIGHT right);
     }
+
+    /**
+     * Receives the output of {@link #join(SpatialIndex, SpatialIndex, PairConsumer)}.
+     *
+     * @param <LEFT_RECORD>  Type of {@link com.geophile.z.Record} in the left input.
+     * @param <RIGHT_RECORD> Type of {@link com.geophile.z.Record} in the right input.
+     */
+    public interface PairConsumer<LEFT_RECORD, RIGHT_RECORD>
+    {
+        /**
+         * Receives a pair of (possibly) overlapping records.
+         *
+         * @param left  Record from the left input.
+         * @param right Record from the right input.
+         * @return true to continue the spatial join, false to stop it.
+         */
+        boolean accept(LEFT_RECORD left, RIGHT_RECORD right);
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+import java.nio.LongBuffer;
+
+/**
+ * A blocked Bloom filter of z-values, used by an {@link com.geophile.z.Index} to rule out the presence of
+ * z-values without searching for them. See {@link com.geophile.z.Index#ancestorCandidates(long, long, long[])}.
+ * The bits for a z-value are all in one 512-bit block, so a lookup touches a single cache line, and for a filter
+ * read from a file, a single page. A filter using 10 bits per z-value has a false positive rate of about 1%.
+ * z-values cannot be removed from a BloomFilter. An index that removes records either retains the z-values in
+ * its filter, which causes false positives but not false negatives, or builds a new filter.
+ * <p>
+ * The filter's state is a sequence of longs, so that it can be stored in a file, and used directly from
+ * a mapping of the file. A BloomFilter is not safe for use by multiple threads while z-values are being added.
+ */
+
+public class BloomFilter
+{
+    // BloomFilter interface
+
+    /**
+     * Adds a z-value to the filter.
+     * @param z The z-value to add.
+     */
+    public void add(long z)
+    {
+        long hash = mix(z);
+        int block = block(hash);
+        long bits = mix(hash + SEED);
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (int) bits & BLOCK_MASK;
+            int word = block + (bit >>> 6);
+            words.put(word, words.get(word) | 1L << bit);
+            bits >>>= BLOCK_BITS;
+        }
+    }
+
+    /**
+     * Indicates whether the filter might contain the given z-value.
+     * @param z The z-value to look for.
+     * @return false if the z-value has definitely not been added, true if it might have been added.
+     */
+    public boolean mightContain(long z)
+    {
+        long hash = mix(z);
+        int block = block(hash);
+        long bits = mix(hash + SEED);
+        boolean present = true;
+        for (int i = 0; present && i < HASHES; i++) {
+            int bit = (int) bits & BLOCK_MASK;
+            present = (words.get(block + (bit >>> 6)) & 1L << bit) != 0;
+            bits >>>= BLOCK_BITS;
+        }
+        return present;
+    }
+
+    /**
+     * Returns the filter's state, for storage. The state can be used to recreate the filter, by
+     * {@link #BloomFilter(java.nio.LongBuffer)}.
+     * @return The filter's state, a buffer whose position is zero and whose limit is the number of words.
+     */
+    public LongBuffer words()
+    {
+        LongBuffer words = this.words.duplicate();
+        words.clear();
+        return words;
+    }
+
+    /**
+     * Creates an empty filter with room for the given number of z-values.
+     * @param expectedZValues The number of distinct z-values that will be added.
+     */
+    public BloomFilter(int expectedZValues)
+    {
+        if (expectedZValues < 0) {
+            throw new IllegalArgumentException(Integer.toString(expectedZValues));
+        }
+        long blocks = Math.max(1L, ((long) expectedZValues * BITS_PER_Z_VALUE + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (blocks > MAX_BLOCKS) {
+            throw new IllegalArgumentException(Integer.toString(expectedZValues));
+        }
+        this.words = LongBuffer.wrap(new long[(int) blocks * WORDS_PER_BLOCK]);
+        this.blocks = (int) blocks;
+    }
+
+    /**
+     * Recreates a filter from its state, as returned by {@link #words()}. The filter uses the buffer directly,
+     * so that it can be used with a buffer obtained from a mapped file.
+     * @param words The filter's state. The words from the buffer's position to its limit are used.
+     */
+    public BloomFilter(LongBuffer words)
+    {
+        if (words.remaining() == 0 || words.remaining() % WORDS_PER_BLOCK != 0) {
+            throw new IllegalArgumentException(String.format("Invalid filter size: %s", words.remaining()));
+        }
+        this.words = words.slice();
+        this.blocks = words.remaining() / WORDS_PER_BLOCK;
+    }
+
+    // For use by this class
+
+    // Returns the index of the first word of the block selected by the hash.
+    private int block(long hash)
+    {
+        return (int) ((hash >>> 1) % blocks) * WORDS_PER_BLOCK;
+    }
+
+    // The finalizer of MurmurHash3's 64-bit hash, which spreads the bits of z-values (which differ mostly in
+    // their high-order bits) over all 64 bits.
+    private static long mix(long x)
+    {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    // Class state
+
+    private static final int BLOCK_SIZE = 512; // bits
+    private static final int BLOCK_BITS = 9; // log2(BLOCK_SIZE)
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int WORDS_PER_BLOCK = BLOCK_SIZE / 64;
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / WORDS_PER_BLOCK;
+    private static final int BITS_PER_Z_VALUE = 10;
+    private static final int HASHES = 7; // HASHES * BLOCK_BITS must not exceed 64.
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    // Object state
+
+    private final LongBuffer words;
+    private final int blocks;
+}
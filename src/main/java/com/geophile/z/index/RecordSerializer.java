@@ -0,0 +1,39 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+import com.geophile.z.Record;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A RecordSerializer converts the state of a {@link com.geophile.z.Record}, other than its z-value, to and from
+ * bytes. It is used by indexes that store records outside the Java heap. The z-value is stored by the index
+ * itself. A typical implementation writes the record's {@link com.geophile.z.SpatialObject} using
+ * {@link com.geophile.z.SpatialObject#writeTo(java.nio.ByteBuffer)}, followed by any other state of the record.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} serialized.
+ */
+
+public interface RecordSerializer<RECORD extends Record>
+{
+    /**
+     * Writes the serialized form of the given record, excluding its z-value, to the buffer.
+     * @param record The record to be serialized.
+     * @param buffer Receives the serialized bytes.
+     * @throws BufferOverflowException if buffer is not large enough. The caller will retry with a larger buffer.
+     */
+    void writeTo(RECORD record, ByteBuffer buffer) throws BufferOverflowException;
+
+    /**
+     * Reconstitutes the state of a record, excluding its z-value, from its serialized form.
+     * @param buffer Contains the serialized bytes of a record, as written by
+     *               {@link #writeTo(com.geophile.z.Record, java.nio.ByteBuffer)}.
+     * @param record The record to be modified.
+     */
+    void readFrom(ByteBuffer buffer, RECORD record);
+}
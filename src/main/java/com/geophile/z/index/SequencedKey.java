@@ -0,0 +1,55 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+/**
+ * The key of a record in an index based on a sorted map, which may contain many records with the same z-value.
+ * Records with the same z-value are distinguished, and kept in insertion order, by a sequence number assigned
+ * when the record is added.
+ */
+
+public final class SequencedKey implements Comparable<SequencedKey>
+{
+    // Object interface
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof SequencedKey && compareTo((SequencedKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (z ^ (z >>> 32) ^ sequence);
+    }
+
+    // Comparable interface
+
+    @Override
+    public int compareTo(SequencedKey that)
+    {
+        return
+            z < that.z ? -1 :
+            z > that.z ? 1 :
+            sequence < that.sequence ? -1 :
+            sequence > that.sequence ? 1 : 0;
+    }
+
+    // SequencedKey interface
+
+    public SequencedKey(long z, long sequence)
+    {
+        this.z = z;
+        this.sequence = sequence;
+    }
+
+    // Object state
+
+    public final long z;
+    public final long sequence;
+}
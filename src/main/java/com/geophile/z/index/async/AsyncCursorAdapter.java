@@ -0,0 +1,77 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.async;
+
+import com.geophile.z.AsyncCursor;
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+class AsyncCursorAdapter<RECORD extends Record> extends AsyncCursor<RECORD>
+{
+    // AsyncCursor interface
+
+    @Override
+    public CompletableFuture<RECORD> next()
+    {
+        CompletableFuture<RECORD> next = new CompletableFuture<>();
+        try {
+            RECORD record;
+            synchronized (adapter.lock()) {
+                record = cursor.next();
+            }
+            next.complete(record);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            next.completeExceptionally(e);
+        }
+        return next;
+    }
+
+    @Override
+    public CompletableFuture<Void> goTo(RECORD key)
+    {
+        CompletableFuture<Void> positioned = new CompletableFuture<>();
+        try {
+            // The caller may modify key once this method returns, but a Cursor may retain it.
+            key.copyTo(this.key);
+            synchronized (adapter.lock()) {
+                if (cursor == null) {
+                    cursor = adapter.index().cursor();
+                }
+                cursor.goTo(this.key);
+            }
+            positioned.complete(null);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            positioned.completeExceptionally(e);
+        }
+        return positioned;
+    }
+
+    @Override
+    public void close()
+    {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    // AsyncCursorAdapter interface
+
+    AsyncCursorAdapter(AsyncIndexAdapter<RECORD> adapter)
+    {
+        this.adapter = adapter;
+        this.key = adapter.newKeyRecord();
+    }
+
+    // Object state
+
+    private final AsyncIndexAdapter<RECORD> adapter;
+    private final RECORD key;
+    private Cursor<RECORD> cursor;
+}
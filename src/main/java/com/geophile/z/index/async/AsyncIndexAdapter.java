@@ -0,0 +1,123 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.async;
+
+import com.geophile.z.AsyncCursor;
+import com.geophile.z.AsyncIndex;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncIndexAdapter is an {@link com.geophile.z.AsyncIndex} that wraps an {@link com.geophile.z.Index}, e.g. an
+ * in-memory index such as {@link com.geophile.z.index.sortedarray.SortedArray}. Each operation is carried out
+ * on the wrapped index by the calling thread, and returns a future that is already completed. All access to the
+ * wrapped index is serialized, so the wrapped index need not be safe for use by multiple threads. The wrapped index
+ * must not be accessed other than through the AsyncIndexAdapter.
+ */
+
+public class AsyncIndexAdapter<RECORD extends Record> extends AsyncIndex<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("AsyncIndexAdapter(%s)", index);
+    }
+
+    // AsyncIndex interface
+
+    @Override
+    public CompletableFuture<Void> add(RECORD record)
+    {
+        CompletableFuture<Void> added = new CompletableFuture<>();
+        try {
+            synchronized (lock) {
+                index.add(record);
+            }
+            added.complete(null);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            added.completeExceptionally(e);
+        }
+        return added;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(long z, Record.Filter<RECORD> filter)
+    {
+        CompletableFuture<Boolean> removed = new CompletableFuture<>();
+        try {
+            boolean found;
+            synchronized (lock) {
+                found = index.remove(z, filter);
+            }
+            removed.complete(found);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            removed.completeExceptionally(e);
+        }
+        return removed;
+    }
+
+    @Override
+    public AsyncCursor<RECORD> cursor()
+    {
+        return new AsyncCursorAdapter<>(this);
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return index.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return index.newKeyRecord();
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return index.stableRecords();
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        synchronized (lock) {
+            return index.ancestorCandidates(z, zLowerBound, candidates);
+        }
+    }
+
+    // AsyncIndexAdapter interface
+
+    public AsyncIndexAdapter(Index<RECORD> index)
+    {
+        this.index = index;
+    }
+
+    // For use by this package
+
+    Index<RECORD> index()
+    {
+        return index;
+    }
+
+    Object lock()
+    {
+        return lock;
+    }
+
+    // Object state
+
+    private final Index<RECORD> index;
+    private final Object lock = new Object();
+}
@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.async;
+
+import com.geophile.z.AsyncCursor;
+import com.geophile.z.Record;
+
+import java.util.concurrent.CompletableFuture;
+
+class SimulatedLatencyAsyncCursor<RECORD extends Record> extends AsyncCursor<RECORD>
+{
+    // AsyncCursor interface
+
+    @Override
+    public CompletableFuture<RECORD> next()
+    {
+        return index.delay(cursor.next(), index.sequentialAccessMicros());
+    }
+
+    @Override
+    public CompletableFuture<Void> goTo(RECORD key)
+    {
+        return index.delay(cursor.goTo(key), index.randomAccessMicros());
+    }
+
+    @Override
+    public void close()
+    {
+        cursor.close();
+    }
+
+    // SimulatedLatencyAsyncCursor interface
+
+    SimulatedLatencyAsyncCursor(SimulatedLatencyAsyncIndex<RECORD> index, AsyncCursor<RECORD> cursor)
+    {
+        this.index = index;
+        this.cursor = cursor;
+    }
+
+    // Object state
+
+    private final SimulatedLatencyAsyncIndex<RECORD> index;
+    private final AsyncCursor<RECORD> cursor;
+}
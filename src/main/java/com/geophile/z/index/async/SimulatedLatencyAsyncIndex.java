@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.async;
+
+import com.geophile.z.AsyncCursor;
+import com.geophile.z.AsyncIndex;
+import com.geophile.z.Record;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * SimulatedLatencyAsyncIndex is an {@link com.geophile.z.AsyncIndex} that wraps another AsyncIndex, and delays the
+ * completion of each operation, to simulate a high-latency store, e.g. for testing and benchmarking. Operations
+ * that require a random access ({@link com.geophile.z.AsyncCursor#goTo(com.geophile.z.Record)}, add and remove)
+ * are delayed by one latency, and {@link com.geophile.z.AsyncCursor#next()} by another. Delayed operations are
+ * completed by threads of the given ScheduledExecutorService, which may be shared by any number of indexes. An
+ * operation with a latency of 0 completes as soon as the wrapped operation does.
+ */
+
+public class SimulatedLatencyAsyncIndex<RECORD extends Record> extends AsyncIndex<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("SimulatedLatencyAsyncIndex(%s)", index);
+    }
+
+    // AsyncIndex interface
+
+    @Override
+    public CompletableFuture<Void> add(RECORD record)
+    {
+        return delay(index.add(record), randomAccessMicros);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> remove(long z, Record.Filter<RECORD> filter)
+    {
+        return delay(index.remove(z, filter), randomAccessMicros);
+    }
+
+    @Override
+    public AsyncCursor<RECORD> cursor()
+    {
+        return new SimulatedLatencyAsyncCursor<>(this, index.cursor());
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return index.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return index.newKeyRecord();
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return index.stableRecords();
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        return index.ancestorCandidates(z, zLowerBound, candidates);
+    }
+
+    // SimulatedLatencyAsyncIndex interface
+
+    /**
+     * Creates a SimulatedLatencyAsyncIndex.
+     * @param index The wrapped AsyncIndex.
+     * @param scheduler Completes delayed operations.
+     * @param randomAccessMicros Delay, in microseconds, of goTo, add and remove.
+     * @param sequentialAccessMicros Delay, in microseconds, of next.
+     */
+    public SimulatedLatencyAsyncIndex(AsyncIndex<RECORD> index,
+                                      ScheduledExecutorService scheduler,
+                                      long randomAccessMicros,
+                                      long sequentialAccessMicros)
+    {
+        if (randomAccessMicros < 0 || sequentialAccessMicros < 0) {
+            throw new IllegalArgumentException(String.format("randomAccessMicros: %s, sequentialAccessMicros: %s",
+                                                             randomAccessMicros, sequentialAccessMicros));
+        }
+        this.index = index;
+        this.scheduler = scheduler;
+        this.randomAccessMicros = randomAccessMicros;
+        this.sequentialAccessMicros = sequentialAccessMicros;
+    }
+
+    // For use by this package
+
+    long randomAccessMicros()
+    {
+        return randomAccessMicros;
+    }
+
+    long sequentialAccessMicros()
+    {
+        return sequentialAccessMicros;
+    }
+
+    // Returns a future completed like operation, but no earlier than micros from now.
+    <T> CompletableFuture<T> delay(CompletableFuture<T> operation, long micros)
+    {
+        CompletableFuture<T> delayed;
+        if (micros == 0) {
+            delayed = operation;
+        } else {
+            final CompletableFuture<T> completion = new CompletableFuture<>();
+            final long readyNanos = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+            operation.whenComplete(
+                new BiConsumer<T, Throwable>()
+                {
+                    @Override
+                    public void accept(final T result, final Throwable failure)
+                    {
+                        scheduler.schedule(
+                            new Runnable()
+                            {
+                                @Override
+                                public void run()
+                                {
+                                    if (failure == null) {
+                                        completion.complete(result);
+                                    } else {
+                                        completion.completeExceptionally(failure);
+                                    }
+                                }
+                            },
+                            readyNanos - System.nanoTime(),
+                            TimeUnit.NANOSECONDS);
+                    }
+                });
+            delayed = completion;
+        }
+        return delayed;
+    }
+
+    // Object state
+
+    private final AsyncIndex<RECORD> index;
+    private final ScheduledExecutorService scheduler;
+    private final long randomAccessMicros;
+    private final long sequentialAccessMicros;
+}
@@ -0,0 +1,406 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.btree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BTree implements the {@link com.geophile.z.Index} interface as an in-memory B+tree. Leaves store z-values in
+ * a long[], parallel to the records, and are linked in both directions, so that a
+ * {@link com.geophile.z.index.btree.BTreeCursor} steps through a leaf for next(), and can reposition from its
+ * current leaf when a goTo target is nearby. Unlike {@link com.geophile.z.index.sortedarray.SortedArray}, adding
+ * and removing a record costs O(log n), so a BTree is suitable for indexes that are updated while being
+ * searched.
+ * <p>
+ * Records with the same z-value are kept in the order in which they were added. A leaf is removed from the tree
+ * as soon as it becomes empty. Leaves that are not empty are not merged with their neighbors.
+ * <p>
+ * A BTree is not safe for use by multiple threads.
+ */
+
+public abstract class BTree<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        long z = copy.z();
+        zLengths |= 1L << SpaceImpl.length(z);
+        // Descend to the last leaf that could contain z, so that the new record follows any records with the same
+        // z-value.
+        Node node = root;
+        while (node instanceof Interior) {
+            Interior interior = (Interior) node;
+            node = interior.children[upperBound(interior.keys, interior.n - 1, z)];
+        }
+        Leaf leaf = (Leaf) node;
+        int position = upperBound(leaf.zs, leaf.n, z);
+        if (leaf.n == nodeCapacity) {
+            Leaf right = splitLeaf(leaf);
+            if (position > leaf.n) {
+                position -= leaf.n;
+                leaf = right;
+            }
+        }
+        leaf.insert(position, z, copy);
+        size++;
+        modifications++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removeRecordFound = false;
+        Leaf leaf = firstLeafContaining(z);
+        int position = lowerBound(leaf.zs, leaf.n, z);
+        boolean sameZ = true;
+        while (leaf != null && sameZ && !removeRecordFound) {
+            if (position == leaf.n) {
+                leaf = leaf.next;
+                position = 0;
+            } else if (leaf.zs[position] == z) {
+                if (filter.select(leaf.<RECORD>record(position))) {
+                    delete(leaf, position);
+                    removeRecordFound = true;
+                } else {
+                    position++;
+                }
+            } else {
+                sameZ = false;
+            }
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new BTreeCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // BTree interface
+
+    /**
+     * Returns the number of records in this index.
+     * @return The number of records in this index.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Creates a BTree whose nodes have the default capacity.
+     */
+    public BTree()
+    {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Creates a BTree whose nodes have the given capacity.
+     * @param nodeCapacity The maximum number of records in a leaf, and the maximum number of children of an
+     *                     interior node. Must be at least 4.
+     */
+    public BTree(int nodeCapacity)
+    {
+        if (nodeCapacity < MIN_NODE_CAPACITY) {
+            throw new IllegalArgumentException(Integer.toString(nodeCapacity));
+        }
+        this.nodeCapacity = nodeCapacity;
+        this.root = new Leaf(nodeCapacity);
+    }
+
+    // For use by this package
+
+    // Returns the leftmost leaf that could contain a record whose z-value is >= z.
+    Leaf firstLeafContaining(long z)
+    {
+        Node node = root;
+        while (node instanceof Interior) {
+            Interior interior = (Interior) node;
+            node = interior.children[lowerBound(interior.keys, interior.n - 1, z)];
+        }
+        return (Leaf) node;
+    }
+
+    void delete(Leaf leaf, int position)
+    {
+        leaf.delete(position);
+        size--;
+        modifications++;
+        if (leaf.n == 0 && leaf != root) {
+            if (leaf.prev != null) {
+                leaf.prev.next = leaf.next;
+            }
+            if (leaf.next != null) {
+                leaf.next.prev = leaf.prev;
+            }
+            // leaf.next is retained so that a cursor positioned in the leaf can continue.
+            leaf.prev = null;
+            leaf.detached = true;
+            removeChild(leaf.parent, leaf);
+        }
+    }
+
+    // Counts adds and deletes. A cursor that sees a change in this count can't rely on its position in a leaf.
+    long modifications()
+    {
+        return modifications;
+    }
+
+    // Returns the position of the first element of keys[0:n) that is >= z.
+    static int lowerBound(long[] keys, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the position of the first element of keys[0:n) that is > z.
+    static int upperBound(long[] keys, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] <= z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // For use by this class
+
+    // Moves the upper half of leaf's records to a new leaf, which is returned.
+    private Leaf splitLeaf(Leaf leaf)
+    {
+        Leaf right = new Leaf(nodeCapacity);
+        int keep = leaf.n / 2;
+        int move = leaf.n - keep;
+        System.arraycopy(leaf.zs, keep, right.zs, 0, move);
+        System.arraycopy(leaf.records, keep, right.records, 0, move);
+        for (int i = keep; i < leaf.n; i++) {
+            leaf.records[i] = null;
+        }
+        leaf.n = keep;
+        right.n = move;
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next != null) {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        insertChild(leaf, right.zs[0], right);
+        return right;
+    }
+
+    // Adds right to the parent of left, following left. Every record in left has a z-value <= separator, and
+    // every record in right has a z-value >= separator.
+    private void insertChild(Node left, long separator, Node right)
+    {
+        Interior parent = left.parent;
+        if (parent == null) {
+            parent = new Interior(nodeCapacity);
+            parent.children[0] = left;
+            parent.n = 1;
+            left.parent = parent;
+            root = parent;
+        }
+        if (parent.n == nodeCapacity) {
+            Interior parentRight = splitInterior(parent);
+            if (left.parent == parentRight) {
+                parent = parentRight;
+            }
+        }
+        int position = parent.childPosition(left) + 1;
+        System.arraycopy(parent.children, position, parent.children, position + 1, parent.n - position);
+        System.arraycopy(parent.keys, position - 1, parent.keys, position, parent.n - position);
+        parent.children[position] = right;
+        parent.keys[position - 1] = separator;
+        parent.n++;
+        right.parent = parent;
+    }
+
+    // Moves the upper half of interior's children to a new interior node, which is returned.
+    private Interior splitInterior(Interior interior)
+    {
+        Interior right = new Interior(nodeCapacity);
+        int keep = interior.n / 2;
+        int move = interior.n - keep;
+        long separator = interior.keys[keep - 1];
+        System.arraycopy(interior.children, keep, right.children, 0, move);
+        System.arraycopy(interior.keys, keep, right.keys, 0, move - 1);
+        for (int i = keep; i < interior.n; i++) {
+            interior.children[i] = null;
+        }
+        interior.n = keep;
+        right.n = move;
+        for (int i = 0; i < move; i++) {
+            right.children[i].parent = right;
+        }
+        insertChild(interior, separator, right);
+        return right;
+    }
+
+    private void removeChild(Interior parent, Node child)
+    {
+        int position = parent.childPosition(child);
+        System.arraycopy(parent.children, position + 1, parent.children, position, parent.n - position - 1);
+        parent.children[parent.n - 1] = null;
+        if (parent.n > 1) {
+            // Remove the separator preceding the child, or following it if the child is first.
+            int keyPosition = position == 0 ? 0 : position - 1;
+            System.arraycopy(parent.keys, keyPosition + 1, parent.keys, keyPosition, parent.n - 2 - keyPosition);
+        }
+        parent.n--;
+        child.parent = null;
+        if (parent.n == 0) {
+            // parent can't be the root: a root with one child is replaced by that child.
+            removeChild(parent.parent, parent);
+        } else if (parent == root && parent.n == 1) {
+            root = parent.children[0];
+            root.parent = null;
+        }
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final int DEFAULT_NODE_CAPACITY = 128;
+    private static final int MIN_NODE_CAPACITY = 4;
+
+    // Object state
+
+    private final String name = String.format("BTree(%s)", idGenerator.getAndIncrement());
+    private final int nodeCapacity;
+    private Node root;
+    private long size = 0;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private long modifications = 0;
+
+    // Inner classes
+
+    static abstract class Node
+    {
+        Interior parent;
+    }
+
+    static final class Interior extends Node
+    {
+        int childPosition(Node child)
+        {
+            int position = 0;
+            while (children[position] != child) {
+                position++;
+            }
+            return position;
+        }
+
+        Interior(int capacity)
+        {
+            keys = new long[capacity - 1];
+            children = new Node[capacity];
+        }
+
+        // Every record in children[i] has a z-value <= keys[i], and every record in children[i + 1] has a
+        // z-value >= keys[i].
+        final long[] keys;
+        final Node[] children;
+        // Number of children
+        int n;
+    }
+
+    static final class Leaf extends Node
+    {
+        // A leaf only contains records of its tree's record type, so the cast is safe.
+        @SuppressWarnings("unchecked")
+        <RECORD extends Record> RECORD record(int position)
+        {
+            return (RECORD) records[position];
+        }
+
+        void insert(int position, long z, Record record)
+        {
+            System.arraycopy(zs, position, zs, position + 1, n - position);
+            System.arraycopy(records, position, records, position + 1, n - position);
+            zs[position] = z;
+            records[position] = record;
+            n++;
+        }
+
+        void delete(int position)
+        {
+            System.arraycopy(zs, position + 1, zs, position, n - position - 1);
+            System.arraycopy(records, position + 1, records, position, n - position - 1);
+            records[--n] = null;
+        }
+
+        Leaf(int capacity)
+        {
+            zs = new long[capacity];
+            records = new Object[capacity];
+        }
+
+        final long[] zs;
+        final Object[] records;
+        int n;
+        Leaf prev;
+        Leaf next;
+        // True if this leaf has been removed from the tree
+        boolean detached;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.btree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class BTreeCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                resumeIteration();
+                break;
+            case DONE:
+                assert current() == null;
+                return 0;
+        }
+        // Records are copied from leaves a run at a time.
+        int n = 0;
+        while (n < max && advanceToRecord()) {
+            int count = Math.min(max - n, leaf.n - position);
+            System.arraycopy(leaf.zs, position, zs, n, count);
+            for (int i = 0; i < count; i++) {
+                returned(zs[n + i]);
+            }
+            if (records != null) {
+                for (int i = 0; i < count; i++) {
+                    batchRecord(records, n + i, leaf.<RECORD>record(position + i));
+                }
+            }
+            n += count;
+            position += count;
+            currentLeaf = leaf;
+            currentPosition = position - 1;
+        }
+        if (n == 0) {
+            currentLeaf = null;
+            close();
+        } else {
+            current(currentLeaf.<RECORD>record(currentPosition));
+            state(State.IN_USE);
+        }
+        return n;
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        lastZCount = 0;
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            resumeIteration();
+            if (currentLeaf != null) {
+                btree.delete(currentLeaf, currentPosition);
+                if (leaf == currentLeaf) {
+                    if (leaf.detached) {
+                        leaf = leaf.next;
+                        position = 0;
+                    } else if (position > currentPosition) {
+                        position--;
+                    }
+                }
+                currentLeaf = null;
+                lastZCount--;
+                modifications = btree.modifications();
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    // BTreeCursor interface
+
+    public BTreeCursor(BTree<RECORD> btree)
+    {
+        super(btree);
+        this.btree = btree;
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                resumeIteration();
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (!advanceToRecord()) {
+            currentLeaf = null;
+            close();
+        } else {
+            returned(leaf.zs[position]);
+            current(leaf.<RECORD>record(position));
+            state(State.IN_USE);
+            currentLeaf = leaf;
+            currentPosition = position;
+            position++;
+        }
+        return current();
+    }
+
+    // Moves past exhausted leaves. Returns true if leaf and position identify the next record to visit, false if
+    // there are no more records.
+    private boolean advanceToRecord()
+    {
+        while (leaf != null && position == leaf.n) {
+            leaf = leaf.next;
+            position = 0;
+        }
+        return leaf != null;
+    }
+
+    private void startIteration()
+    {
+        modifications = btree.modifications();
+        // A goTo often targets a z-value close to the previous one. If the lower bound of startZ is in the current
+        // leaf or the next one, there is no need to descend from the root.
+        if (leaf != null && !leaf.detached && leaf.n > 0) {
+            long lastZ = leaf.zs[leaf.n - 1];
+            if (leaf.zs[0] < startZ && startZ <= lastZ) {
+                position = BTree.lowerBound(leaf.zs, leaf.n, startZ);
+                return;
+            }
+            BTree.Leaf next = leaf.next;
+            if (lastZ < startZ && next != null && next.n > 0 && startZ <= next.zs[next.n - 1]) {
+                leaf = next;
+                position = BTree.lowerBound(leaf.zs, leaf.n, startZ);
+                return;
+            }
+        }
+        leaf = btree.firstLeafContaining(startZ);
+        position = BTree.lowerBound(leaf.zs, leaf.n, startZ);
+    }
+
+    // If the tree has been modified since the cursor last visited it, records may have moved, and the cursor's leaf
+    // may have been split or removed from the tree. In that case, the cursor is positioned following the last record
+    // returned, found by searching for lastZ and skipping lastZCount records with that z-value. currentLeaf and
+    // currentPosition locate the last record returned, unless it has been deleted.
+    private void resumeIteration()
+    {
+        if (modifications != btree.modifications()) {
+            boolean currentDeleted = currentLeaf == null;
+            BTree.Leaf leaf = btree.firstLeafContaining(lastZ);
+            int position = BTree.lowerBound(leaf.zs, leaf.n, lastZ);
+            int skipped = 0;
+            boolean sameZ = true;
+            while (leaf != null && sameZ && skipped < lastZCount) {
+                if (position == leaf.n) {
+                    leaf = leaf.next;
+                    position = 0;
+                } else if (leaf.zs[position] == lastZ) {
+                    currentLeaf = leaf;
+                    currentPosition = position;
+                    skipped++;
+                    position++;
+                } else {
+                    sameZ = false;
+                }
+            }
+            if (currentDeleted || skipped < lastZCount) {
+                currentLeaf = null;
+            }
+            this.leaf = leaf;
+            this.position = position;
+            modifications = btree.modifications();
+        }
+    }
+
+    // Records that a record with the given z-value has been returned.
+    private void returned(long z)
+    {
+        if (lastZCount > 0 && z == lastZ) {
+            lastZCount++;
+        } else {
+            lastZ = z;
+            lastZCount = 1;
+        }
+    }
+
+    // Object state
+
+    private final BTree<RECORD> btree;
+    private long startZ;
+    // Position of the next record to visit
+    private BTree.Leaf leaf;
+    private int position;
+    // Position of the record most recently returned by next()
+    private BTree.Leaf currentLeaf;
+    private int currentPosition;
+    // The last record returned is the lastZCount-th record with z-value lastZ, counting from the cursor's starting
+    // position. This locates the cursor if the tree is modified by anything other than the cursor's own
+    // deleteCurrent, (as indicated by modifications).
+    private long lastZ;
+    private int lastZCount;
+    private long modifications;
+}
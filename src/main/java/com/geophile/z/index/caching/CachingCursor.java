@@ -0,0 +1,115 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.caching;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+/**
+ * A CachingCursor visits the records of a {@link com.geophile.z.index.caching.CachingIndex}, one cached range at a
+ * time. goTo positions the cursor within the range containing the key's z-value, and next moves on to the
+ * following range when the current one is exhausted. Each range is obtained from the CachingIndex, which retrieves
+ * it from the wrapped index only if it isn't cached.
+ */
+
+public class CachingCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        if (state() == State.DONE) {
+            assert current() == null;
+            return null;
+        }
+        while (position == range.n && range.zHi != Long.MAX_VALUE) {
+            range = cachingIndex.range(range.zHi + 1);
+            position = 0;
+        }
+        if (position < range.n) {
+            current(range.records[position++]);
+            state(State.IN_USE);
+            deleted = false;
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    @Override
+    public void goTo(RECORD key) throws IOException, InterruptedException
+    {
+        long z = key.z();
+        range = cachingIndex.range(z);
+        position = lowerBound(range.zs, range.n, z);
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean removed = false;
+        if (state() == State.IN_USE && !deleted) {
+            final RECORD current = current();
+            removed = cachingIndex.remove(current.z(),
+                                          new Record.Filter<RECORD>()
+                                          {
+                                              @Override
+                                              public boolean select(RECORD record)
+                                              {
+                                                  return record.equals(current);
+                                              }
+                                          });
+            deleted = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        range = null;
+    }
+
+    // CachingCursor interface
+
+    public CachingCursor(CachingIndex<RECORD> cachingIndex)
+    {
+        super(cachingIndex);
+        this.cachingIndex = cachingIndex;
+    }
+
+    // For use by this class
+
+    private static int lowerBound(long[] zs, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Object state
+
+    private final CachingIndex<RECORD> cachingIndex;
+    // The cursor is positioned before range.records[position].
+    private CachingIndex.Range<RECORD> range;
+    private int position;
+    // True if the record most recently returned by next has been deleted
+    private boolean deleted;
+}
@@ -0,0 +1,334 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.caching;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CachingIndex is an {@link com.geophile.z.Index} that wraps another, slower Index, and caches ranges of its
+ * records. A range contains all the records whose z-values are within an interval, [zLo, zHi], and is retrieved
+ * from the wrapped index when a cursor needs a record in the interval that isn't cached. Cached ranges don't
+ * overlap. At most maxRanges ranges are cached, and the least recently used range is evicted to make room for
+ * another. A range is invalidated when a record is added to it or removed from it.
+ * <p>
+ * The cursor of a CachingIndex positions itself within a cached range, if possible, and retrieves records from
+ * the range. The wrapped index is accessed only to retrieve ranges that aren't cached. The number of times that
+ * a range was found in the cache, or had to be retrieved, is reported by {@link #hits()} and {@link #misses()}.
+ * <p>
+ * All access to the cache and to the wrapped index is serialized, so the wrapped index need not be safe for use by
+ * multiple threads. The wrapped index must not be accessed other than through the CachingIndex. A cursor retains
+ * the range it is positioned in, so it does not see updates within that range made after it was positioned.
+ */
+
+public class CachingIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("CachingIndex(%s)", index);
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record) throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            index.add(record);
+            invalidate(record.z());
+        }
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter) throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            boolean removed = index.remove(z, filter);
+            if (removed) {
+                invalidate(z);
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    public Cursor<RECORD> cursor() throws IOException, InterruptedException
+    {
+        return new CachingCursor<>(this);
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return index.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return index.newKeyRecord();
+    }
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return index.blindUpdates();
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return index.stableRecords();
+    }
+
+    @Override
+    public long zLengths()
+    {
+        synchronized (lock) {
+            return index.zLengths();
+        }
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        synchronized (lock) {
+            return index.ancestorCandidates(z, zLowerBound, candidates);
+        }
+    }
+
+    // CachingIndex interface
+
+    /**
+     * Returns the number of times that a cursor found the range it needed in the cache.
+     * @return The number of cache hits.
+     */
+    public long hits()
+    {
+        synchronized (lock) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of times that a cursor had to retrieve a range from the wrapped index.
+     * @return The number of cache misses.
+     */
+    public long misses()
+    {
+        synchronized (lock) {
+            return misses;
+        }
+    }
+
+    /**
+     * Returns the fraction of range lookups that were cache hits, or 0 if there have been no lookups.
+     * @return The cache hit rate.
+     */
+    public double hitRate()
+    {
+        synchronized (lock) {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+
+    /**
+     * Returns the number of ranges currently cached.
+     * @return The number of ranges currently cached.
+     */
+    public int cachedRanges()
+    {
+        synchronized (lock) {
+            return ranges.size();
+        }
+    }
+
+    /**
+     * Creates a CachingIndex that retrieves ranges of about {@link #DEFAULT_RANGE_SIZE} records.
+     * @param index The index to be wrapped.
+     * @param maxRanges The maximum number of ranges to be cached.
+     */
+    public CachingIndex(Index<RECORD> index, int maxRanges)
+    {
+        this(index, maxRanges, DEFAULT_RANGE_SIZE);
+    }
+
+    /**
+     * Creates a CachingIndex.
+     * @param index The index to be wrapped.
+     * @param maxRanges The maximum number of ranges to be cached.
+     * @param rangeSize The number of records retrieved for a range. A range contains fewer records if it reaches
+     *                  the end of the index or another cached range, and more if the last record retrieved
+     *                  is followed by records with the same z-value.
+     */
+    public CachingIndex(Index<RECORD> index, final int maxRanges, int rangeSize)
+    {
+        if (maxRanges <= 0 || rangeSize <= 0) {
+            throw new IllegalArgumentException(String.format("maxRanges: %s, rangeSize: %s", maxRanges, rangeSize));
+        }
+        this.index = index;
+        this.rangeSize = rangeSize;
+        this.loadKey = index.newKeyRecord();
+        this.batchZs = new long[rangeSize];
+        this.batchRecords = newRecords(rangeSize);
+        this.lru =
+            new LinkedHashMap<Long, Range<RECORD>>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Range<RECORD>> eldest)
+                {
+                    boolean evict = size() > maxRanges;
+                    if (evict) {
+                        ranges.remove(eldest.getKey());
+                    }
+                    return evict;
+                }
+            };
+    }
+
+    // For use by this package
+
+    // Returns the range containing z, retrieving it from the wrapped index if it isn't cached.
+    Range<RECORD> range(long z) throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            Range<RECORD> range = cachedRange(z);
+            if (range == null) {
+                misses++;
+                range = load(z);
+                ranges.put(range.zLo, range);
+                lru.put(range.zLo, range);
+            } else {
+                hits++;
+                lru.get(range.zLo); // Make it the most recently used range
+            }
+            return range;
+        }
+    }
+
+    // For use by this class
+
+    private Range<RECORD> cachedRange(long z)
+    {
+        Map.Entry<Long, Range<RECORD>> floor = ranges.floorEntry(z);
+        return floor != null && floor.getValue().zHi >= z ? floor.getValue() : null;
+    }
+
+    private void invalidate(long z)
+    {
+        Range<RECORD> range = cachedRange(z);
+        if (range != null) {
+            ranges.remove(range.zLo);
+            lru.remove(range.zLo);
+        }
+    }
+
+    // Retrieves the range starting at z, which is not in any cached range. The range ends before the next
+    // cached range, so that ranges don't overlap.
+    private Range<RECORD> load(long z) throws IOException, InterruptedException
+    {
+        Long zNextRange = ranges.higherKey(z);
+        long zLimit = zNextRange == null ? Long.MAX_VALUE : zNextRange - 1;
+        if (cursor == null) {
+            cursor = index.cursor();
+        }
+        loadKey.z(z);
+        cursor.goTo(loadKey);
+        long[] zs = new long[rangeSize];
+        RECORD[] records = newRecords(rangeSize);
+        int n = 0;
+        // Retrieve at least rangeSize records. The range must contain all the records with a given z-value, so
+        // keep going while all the records retrieved have the same z-value. nextBatch may return fewer records than
+        // requested before the end of the index, so the end is only known when it returns 0.
+        boolean end = false;
+        while (!end && (n < rangeSize || zs[0] == zs[n - 1]) && (n == 0 || zs[n - 1] <= zLimit)) {
+            int m = cursor.nextBatch(batchZs, batchRecords, Math.max(rangeSize - n, 1));
+            if (n + m > zs.length) {
+                zs = Arrays.copyOf(zs, Math.max(2 * zs.length, n + m));
+                records = Arrays.copyOf(records, zs.length);
+            }
+            System.arraycopy(batchZs, 0, zs, n, m);
+            System.arraycopy(batchRecords, 0, records, n, m);
+            // The retrieved records now belong to the range, so they must not be reused by the next nextBatch.
+            Arrays.fill(batchRecords, 0, m, null);
+            n += m;
+            end = m == 0;
+        }
+        long zHi;
+        if (end) {
+            zHi = zLimit;
+        } else {
+            // The records with the last z-value retrieved may be followed by more records with that z-value,
+            // so they aren't part of the range.
+            zHi = Math.min(zs[n - 1] - 1, zLimit);
+            while (n > 0 && zs[n - 1] > zHi) {
+                records[--n] = null;
+            }
+        }
+        return new Range<>(z, zHi, zs, records, n);
+    }
+
+    // The array only holds records of the underlying index, so the cast is safe.
+    @SuppressWarnings("unchecked")
+    private RECORD[] newRecords(int n)
+    {
+        return (RECORD[]) new Record[n];
+    }
+
+    // Class state
+
+    public static final int DEFAULT_RANGE_SIZE = 256;
+
+    // Object state
+
+    private final Index<RECORD> index;
+    private final int rangeSize;
+    private final Object lock = new Object();
+    // Cached ranges, by zLo
+    private final TreeMap<Long, Range<RECORD>> ranges = new TreeMap<>();
+    // Cached ranges, in LRU order
+    private final LinkedHashMap<Long, Range<RECORD>> lru;
+    // For retrieving ranges
+    private Cursor<RECORD> cursor;
+    private final RECORD loadKey;
+    private final long[] batchZs;
+    private final RECORD[] batchRecords;
+    private long hits;
+    private long misses;
+
+    // Inner classes
+
+    static final class Range<RECORD extends Record>
+    {
+        Range(long zLo, long zHi, long[] zs, RECORD[] records, int n)
+        {
+            this.zLo = zLo;
+            this.zHi = zHi;
+            this.zs = zs;
+            this.records = records;
+            this.n = n;
+        }
+
+        // The range contains all records whose z-values are in [zLo, zHi].
+        final long zLo;
+        final long zHi;
+        final long[] zs;
+        final RECORD[] records;
+        final int n;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.lsm;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class LSMCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE && currentRecordExists) {
+            index.delete(currentZ, currentSequence);
+            currentRecordExists = false;
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    // LSMCursor interface
+
+    public LSMCursor(LSMIndex<RECORD> index)
+    {
+        super(index);
+        this.index = index;
+        this.record = index.newRecord();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                merge = index.merge();
+                merge.seek(startZ);
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        Merge.Source source;
+        do {
+            source = merge.next();
+        } while (source != null && source.tombstone);
+        if (source == null) {
+            merge = null;
+            currentRecordExists = false;
+            close();
+        } else {
+            index.readRecord(source, record);
+            current(record);
+            state(State.IN_USE);
+            currentZ = source.z;
+            currentSequence = source.sequence;
+            currentRecordExists = true;
+        }
+        return current();
+    }
+
+    // Object state
+
+    private final LSMIndex<RECORD> index;
+    // Records are deserialized here, and then copied to the Cursor's current record.
+    private final RECORD record;
+    private long startZ;
+    private Merge merge;
+    // Identifies the record most recently returned by next()
+    private boolean currentRecordExists;
+    private long currentZ;
+    private long currentSequence;
+}
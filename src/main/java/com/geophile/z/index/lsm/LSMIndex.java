@@ -0,0 +1,391 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.lsm;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.RecordSerializer;
+import com.geophile.z.index.SequencedKey;
+import com.geophile.z.space.SpaceImpl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LSMIndex is an {@link com.geophile.z.Index} organized as a log-structured merge tree. Added records go to an
+ * in-memory memtable. When the memtable is full, its contents are written sequentially to a new, immutable,
+ * sorted run on disk. When the number of runs exceeds a limit, all runs are merged into one by a background
+ * thread. Updates therefore never modify data on disk in place.
+ * <p>
+ * Each record is assigned a sequence number when it is added. Removing a record that has already been written to
+ * a run adds a tombstone for the record's z-value and sequence number to the memtable. A cursor merges the
+ * memtable and runs in z-order, suppressing records that have been removed. Tombstones are discarded by
+ * compaction.
+ * <p>
+ * Records are serialized by a {@link com.geophile.z.index.RecordSerializer}, and deserialized as a cursor visits
+ * them, so records retrieved from an LSMIndex are not stable. Runs are stored in the given directory, which is
+ * working storage: an LSMIndex cannot be reopened, and its run files are deleted by {@link #close()}. Updates
+ * must be made by one thread at a time. A cursor sees the memtable and runs that exist when it is positioned by
+ * goTo. Its view of the memtable is weakly consistent.
+ * <p>
+ * Each run stores a {@link com.geophile.z.index.BloomFilter} of its z-values, which
+ * {@link #ancestorCandidates(long, long, long[])} uses to avoid searching for z-values that are not present.
+ */
+
+public abstract class LSMIndex<RECORD extends Record> extends Index<RECORD> implements Closeable
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("LSMIndex(%s)", directory);
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record) throws IOException
+    {
+        checkCompaction();
+        // Updates are made by one thread at a time, but zLengths() may be called by any thread.
+        zLengths |= 1L << SpaceImpl.length(record.z());
+        memtable.put(new SequencedKey(record.z(), sequence.getAndIncrement()), serialize(record));
+        memtableEntries++;
+        flushMemtableIfFull();
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter) throws IOException, InterruptedException
+    {
+        checkCompaction();
+        boolean removeRecordFound = false;
+        Cursor<RECORD> cursor = cursor();
+        RECORD key = newKeyRecord();
+        key.z(z);
+        cursor.goTo(key);
+        RECORD record;
+        while (!removeRecordFound && (record = cursor.next()) != null && record.z() == z) {
+            if (filter.select(record)) {
+                removeRecordFound = cursor.deleteCurrent();
+            }
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new LSMCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // Omits ancestors that are definitely absent: those not in the memtable, and ruled out by the filter of
+    // every run.
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        int n = super.ancestorCandidates(z, zLowerBound, candidates);
+        // As in merge(), the memtable must be read before the runs.
+        ConcurrentNavigableMap<SequencedKey, byte[]> memtable = this.memtable;
+        List<Run> runs = this.runs;
+        int kept = 1;
+        for (int i = 1; i < n; i++) {
+            long candidate = candidates[i];
+            SequencedKey key = memtable.ceilingKey(new SequencedKey(candidate, 0));
+            boolean mightContain = key != null && key.z == candidate;
+            for (int r = 0; !mightContain && r < runs.size(); r++) {
+                mightContain = runs.get(r).mightContain(candidate);
+            }
+            if (mightContain) {
+                candidates[kept++] = candidate;
+            }
+        }
+        return kept;
+    }
+
+    // Closeable interface
+
+    /**
+     * Waits for compaction to complete, and deletes the index's run files.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Run run : runs) {
+                run.delete();
+            }
+            runs = Collections.emptyList();
+        }
+        memtable = new ConcurrentSkipListMap<>();
+        memtableEntries = 0;
+    }
+
+    // LSMIndex interface
+
+    /**
+     * Creates an LSMIndex with the default memtable size and maximum number of runs.
+     * @param directory The directory in which runs are stored.
+     * @param serializer Serializes records.
+     */
+    public LSMIndex(File directory, RecordSerializer<RECORD> serializer)
+    {
+        this(directory, serializer, DEFAULT_MEMTABLE_SIZE, DEFAULT_MAX_RUNS);
+    }
+
+    /**
+     * Creates an LSMIndex.
+     * @param directory The directory in which runs are stored.
+     * @param serializer Serializes records.
+     * @param memtableSize The number of entries (records and tombstones) in the memtable that causes it to be
+     *                     written to a run.
+     * @param maxRuns The number of runs that can exist before a compaction is started.
+     */
+    public LSMIndex(File directory, RecordSerializer<RECORD> serializer, int memtableSize, int maxRuns)
+    {
+        if (memtableSize < 1) {
+            throw new IllegalArgumentException(Integer.toString(memtableSize));
+        }
+        if (maxRuns < 1) {
+            throw new IllegalArgumentException(Integer.toString(maxRuns));
+        }
+        this.directory = directory;
+        this.serializer = serializer;
+        this.memtableSize = memtableSize;
+        this.maxRuns = maxRuns;
+    }
+
+    // For use by this package
+
+    // Returns a Merge of the current memtable and runs. The memtable must be read before the runs, because a
+    // memtable flush publishes the new run before replacing the memtable.
+    Merge merge()
+    {
+        ConcurrentNavigableMap<SequencedKey, byte[]> memtable = this.memtable;
+        List<Run> runs = this.runs;
+        List<Merge.Source> sources = new ArrayList<>(runs.size() + 1);
+        sources.add(new Merge.MemtableSource(memtable));
+        for (Run run : runs) {
+            sources.add(new Merge.RunSource(run));
+        }
+        return new Merge(sources);
+    }
+
+    void readRecord(Merge.Source source, RECORD record)
+    {
+        record.z(source.z);
+        serializer.readFrom(source.recordBytes(), record);
+    }
+
+    // Removes the record with the given z-value and sequence number.
+    void delete(long z, long sequence) throws IOException
+    {
+        SequencedKey key = new SequencedKey(z, sequence);
+        if (memtable.remove(key) == null) {
+            // The record is in a run.
+            memtable.put(key, TOMBSTONE);
+            memtableEntries++;
+            flushMemtableIfFull();
+        } else {
+            memtableEntries--;
+        }
+    }
+
+    // For use by this class
+
+    private byte[] serialize(RECORD record)
+    {
+        boolean serialized = false;
+        while (!serialized) {
+            serializationBuffer.clear();
+            try {
+                serializer.writeTo(record, serializationBuffer);
+                serialized = true;
+            } catch (BufferOverflowException e) {
+                serializationBuffer = ByteBuffer.allocate(serializationBuffer.capacity() * 2);
+            }
+        }
+        serializationBuffer.flip();
+        byte[] bytes = new byte[serializationBuffer.remaining()];
+        serializationBuffer.get(bytes);
+        return bytes;
+    }
+
+    private void flushMemtableIfFull() throws IOException
+    {
+        if (memtableEntries >= memtableSize) {
+            Run run = writeRun(new Merge(Collections.<Merge.Source>singletonList(new Merge.MemtableSource(memtable))),
+                               false);
+            synchronized (this) {
+                if (run != null) {
+                    List<Run> newRuns = new ArrayList<>(runs.size() + 1);
+                    newRuns.add(run);
+                    newRuns.addAll(runs);
+                    runs = newRuns;
+                }
+                memtable = new ConcurrentSkipListMap<>();
+                memtableEntries = 0;
+                if (runs.size() > maxRuns && compacting.compareAndSet(false, true)) {
+                    final List<Run> compactionInput = runs;
+                    compactor.execute(
+                        new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                compact(compactionInput);
+                            }
+                        });
+                }
+            }
+        }
+    }
+
+    // Merges the given runs, which must be the oldest runs, into one.
+    private void compact(List<Run> input)
+    {
+        try {
+            List<Merge.Source> sources = new ArrayList<>(input.size());
+            for (Run run : input) {
+                sources.add(new Merge.RunSource(run));
+            }
+            // Every run older than a tombstone is being merged, so tombstones, and the records they remove,
+            // can be discarded.
+            Run merged = writeRun(new Merge(sources), true);
+            synchronized (this) {
+                List<Run> newRuns = new ArrayList<>(runs.subList(0, runs.size() - input.size()));
+                if (merged != null) {
+                    newRuns.add(merged);
+                }
+                runs = newRuns;
+            }
+            for (Run run : input) {
+                run.delete();
+            }
+        } catch (IOException | RuntimeException e) {
+            compactionFailure = e;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // Writes the entries of the merge to a new run. Returns null if there are no entries to write.
+    private Run writeRun(Merge merge, boolean discardTombstones) throws IOException
+    {
+        File file = new File(directory, String.format("run-%s-%s.lsm", id, runIdGenerator.getAndIncrement()));
+        boolean empty;
+        try (Run.Writer writer = new Run.Writer(file)) {
+            merge.seek(Long.MIN_VALUE);
+            Merge.Source source;
+            while ((source = merge.next()) != null) {
+                if (!(discardTombstones && source.tombstone)) {
+                    writer.append(source.z, source.sequence, source.tombstone, source.recordBytes());
+                }
+            }
+            empty = writer.empty();
+        }
+        Run run = null;
+        if (empty) {
+            file.delete();
+        } else {
+            run = new Run(file);
+        }
+        return run;
+    }
+
+    private void checkCompaction() throws IOException
+    {
+        Exception failure = compactionFailure;
+        if (failure != null) {
+            throw new IOException(String.format("%s: Compaction failed", this), failure);
+        }
+    }
+
+    // Class state
+
+    static final byte[] TOMBSTONE = new byte[0];
+    private static final AtomicLong idGenerator = new AtomicLong(0);
+    private static final int DEFAULT_MEMTABLE_SIZE = 100000;
+    private static final int DEFAULT_MAX_RUNS = 8;
+    private static final int INITIAL_SERIALIZATION_BUFFER_SIZE = 1024;
+
+    // Object state
+
+    private final long id = idGenerator.getAndIncrement();
+    private final File directory;
+    private final RecordSerializer<RECORD> serializer;
+    private final int memtableSize;
+    private final int maxRuns;
+    private final AtomicLong sequence = new AtomicLong(0);
+    private final AtomicLong runIdGenerator = new AtomicLong(0);
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private final ExecutorService compactor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, String.format("LSMIndex(%s) compaction", id));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private ByteBuffer serializationBuffer = ByteBuffer.allocate(INITIAL_SERIALIZATION_BUFFER_SIZE);
+    private volatile ConcurrentNavigableMap<SequencedKey, byte[]> memtable = new ConcurrentSkipListMap<>();
+    // Number of entries in memtable, maintained by the updating thread. ConcurrentSkipListMap.size() traverses the
+    // map.
+    private int memtableEntries = 0;
+    // Ordered from newest to oldest
+    private volatile List<Run> runs = Collections.emptyList();
+    private volatile Exception compactionFailure;
+    // Lengths of z-values added, as returned by zLengths()
+    private volatile long zLengths = 0;
+}
@@ -0,0 +1,189 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.lsm;
+
+import com.geophile.z.index.SequencedKey;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+// Merges the entries of a memtable and runs in (z, sequence number) order. The same entry may be present in more
+// than one source, e.g. a record in a run, and a tombstone for it in the memtable. Each entry is reported once, in
+// the version from the newest source containing it. The number of sources is small, so the next entry is found by
+// a linear scan of the sources rather than a priority queue.
+
+class Merge
+{
+    // Merge interface
+
+    void seek(long z)
+    {
+        for (Source source : sources) {
+            source.seek(z);
+        }
+        pending = null;
+    }
+
+    // Returns the source positioned at the next entry, or null if there are no more entries. The source's state
+    // is valid until the next call.
+    Source next()
+    {
+        if (pending != null) {
+            pending.advance();
+            pending = null;
+        }
+        Source next = null;
+        for (Source source : sources) {
+            if (source.valid() && (next == null || source.compareTo(next) < 0)) {
+                next = source;
+            }
+        }
+        if (next != null) {
+            for (Source source : sources) {
+                if (source != next && source.valid() && source.compareTo(next) == 0) {
+                    source.advance();
+                }
+            }
+            pending = next;
+        }
+        return next;
+    }
+
+    // sources are ordered from newest to oldest.
+    Merge(List<Source> sources)
+    {
+        this.sources = sources;
+    }
+
+    // Object state
+
+    private final List<Source> sources;
+    // The source returned by the most recent call of next(), which needs to be advanced.
+    private Source pending;
+
+    // Inner classes
+
+    static abstract class Source
+    {
+        final int compareTo(Source that)
+        {
+            return
+                z < that.z ? -1 :
+                z > that.z ? 1 :
+                sequence < that.sequence ? -1 :
+                sequence > that.sequence ? 1 : 0;
+        }
+
+        abstract boolean valid();
+
+        abstract void seek(long z);
+
+        abstract void advance();
+
+        abstract ByteBuffer recordBytes();
+
+        long z;
+        long sequence;
+        boolean tombstone;
+    }
+
+    static class MemtableSource extends Source
+    {
+        @Override
+        boolean valid()
+        {
+            return entry != null;
+        }
+
+        @Override
+        void seek(long z)
+        {
+            set(memtable.ceilingEntry(new SequencedKey(z, Long.MIN_VALUE)));
+        }
+
+        @Override
+        void advance()
+        {
+            set(memtable.higherEntry(entry.getKey()));
+        }
+
+        @Override
+        ByteBuffer recordBytes()
+        {
+            return ByteBuffer.wrap(entry.getValue());
+        }
+
+        MemtableSource(ConcurrentNavigableMap<SequencedKey, byte[]> memtable)
+        {
+            this.memtable = memtable;
+        }
+
+        private void set(Map.Entry<SequencedKey, byte[]> entry)
+        {
+            this.entry = entry;
+            if (entry != null) {
+                z = entry.getKey().z;
+                sequence = entry.getKey().sequence;
+                tombstone = entry.getValue() == LSMIndex.TOMBSTONE;
+            }
+        }
+
+        private final ConcurrentNavigableMap<SequencedKey, byte[]> memtable;
+        private Map.Entry<SequencedKey, byte[]> entry;
+    }
+
+    static class RunSource extends Source
+    {
+        @Override
+        boolean valid()
+        {
+            return position < run.count();
+        }
+
+        @Override
+        void seek(long z)
+        {
+            position = run.lowerBound(z);
+            set();
+        }
+
+        @Override
+        void advance()
+        {
+            position++;
+            set();
+        }
+
+        @Override
+        ByteBuffer recordBytes()
+        {
+            run.recordBytes(position, view);
+            return view;
+        }
+
+        RunSource(Run run)
+        {
+            this.run = run;
+            this.view = run.newView();
+        }
+
+        private void set()
+        {
+            if (position < run.count()) {
+                z = run.z(position);
+                sequence = run.sequence(position);
+                tombstone = run.tombstone(position);
+            }
+        }
+
+        private final Run run;
+        private final ByteBuffer view;
+        private int position;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.lsm;
+
+import com.geophile.z.index.BloomFilter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// An immutable sorted run of an LSMIndex, stored in a file which is mapped into memory. Entries are ordered by
+// (z, sequence number). File format (all integers are big-endian):
+//
+//     header:         int     MAGIC
+//                     int     FORMAT_VERSION
+//                     long    entry count, n
+//                     long    position of offsets column
+//                     long    position of filter
+//                     long    filter size, in longs
+//     rows:           n rows, each: long z, long (sequence number << 1 | tombstone), int size, size record bytes
+//     offsets column: n longs, the position of each row
+//     filter:         a BloomFilter of the run's z-values, including those of tombstones
+//
+// A run file must not exceed 2GB.
+
+class Run
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return file.getName();
+    }
+
+    // Run interface
+
+    int count()
+    {
+        return n;
+    }
+
+    long z(int i)
+    {
+        return buffer.getLong(rowPosition(i));
+    }
+
+    long sequence(int i)
+    {
+        return buffer.getLong(rowPosition(i) + 8) >>> 1;
+    }
+
+    boolean tombstone(int i)
+    {
+        return (buffer.getLong(rowPosition(i) + 8) & 1) != 0;
+    }
+
+    // Sets view's position and limit to the bytes of the record in row i. view must be a duplicate of this run's
+    // buffer, obtained by newView().
+    void recordBytes(int i, ByteBuffer view)
+    {
+        int position = rowPosition(i) + ROW_HEADER_SIZE;
+        int size = buffer.getInt(position - 4);
+        view.limit(position + size);
+        view.position(position);
+    }
+
+    ByteBuffer newView()
+    {
+        return buffer.duplicate();
+    }
+
+    // Returns the position of the first entry whose z-value is >= z.
+    int lowerBound(long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (z(mid) < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns false if the run definitely has no entry with the given z-value.
+    boolean mightContain(long z)
+    {
+        return filter.mightContain(z);
+    }
+
+    void delete()
+    {
+        // If a cursor is still reading this run, the mapping remains valid until it is garbage collected.
+        file.delete();
+    }
+
+    Run(File file) throws IOException
+    {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s: Run exceeds 2GB", file));
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(String.format("%s is not an LSMIndex run", file));
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException(String.format("%s: Unsupported format version %s", file, buffer.getInt(4)));
+        }
+        n = (int) buffer.getLong(8);
+        offsetsPosition = (int) buffer.getLong(16);
+        ByteBuffer filterBuffer = buffer.duplicate();
+        int filterPosition = (int) buffer.getLong(24);
+        int filterSize = (int) buffer.getLong(32);
+        filterBuffer.position(filterPosition);
+        filterBuffer.limit(filterPosition + filterSize * 8);
+        filter = new BloomFilter(filterBuffer.slice().asLongBuffer());
+    }
+
+    // For use by this class
+
+    private int rowPosition(int i)
+    {
+        return (int) buffer.getLong(offsetsPosition + i * 8);
+    }
+
+    // Class state
+
+    private static final int MAGIC = 0x67656f6c;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 8;
+    private static final int ROW_HEADER_SIZE = 8 + 8 + 4;
+
+    // Object state
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int n;
+    private final int offsetsPosition;
+    private final BloomFilter filter;
+
+    // Inner classes
+
+    // Writes a run file. Entries must be appended in (z, sequence number) order.
+    static class Writer implements Closeable
+    {
+        @Override
+        public void close() throws IOException
+        {
+            long offsetsPosition = position;
+            for (int i = 0; i < n; i++) {
+                output.writeLong(offsets[i]);
+            }
+            long filterPosition = offsetsPosition + n * 8L;
+            BloomFilter filter = new BloomFilter(distinctZs);
+            for (int i = 0; i < distinctZs; i++) {
+                filter.add(zs[i]);
+            }
+            LongBuffer filterWords = filter.words();
+            int filterSize = filterWords.remaining();
+            while (filterWords.hasRemaining()) {
+                output.writeLong(filterWords.get());
+            }
+            if (filterPosition + filterSize * 8L > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s: Run exceeds 2GB", file));
+            }
+            output.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putLong(n);
+            header.putLong(offsetsPosition);
+            header.putLong(filterPosition);
+            header.putLong(filterSize);
+            header.flip();
+            FileChannel channel = fileOutput.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            output.close();
+        }
+
+        void append(long z, long sequence, boolean tombstone, ByteBuffer record) throws IOException
+        {
+            if (n == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(MIN_OFFSETS, n * 2));
+            }
+            offsets[n++] = position;
+            if (distinctZs == 0 || zs[distinctZs - 1] != z) {
+                if (distinctZs == zs.length) {
+                    zs = Arrays.copyOf(zs, Math.max(MIN_OFFSETS, distinctZs * 2));
+                }
+                zs[distinctZs++] = z;
+            }
+            int size = record.remaining();
+            output.writeLong(z);
+            output.writeLong(sequence << 1 | (tombstone ? 1 : 0));
+            output.writeInt(size);
+            if (record.hasArray()) {
+                output.write(record.array(), record.arrayOffset() + record.position(), size);
+            } else {
+                if (scratch.length < size) {
+                    scratch = new byte[size];
+                }
+                record.duplicate().get(scratch, 0, size);
+                output.write(scratch, 0, size);
+            }
+            position += ROW_HEADER_SIZE + size;
+            if (position > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s: Run exceeds 2GB", file));
+            }
+        }
+
+        boolean empty()
+        {
+            return n == 0;
+        }
+
+        Writer(File file) throws IOException
+        {
+            this.file = file;
+            this.fileOutput = new FileOutputStream(file);
+            this.output = new DataOutputStream(new BufferedOutputStream(fileOutput, BUFFER_SIZE));
+            // Placeholder for the header, which is written by close().
+            output.write(new byte[HEADER_SIZE]);
+        }
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final int MIN_OFFSETS = 1024;
+
+        private final File file;
+        private final FileOutputStream fileOutput;
+        private final DataOutputStream output;
+        private long position = HEADER_SIZE;
+        private long[] offsets = new long[0];
+        private int n = 0;
+        // Distinct z-values appended, for building the run's filter
+        private long[] zs = new long[0];
+        private int distinctZs = 0;
+        // For copying records from a run
+        private byte[] scratch = new byte[0];
+    }
+}
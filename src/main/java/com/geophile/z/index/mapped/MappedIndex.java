@@ -0,0 +1,247 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.BloomFilter;
+import com.geophile.z.index.RecordSerializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedIndex is a read-only {@link com.geophile.z.Index} served directly from a file mapped into memory.
+ * The file is created by {@link com.geophile.z.index.mapped.MappedIndexWriter}. Opening a MappedIndex
+ * reads only the file's header, so startup time does not depend on the size of the index, and the index
+ * contents are not stored on the Java heap. Records are deserialized, using a
+ * {@link com.geophile.z.index.RecordSerializer}, as a cursor visits them, so records retrieved from
+ * a MappedIndex are not stable.
+ * <p>
+ * File format (all integers are big-endian):
+ * <pre>
+ *     header:         int     MAGIC
+ *                     int     FORMAT_VERSION
+ *                     long    record count, n
+ *                     long    position of data region
+ *                     long    size of data region
+ *                     long    position of z column
+ *                     long    position of offsets column
+ *                     long    position of filter
+ *                     long    filter size, in longs
+ *                     long    z-value lengths: bit i is set if a z-value of length i is present
+ *     data region:    serialized records, in z-order
+ *     z column:       n longs, the z-values of the records, in ascending order
+ *     offsets column: n + 1 longs. Record i occupies [offsets[i], offsets[i + 1]) of the data region.
+ *     filter:         a {@link com.geophile.z.index.BloomFilter} of the z-values
+ * </pre>
+ * The filter and z-value lengths are used by {@link #ancestorCandidates(long, long, long[])} to avoid searching
+ * for z-values that are not present.
+ * Each region is mapped separately, and must not exceed 2GB.
+ * A MappedIndex is safe for use by multiple threads, each using its own cursor.
+ */
+
+public abstract class MappedIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        throw new UnsupportedOperationException(String.format("%s is read-only", this));
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        throw new UnsupportedOperationException(String.format("%s is read-only", this));
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new MappedIndexCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        int n = super.ancestorCandidates(z, zLowerBound, candidates);
+        int kept = 1;
+        for (int i = 1; i < n; i++) {
+            if (filter.mightContain(candidates[i])) {
+                candidates[kept++] = candidates[i];
+            }
+        }
+        return kept;
+    }
+
+    // MappedIndex interface
+
+    /**
+     * Returns the number of records in this index.
+     * @return The number of records in this index.
+     */
+    public long size()
+    {
+        return n;
+    }
+
+    /**
+     * Opens a file created by {@link com.geophile.z.index.mapped.MappedIndexWriter}.
+     * @param file The file containing the index.
+     * @param serializer Deserializes records. Must be compatible with the serializer used to write the file.
+     * @throws IOException if the file cannot be read or is not a MappedIndex file.
+     */
+    public MappedIndex(File file, RecordSerializer<RECORD> serializer) throws IOException
+    {
+        this.name = String.format("MappedIndex(%s)", file);
+        this.serializer = serializer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            int read;
+            do {
+                read = channel.read(header);
+            } while (read > 0 && header.hasRemaining());
+            if (header.hasRemaining()) {
+                throw new IOException(String.format("%s: file is too short to contain a header", this));
+            }
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != MAGIC) {
+                throw new IOException(String.format("%s: not a MappedIndex file", this));
+            }
+            if (version != FORMAT_VERSION) {
+                throw new IOException(String.format("%s: unsupported format version %s", this, version));
+            }
+            n = header.getLong();
+            long dataPosition = header.getLong();
+            long dataSize = header.getLong();
+            long zPosition = header.getLong();
+            long offsetsPosition = header.getLong();
+            long filterPosition = header.getLong();
+            long filterSize = header.getLong();
+            zLengths = header.getLong();
+            if (n > MAX_RECORDS) {
+                throw new IOException(String.format("%s: too many records (%s)", this, n));
+            }
+            data = map(channel, dataPosition, dataSize);
+            zs = map(channel, zPosition, n * 8).asLongBuffer();
+            offsets = map(channel, offsetsPosition, (n + 1) * 8).asLongBuffer();
+            filter = new BloomFilter(map(channel, filterPosition, filterSize * 8).asLongBuffer());
+        }
+    }
+
+    // For use by this package
+
+    int count()
+    {
+        return (int) n;
+    }
+
+    long z(int position)
+    {
+        return zs.get(position);
+    }
+
+    // Returns the position of the first record whose z-value is >= z, or count() if there is no such record.
+    int lowerBound(long z)
+    {
+        int lo = 0;
+        int hi = (int) n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs.get(mid) < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // buffer must be a duplicate of data, owned by the caller.
+    void readRecord(int position, ByteBuffer buffer, RECORD record)
+    {
+        int start = (int) offsets.get(position);
+        int end = (int) offsets.get(position + 1);
+        buffer.limit(end);
+        buffer.position(start);
+        serializer.readFrom(buffer, record);
+        record.z(zs.get(position));
+    }
+
+    ByteBuffer newDataBuffer()
+    {
+        return data.duplicate();
+    }
+
+    // For use by this class
+
+    private ByteBuffer map(FileChannel channel, long position, long size) throws IOException
+    {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("%s: region at %s is too large to map (%s bytes)",
+                                                this, position, size));
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    // Class state
+
+    static final int MAGIC = 0x67656f6d; // "geom"
+    static final int FORMAT_VERSION = 3;
+    static final int HEADER_SIZE = 72;
+    private static final long MAX_RECORDS = Integer.MAX_VALUE / 8 - 1;
+
+    // Object state
+
+    private final String name;
+    private final RecordSerializer<RECORD> serializer;
+    private final long n;
+    private final ByteBuffer data;
+    private final LongBuffer zs;
+    private final LongBuffer offsets;
+    private final BloomFilter filter;
+    private final long zLengths;
+}
@@ -0,0 +1,82 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class MappedIndexCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent()
+    {
+        throw new UnsupportedOperationException(String.format("%s is read-only", index));
+    }
+
+    // MappedIndexCursor interface
+
+    public MappedIndexCursor(MappedIndex<RECORD> index)
+    {
+        super(index);
+        this.index = index;
+        this.record = index.newRecord();
+        this.buffer = index.newDataBuffer();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                position = index.lowerBound(startZ);
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (position < index.count()) {
+            index.readRecord(position, buffer, record);
+            current(record);
+            state(State.IN_USE);
+            position++;
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    // Object state
+
+    private final MappedIndex<RECORD> index;
+    // Records are deserialized here, and then copied to the Cursor's current record.
+    private final RECORD record;
+    // A view of the index's data region, owned by this cursor.
+    private final ByteBuffer buffer;
+    private long startZ;
+    private int position;
+}
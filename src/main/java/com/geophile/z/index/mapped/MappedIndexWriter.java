@@ -0,0 +1,238 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.BloomFilter;
+import com.geophile.z.index.RecordSerializer;
+import com.geophile.z.space.SpaceImpl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Creates a file that can be opened as a {@link com.geophile.z.index.mapped.MappedIndex}. Records must be
+ * appended in z-order. The file is complete once {@link #close()} returns. See
+ * {@link com.geophile.z.index.mapped.MappedIndex} for a description of the file format.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} written.
+ */
+
+public class MappedIndexWriter<RECORD extends Record> implements Closeable
+{
+    // Closeable interface
+
+    /**
+     * Writes the z and offsets columns, and the header, completing the file.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (channel.isOpen()) {
+            try {
+                flushData();
+                long dataSize = dataPosition;
+                long zPosition = MappedIndex.HEADER_SIZE + dataSize;
+                long offsetsPosition = zPosition + n * 8;
+                ensureColumnSpace(n + 1);
+                offsets[n] = dataPosition;
+                writeColumn(zs, n, zPosition);
+                writeColumn(offsets, n + 1, offsetsPosition);
+                long filterPosition = offsetsPosition + (n + 1) * 8L;
+                long filterSize = writeFilter(filterPosition);
+                ByteBuffer header = ByteBuffer.allocate(MappedIndex.HEADER_SIZE);
+                header.putInt(MappedIndex.MAGIC);
+                header.putInt(MappedIndex.FORMAT_VERSION);
+                header.putLong(n);
+                header.putLong(MappedIndex.HEADER_SIZE);
+                header.putLong(dataSize);
+                header.putLong(zPosition);
+                header.putLong(offsetsPosition);
+                header.putLong(filterPosition);
+                header.putLong(filterSize);
+                header.putLong(zLengths);
+                header.flip();
+                write(header, 0);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // MappedIndexWriter interface
+
+    /**
+     * Appends a record to the file.
+     * @param record The record to be written. Its z-value must not be less than that of the previously
+     *               appended record.
+     * @throws IOException
+     */
+    public void append(RECORD record) throws IOException
+    {
+        long z = record.z();
+        if (z < lastZ) {
+            throw new IllegalArgumentException(String.format("Records must be appended in z-order: %s < %s",
+                                                              SpaceImpl.formatZ(z), SpaceImpl.formatZ(lastZ)));
+        }
+        ensureColumnSpace(n + 2);
+        zs[n] = z;
+        offsets[n] = dataPosition + dataBuffer.position();
+        boolean written = false;
+        while (!written) {
+            int start = dataBuffer.position();
+            try {
+                serializer.writeTo(record, dataBuffer);
+                written = true;
+            } catch (BufferOverflowException e) {
+                dataBuffer.position(start);
+                if (start > 0) {
+                    flushData();
+                } else {
+                    dataBuffer = ByteBuffer.allocate(dataBuffer.capacity() * 2);
+                }
+            }
+        }
+        lastZ = z;
+        zLengths |= 1L << SpaceImpl.length(z);
+        n++;
+    }
+
+    /**
+     * Writes the contents of the given index to a file.
+     * @param index The index to be written.
+     * @param serializer Serializes the index's records.
+     * @param file The file to be created.
+     * @return The number of records written.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static <RECORD extends Record> long write(Index<RECORD> index,
+                                                     RecordSerializer<RECORD> serializer,
+                                                     File file)
+        throws IOException, InterruptedException
+    {
+        try (MappedIndexWriter<RECORD> writer = new MappedIndexWriter<>(file, serializer)) {
+            Cursor<RECORD> cursor = index.cursor();
+            RECORD zMinKey = index.newKeyRecord();
+            zMinKey.z(SpaceImpl.Z_MIN);
+            cursor.goTo(zMinKey);
+            RECORD record;
+            while ((record = cursor.next()) != null) {
+                writer.append(record);
+            }
+            return writer.n;
+        }
+    }
+
+    /**
+     * Creates a file to contain a {@link com.geophile.z.index.mapped.MappedIndex}. An existing file
+     * is overwritten.
+     * @param file The file to be created.
+     * @param serializer Serializes records.
+     * @throws IOException
+     */
+    public MappedIndexWriter(File file, RecordSerializer<RECORD> serializer) throws IOException
+    {
+        this.serializer = serializer;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+    }
+
+    // For use by this class
+
+    private void flushData() throws IOException
+    {
+        dataBuffer.flip();
+        int size = dataBuffer.remaining();
+        write(dataBuffer, MappedIndex.HEADER_SIZE + dataPosition);
+        dataPosition += size;
+        dataBuffer.clear();
+    }
+
+    private void writeColumn(long[] column, int count, long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(COLUMN_BUFFER_SIZE);
+        int i = 0;
+        while (i < count) {
+            buffer.clear();
+            while (i < count && buffer.remaining() >= 8) {
+                buffer.putLong(column[i++]);
+            }
+            buffer.flip();
+            int size = buffer.remaining();
+            write(buffer, position);
+            position += size;
+        }
+    }
+
+    // Writes a filter of the distinct z-values, and returns its size in longs.
+    private long writeFilter(long position) throws IOException
+    {
+        int distinctZs = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || zs[i] != zs[i - 1]) {
+                distinctZs++;
+            }
+        }
+        BloomFilter filter = new BloomFilter(distinctZs);
+        for (int i = 0; i < n; i++) {
+            filter.add(zs[i]);
+        }
+        LongBuffer words = filter.words();
+        int size = words.remaining();
+        ByteBuffer buffer = ByteBuffer.allocate(size * 8);
+        buffer.asLongBuffer().put(words);
+        write(buffer, position);
+        return size;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void ensureColumnSpace(int size)
+    {
+        if (zs.length < size) {
+            int newLength = Math.max(MIN_COLUMN_SIZE, (int) (size * 1.5));
+            zs = Arrays.copyOf(zs, newLength);
+            offsets = Arrays.copyOf(offsets, newLength);
+        }
+    }
+
+    // Class state
+
+    private static final int DATA_BUFFER_SIZE = 64 * 1024;
+    private static final int COLUMN_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_COLUMN_SIZE = 1024;
+
+    // Object state
+
+    private final RecordSerializer<RECORD> serializer;
+    private final FileChannel channel;
+    private ByteBuffer dataBuffer = ByteBuffer.allocate(DATA_BUFFER_SIZE);
+    // Position in the data region of the first byte of dataBuffer
+    private long dataPosition = 0;
+    private long[] zs = new long[0];
+    private long[] offsets = new long[0];
+    private int n = 0;
+    private long lastZ = Long.MIN_VALUE;
+    private long zLengths = 0;
+}
@@ -0,0 +1,150 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.navigable;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+
+/**
+ * A NavigableMapCursor visits the records of a {@link com.geophile.z.index.navigable.NavigableMapIndex}. The cursor
+ * is positioned within the list of records for one z-value, and moves to the next z-value using
+ * {@link java.util.NavigableMap#higherKey(Object)}, so neither goTo nor next creates an iterator. If the index is
+ * updated, the cursor relocates the record it most recently returned, and continues from there.
+ */
+
+public class NavigableMapCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                if (modCount != index.modCount()) {
+                    resume();
+                }
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        RECORD record = null;
+        if (position < records.size()) {
+            record = records.get(position++);
+        } else {
+            Long zNext = map.higherKey(z);
+            if (zNext != null) {
+                z = zNext;
+                records = map.get(zNext);
+                position = 0;
+                record = records.get(position++);
+            }
+        }
+        if (record == null) {
+            close();
+        } else {
+            current(record);
+            state(State.IN_USE);
+            last = record;
+            deleted = false;
+        }
+        return record;
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        // Copy the key, so that the caller can reuse it, without allocating.
+        key.copyTo(goToKey);
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean removed = false;
+        if (state() == State.IN_USE && !deleted) {
+            removed = index.delete(last);
+            deleted = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        records = Collections.emptyList();
+        last = null;
+    }
+
+    // NavigableMapCursor interface
+
+    public NavigableMapCursor(NavigableMapIndex<RECORD> index)
+    {
+        super(index);
+        this.index = index;
+        this.map = index.map();
+        this.goToKey = index.newKeyRecord();
+    }
+
+    // For use by this class
+
+    private void startIteration()
+    {
+        long zKey = goToKey.z();
+        Long zStart = map.ceilingKey(zKey);
+        if (zStart == null) {
+            // next() will find that there is no higher z-value.
+            z = zKey;
+            records = Collections.emptyList();
+            position = 0;
+        } else {
+            z = zStart;
+            records = map.get(zStart);
+            position = z == zKey ? index.lowerBound(records, goToKey) : 0;
+        }
+        modCount = index.modCount();
+    }
+
+    // The index has been updated, so records may no longer be in the map, and last may have moved.
+    private void resume()
+    {
+        List<RECORD> records = map.get(z);
+        if (records == null) {
+            this.records = Collections.emptyList();
+            position = 0;
+        } else {
+            this.records = records;
+            position = index.upperBound(records, last);
+        }
+        modCount = index.modCount();
+    }
+
+    // Object state
+
+    private final NavigableMapIndex<RECORD> index;
+    private final NavigableMap<Long, List<RECORD>> map;
+    private final RECORD goToKey;
+    // The cursor is positioned before records.get(position), and records contains the records with z-value z.
+    private long z;
+    private List<RECORD> records = Collections.emptyList();
+    private int position;
+    // The record most recently returned by next
+    private RECORD last;
+    private boolean deleted;
+    private int modCount;
+}
@@ -0,0 +1,213 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.navigable;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.DuplicateRecordException;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * NavigableMapIndex implements the {@link com.geophile.z.Index} interface in terms of any
+ * {@link java.util.NavigableMap} keyed by z-value, e.g. a {@link java.util.TreeMap} or a
+ * {@link java.util.concurrent.ConcurrentSkipListMap}. The map associates each z-value with a list of the records
+ * having that z-value, ordered by a record comparator, so any number of records may have the same z-value. The
+ * comparator need only distinguish records with the same z-value. A key record, as returned by
+ * {@link #newKeyRecord()} with only its z-value set, must not be greater than any record with that z-value.
+ * <p>
+ * Records are copied when added, and are not modified while in the index, so records are stable. A
+ * NavigableMapIndex is not safe for simultaneous use by multiple threads, whatever the NavigableMap.
+ */
+
+public abstract class NavigableMapIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("NavigableMapIndex(%s)", map.getClass().getSimpleName());
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        long z = copy.z();
+        List<RECORD> records = map.get(z);
+        if (records == null) {
+            records = new ArrayList<>(1);
+            map.put(z, records);
+        }
+        int position = lowerBound(records, copy);
+        if (position < records.size() && recordComparator.compare(records.get(position), copy) == 0) {
+            throw new DuplicateRecordException(copy);
+        }
+        records.add(position, copy);
+        zLengths |= 1L << SpaceImpl.length(z);
+        modCount++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removed = false;
+        List<RECORD> records = map.get(z);
+        if (records != null) {
+            for (int i = 0; !removed && i < records.size(); i++) {
+                if (filter.select(records.get(i))) {
+                    removeAt(z, records, i);
+                    removed = true;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new NavigableMapCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // NavigableMapIndex interface
+
+    /**
+     * Creates a NavigableMapIndex on a {@link java.util.TreeMap}.
+     * @param recordComparator Orders records with the same z-value.
+     */
+    public NavigableMapIndex(Comparator<? super RECORD> recordComparator)
+    {
+        this(new TreeMap<Long, List<RECORD>>(), recordComparator);
+    }
+
+    /**
+     * Creates a NavigableMapIndex on the given map, which must be empty, and must not be accessed other than through
+     * the NavigableMapIndex.
+     * @param map Associates each z-value with the records having that z-value. Must order z-values numerically.
+     * @param recordComparator Orders records with the same z-value.
+     */
+    public NavigableMapIndex(NavigableMap<Long, List<RECORD>> map, Comparator<? super RECORD> recordComparator)
+    {
+        if (!map.isEmpty()) {
+            throw new IllegalArgumentException("The map must be empty");
+        }
+        this.map = map;
+        this.recordComparator = recordComparator;
+    }
+
+    // For use by this package
+
+    NavigableMap<Long, List<RECORD>> map()
+    {
+        return map;
+    }
+
+    // Returns the position of the first record in records that is not less than key.
+    int lowerBound(List<RECORD> records, RECORD key)
+    {
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (recordComparator.compare(records.get(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the position of the first record in records that is greater than key.
+    int upperBound(List<RECORD> records, RECORD key)
+    {
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (recordComparator.compare(records.get(mid), key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Removes a record retrieved by a cursor.
+    boolean delete(RECORD record)
+    {
+        boolean removed = false;
+        long z = record.z();
+        List<RECORD> records = map.get(z);
+        if (records != null) {
+            int position = lowerBound(records, record);
+            if (position < records.size() && records.get(position) == record) {
+                removeAt(z, records, position);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    // Incremented by each update, so that a cursor can tell when its position in a list of records may have changed.
+    int modCount()
+    {
+        return modCount;
+    }
+
+    // For use by this class
+
+    private void removeAt(long z, List<RECORD> records, int position)
+    {
+        records.remove(position);
+        if (records.isEmpty()) {
+            map.remove(z);
+        }
+        modCount++;
+    }
+
+    // Object state
+
+    private final NavigableMap<Long, List<RECORD>> map;
+    private final Comparator<? super RECORD> recordComparator;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private int modCount = 0;
+}
@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.navigable;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NavigableSet;
+
+/**
+ * A NavigableSetCursor visits the records of a {@link com.geophile.z.index.navigable.NavigableSetIndex}. goTo
+ * doesn't allocate anything: The first record is located by {@link java.util.NavigableSet#ceiling(Object)}, and
+ * the next few by {@link java.util.NavigableSet#higher(Object)}. Only if a scan continues past that is an iterator
+ * on a tail set created, so that a long scan doesn't search the set for each record. The iterator is abandoned
+ * if the index is updated.
+ */
+
+public class NavigableSetCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        RECORD record;
+        switch (state()) {
+            case NEVER_USED:
+                record = set.ceiling(goToKey);
+                iterator = null;
+                scanLength = 0;
+                break;
+            case IN_USE:
+                if (iterator != null && iteratorModCount == index.modCount()) {
+                    record = iterator.hasNext() ? iterator.next() : null;
+                } else if (++scanLength > ITERATOR_THRESHOLD) {
+                    iterator = set.tailSet(last, false).iterator();
+                    iteratorModCount = index.modCount();
+                    record = iterator.hasNext() ? iterator.next() : null;
+                } else {
+                    record = set.higher(last);
+                }
+                break;
+            case DONE:
+            default:
+                assert current() == null;
+                return null;
+        }
+        if (record == null) {
+            close();
+        } else {
+            current(record);
+            state(State.IN_USE);
+            last = record;
+            deleted = false;
+        }
+        return record;
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        // Copy the key, so that the caller can reuse it, without allocating.
+        key.copyTo(goToKey);
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean removed = false;
+        if (state() == State.IN_USE && !deleted) {
+            // This invalidates the iterator, if any. The scan continues from last using higher().
+            removed = index.delete(last);
+            deleted = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        iterator = null;
+        last = null;
+    }
+
+    // NavigableSetCursor interface
+
+    public NavigableSetCursor(NavigableSetIndex<RECORD> index)
+    {
+        super(index);
+        this.index = index;
+        this.set = index.set();
+        this.goToKey = index.newKeyRecord();
+    }
+
+    // Class state
+
+    // Number of records retrieved using higher() before switching to an iterator
+    private static final int ITERATOR_THRESHOLD = 8;
+
+    // Object state
+
+    private final NavigableSetIndex<RECORD> index;
+    private final NavigableSet<RECORD> set;
+    private final RECORD goToKey;
+    // The record most recently returned by next
+    private RECORD last;
+    private boolean deleted;
+    // Number of records retrieved since goTo
+    private int scanLength;
+    private Iterator<RECORD> iterator;
+    private int iteratorModCount;
+}
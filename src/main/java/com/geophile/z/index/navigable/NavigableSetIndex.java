@@ -0,0 +1,163 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.navigable;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.DuplicateRecordException;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * NavigableSetIndex implements the {@link com.geophile.z.Index} interface in terms of any
+ * {@link java.util.NavigableSet} of records, e.g. a {@link java.util.TreeSet} or a
+ * {@link java.util.concurrent.ConcurrentSkipListSet}. The set's comparator must order records by z-value, and
+ * then by whatever distinguishes records with the same z-value. A key record, as returned by
+ * {@link #newKeyRecord()} with only its z-value set, must not be greater than any record with that z-value.
+ * <p>
+ * Records are copied when added, and are not modified while in the index, so records are stable. A
+ * NavigableSetIndex is not safe for simultaneous use by multiple threads, whatever the NavigableSet.
+ */
+
+public abstract class NavigableSetIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("NavigableSetIndex(%s)", set.getClass().getSimpleName());
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        if (!set.add(copy)) {
+            throw new DuplicateRecordException(copy);
+        }
+        zLengths |= 1L << SpaceImpl.length(copy.z());
+        modCount++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        RECORD record = set.ceiling(key(z));
+        while (record != null && record.z() == z && !filter.select(record)) {
+            record = set.higher(record);
+        }
+        boolean removed = record != null && record.z() == z;
+        if (removed) {
+            set.remove(record);
+            modCount++;
+        }
+        return removed;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new NavigableSetCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // NavigableSetIndex interface
+
+    /**
+     * Creates a NavigableSetIndex on a {@link java.util.TreeSet}.
+     * @param recordComparator Orders records by z-value, and then by whatever distinguishes records with the same
+     *                         z-value.
+     */
+    public NavigableSetIndex(Comparator<? super RECORD> recordComparator)
+    {
+        this(new TreeSet<RECORD>(recordComparator));
+    }
+
+    /**
+     * Creates a NavigableSetIndex on the given set, which must be empty, and must not be accessed other than through
+     * the NavigableSetIndex.
+     * @param set Contains the index's records. Its comparator orders records by z-value, and then by whatever
+     *            distinguishes records with the same z-value.
+     */
+    public NavigableSetIndex(NavigableSet<RECORD> set)
+    {
+        if (set.comparator() == null) {
+            throw new IllegalArgumentException("The set must have a comparator");
+        }
+        if (!set.isEmpty()) {
+            throw new IllegalArgumentException("The set must be empty");
+        }
+        this.set = set;
+    }
+
+    // For use by this package
+
+    NavigableSet<RECORD> set()
+    {
+        return set;
+    }
+
+    // Removes a record retrieved by a cursor.
+    boolean delete(RECORD record)
+    {
+        boolean removed = set.remove(record);
+        if (removed) {
+            modCount++;
+        }
+        return removed;
+    }
+
+    // Incremented by each update, so that a cursor can tell when an iterator on the set may have been invalidated.
+    int modCount()
+    {
+        return modCount;
+    }
+
+    // For use by this class
+
+    private RECORD key(long z)
+    {
+        RECORD keyRecord = newKeyRecord();
+        keyRecord.z(z);
+        return keyRecord;
+    }
+
+    // Object state
+
+    private final NavigableSet<RECORD> set;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private int modCount = 0;
+}
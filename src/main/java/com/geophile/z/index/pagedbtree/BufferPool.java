@@ -0,0 +1,152 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.pagedbtree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Caches decoded pages of a PagedBTree file, evicting the least recently used page when full. Dirty pages are
+// written back when evicted, and by flush(). A page obtained by page() is pinned until the end of the current
+// operation, signalled by release(), so that it cannot be evicted while the operation is still using it. If every
+// cached page is pinned, the pool temporarily exceeds its capacity.
+
+class BufferPool
+{
+    // BufferPool interface
+
+    Page page(long id) throws IOException
+    {
+        Page page = pages.get(id);
+        if (page == null) {
+            misses++;
+            makeRoom();
+            buffer.clear();
+            read(buffer, id * pageSize);
+            buffer.flip();
+            page = Page.readFrom(id, buffer);
+            pages.put(id, page);
+        } else {
+            hits++;
+        }
+        pin(page);
+        return page;
+    }
+
+    // Adds a newly allocated page, which is dirty and pinned.
+    void add(Page page) throws IOException
+    {
+        makeRoom();
+        pages.put(page.id, page);
+        page.markDirty();
+        pin(page);
+    }
+
+    void release()
+    {
+        for (Page page : pinned) {
+            page.pins = 0;
+        }
+        pinned.clear();
+    }
+
+    void flush() throws IOException
+    {
+        for (Page page : pages.values()) {
+            if (page.dirty) {
+                writeBack(page);
+            }
+        }
+    }
+
+    long hits()
+    {
+        return hits;
+    }
+
+    long misses()
+    {
+        return misses;
+    }
+
+    BufferPool(FileChannel channel, int pageSize, int capacity)
+    {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocate(pageSize);
+    }
+
+    // For use by this class
+
+    private void pin(Page page)
+    {
+        if (page.pins++ == 0) {
+            pinned.add(page);
+        }
+    }
+
+    private void makeRoom() throws IOException
+    {
+        Iterator<Page> lru = pages.values().iterator();
+        while (pages.size() >= capacity && lru.hasNext()) {
+            Page page = lru.next();
+            if (page.pins == 0) {
+                if (page.dirty) {
+                    writeBack(page);
+                }
+                lru.remove();
+            }
+        }
+    }
+
+    private void writeBack(Page page) throws IOException
+    {
+        buffer.clear();
+        page.writeTo(buffer);
+        // Write the whole page so that the file always consists of complete pages.
+        buffer.position(pageSize);
+        buffer.flip();
+        write(buffer, page.id * pageSize);
+        page.dirty = false;
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException(String.format("Unexpected end of file at %s", position));
+            }
+            position += n;
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // Object state
+
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int capacity;
+    // For reading and writing pages. Safe to share because a PagedBTree is used by one thread at a time.
+    private final ByteBuffer buffer;
+    // Access-ordered, so iteration starts with the least recently used page.
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Page> pinned = new ArrayList<>();
+    private long hits = 0;
+    private long misses = 0;
+}
@@ -0,0 +1,326 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.pagedbtree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// The decoded form of a page of a PagedBTree file. A page is decoded when it is read into the BufferPool, and
+// encoded when the BufferPool writes it back.
+
+abstract class Page
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s(%s)", getClass().getSimpleName(), id);
+    }
+
+    // Page interface
+
+    abstract void writeTo(ByteBuffer buffer);
+
+    static Page readFrom(long id, ByteBuffer buffer) throws IOException
+    {
+        Page page;
+        byte type = buffer.get();
+        switch (type) {
+            case LEAF:
+                page = new Leaf(id, buffer.capacity());
+                break;
+            case INTERIOR:
+                page = new Interior(id, buffer.capacity());
+                break;
+            case FREE:
+                page = new Free(id);
+                break;
+            default:
+                throw new IOException(String.format("Page %s has unknown type %s", id, type));
+        }
+        page.readContents(buffer);
+        return page;
+    }
+
+    final void markDirty()
+    {
+        dirty = true;
+    }
+
+    Page(long id)
+    {
+        this.id = id;
+    }
+
+    // For use by subclasses
+
+    abstract void readContents(ByteBuffer buffer);
+
+    // Class state
+
+    static final long NO_PAGE = 0;
+    private static final byte LEAF = 1;
+    private static final byte INTERIOR = 2;
+    private static final byte FREE = 3;
+
+    // Object state
+
+    final long id;
+    boolean dirty;
+    // Number of times this page has been pinned by the current operation
+    int pins;
+
+    // Inner classes
+
+    // Leaf format: type (1 byte), n (4), prev (8), next (8), followed by n (z (8), size (4), record bytes).
+    static final class Leaf extends Page
+    {
+        @Override
+        void writeTo(ByteBuffer buffer)
+        {
+            buffer.put(LEAF);
+            buffer.putInt(n);
+            buffer.putLong(prev);
+            buffer.putLong(next);
+            for (int i = 0; i < n; i++) {
+                buffer.putLong(zs[i]);
+                buffer.putInt(records[i].length);
+                buffer.put(records[i]);
+            }
+        }
+
+        @Override
+        void readContents(ByteBuffer buffer)
+        {
+            n = buffer.getInt();
+            prev = buffer.getLong();
+            next = buffer.getLong();
+            bytes = HEADER_SIZE;
+            for (int i = 0; i < n; i++) {
+                zs[i] = buffer.getLong();
+                records[i] = new byte[buffer.getInt()];
+                buffer.get(records[i]);
+                bytes += ENTRY_OVERHEAD + records[i].length;
+            }
+        }
+
+        boolean fits(byte[] record)
+        {
+            return bytes + ENTRY_OVERHEAD + record.length <= pageSize;
+        }
+
+        void insert(int position, long z, byte[] record)
+        {
+            System.arraycopy(zs, position, zs, position + 1, n - position);
+            System.arraycopy(records, position, records, position + 1, n - position);
+            zs[position] = z;
+            records[position] = record;
+            bytes += ENTRY_OVERHEAD + record.length;
+            n++;
+            markDirty();
+        }
+
+        void delete(int position)
+        {
+            bytes -= ENTRY_OVERHEAD + records[position].length;
+            System.arraycopy(zs, position + 1, zs, position, n - position - 1);
+            System.arraycopy(records, position + 1, records, position, n - position - 1);
+            records[--n] = null;
+            markDirty();
+        }
+
+        // Moves records [from, n) to the empty leaf, right.
+        void moveTo(int from, Leaf right)
+        {
+            int move = n - from;
+            System.arraycopy(zs, from, right.zs, 0, move);
+            System.arraycopy(records, from, right.records, 0, move);
+            for (int i = from; i < n; i++) {
+                int size = ENTRY_OVERHEAD + records[i].length;
+                bytes -= size;
+                right.bytes += size;
+                records[i] = null;
+            }
+            n = from;
+            right.n = move;
+            markDirty();
+            right.markDirty();
+        }
+
+        // Returns the position of the first record to be moved by a split, so that each half is at most half full,
+        // plus one record.
+        int splitPosition()
+        {
+            int half = (bytes - HEADER_SIZE) / 2;
+            int leftBytes = 0;
+            int position = 0;
+            while (leftBytes < half) {
+                leftBytes += ENTRY_OVERHEAD + records[position++].length;
+            }
+            return Math.max(1, Math.min(position, n - 1));
+        }
+
+        static int maxRecordSize(int pageSize)
+        {
+            // Guarantees that after a split, the record being added fits in either half.
+            return (pageSize - HEADER_SIZE) / 4 - ENTRY_OVERHEAD;
+        }
+
+        Leaf(long id, int pageSize)
+        {
+            super(id);
+            this.pageSize = pageSize;
+            int capacity = (pageSize - HEADER_SIZE) / ENTRY_OVERHEAD;
+            this.zs = new long[capacity];
+            this.records = new byte[capacity][];
+        }
+
+        private static final int HEADER_SIZE = 1 + 4 + 8 + 8;
+        private static final int ENTRY_OVERHEAD = 8 + 4;
+
+        private final int pageSize;
+        final long[] zs;
+        final byte[][] records;
+        int n;
+        long prev = NO_PAGE;
+        long next = NO_PAGE;
+        // Size of the encoded leaf
+        int bytes = HEADER_SIZE;
+    }
+
+    // Interior format: type (1 byte), n (4), followed by n child page ids (8 each) and n - 1 keys (8 each).
+    // Every record in the subtree rooted at children[i] has a z-value <= keys[i], and every record in the subtree
+    // rooted at children[i + 1] has a z-value >= keys[i].
+    static final class Interior extends Page
+    {
+        @Override
+        void writeTo(ByteBuffer buffer)
+        {
+            buffer.put(INTERIOR);
+            buffer.putInt(n);
+            for (int i = 0; i < n; i++) {
+                buffer.putLong(children[i]);
+            }
+            for (int i = 0; i < n - 1; i++) {
+                buffer.putLong(keys[i]);
+            }
+        }
+
+        @Override
+        void readContents(ByteBuffer buffer)
+        {
+            n = buffer.getInt();
+            for (int i = 0; i < n; i++) {
+                children[i] = buffer.getLong();
+            }
+            for (int i = 0; i < n - 1; i++) {
+                keys[i] = buffer.getLong();
+            }
+        }
+
+        boolean full()
+        {
+            return n == children.length;
+        }
+
+        boolean contains(long child)
+        {
+            boolean contains = false;
+            for (int i = 0; !contains && i < n; i++) {
+                contains = children[i] == child;
+            }
+            return contains;
+        }
+
+        int childPosition(long child)
+        {
+            int position = 0;
+            while (children[position] != child) {
+                position++;
+            }
+            return position;
+        }
+
+        // Inserts right after the child at the given position.
+        void insertAfter(int position, long separator, long right)
+        {
+            position++;
+            System.arraycopy(children, position, children, position + 1, n - position);
+            System.arraycopy(keys, position - 1, keys, position, n - position);
+            children[position] = right;
+            keys[position - 1] = separator;
+            n++;
+            markDirty();
+        }
+
+        void delete(int position)
+        {
+            System.arraycopy(children, position + 1, children, position, n - position - 1);
+            if (n > 1) {
+                // Remove the separator preceding the child, or following it if the child is first.
+                int keyPosition = position == 0 ? 0 : position - 1;
+                System.arraycopy(keys, keyPosition + 1, keys, keyPosition, n - 2 - keyPosition);
+            }
+            n--;
+            markDirty();
+        }
+
+        // Moves children [from, n) to the empty interior page, right, and returns the separator between this
+        // page and right.
+        long moveTo(int from, Interior right)
+        {
+            int move = n - from;
+            long separator = keys[from - 1];
+            System.arraycopy(children, from, right.children, 0, move);
+            System.arraycopy(keys, from, right.keys, 0, move - 1);
+            n = from;
+            right.n = move;
+            markDirty();
+            right.markDirty();
+            return separator;
+        }
+
+        Interior(long id, int pageSize)
+        {
+            super(id);
+            int capacity = (pageSize - HEADER_SIZE + 8) / 16;
+            this.children = new long[capacity];
+            this.keys = new long[capacity - 1];
+        }
+
+        private static final int HEADER_SIZE = 1 + 4;
+
+        final long[] children;
+        final long[] keys;
+        int n;
+    }
+
+    // Free format: type (1 byte), id of the next free page (8).
+    static final class Free extends Page
+    {
+        @Override
+        void writeTo(ByteBuffer buffer)
+        {
+            buffer.put(FREE);
+            buffer.putLong(nextFree);
+        }
+
+        @Override
+        void readContents(ByteBuffer buffer)
+        {
+            nextFree = buffer.getLong();
+        }
+
+        Free(long id)
+        {
+            super(id);
+        }
+
+        long nextFree = NO_PAGE;
+    }
+}
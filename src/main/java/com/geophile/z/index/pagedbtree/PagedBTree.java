@@ -0,0 +1,610 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.pagedbtree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.BloomFilter;
+import com.geophile.z.index.RecordSerializer;
+import com.geophile.z.space.SpaceImpl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PagedBTree is a disk-based {@link com.geophile.z.Index}. Records are stored in the pages of a B+tree file,
+ * and serialized by a {@link com.geophile.z.index.RecordSerializer}. Pages are accessed through a buffer pool
+ * of fixed size, which evicts the least recently used page, writing it back if it has been modified. An index
+ * can therefore be much larger than the Java heap.
+ * <p>
+ * Updates are written to the file as pages are evicted, and all updates are made durable by {@link #flush()}
+ * and {@link #close()}, which force the file's contents to the storage device. There is no write-ahead log, so if
+ * the process terminates between an update and the following flush, the file may be left inconsistent.
+ * <p>
+ * Records are deserialized as a cursor visits them, so records retrieved from a PagedBTree are not stable.
+ * A leaf is removed from the tree as soon as it becomes empty, and its page is reused. Leaves that are not empty
+ * are not merged with their neighbors. A PagedBTree is not safe for use by multiple threads.
+ * <p>
+ * A {@link com.geophile.z.index.BloomFilter} of the z-values present is kept in memory, and used by
+ * {@link #ancestorCandidates(long, long, long[])} to avoid searching for z-values that are not present. The
+ * filter is not stored in the file. It is built by reading the leaves when an existing file is opened, and
+ * is rebuilt when the z-values added since it was built, including those of records since removed, fill it.
+ * <p>
+ * File format (all integers are big-endian): The file consists of pages of a fixed size. Page 0 contains
+ * the file header:
+ * <pre>
+ *     int     MAGIC
+ *     int     FORMAT_VERSION
+ *     int     page size
+ *     long    id of the root page
+ *     long    number of pages in the file
+ *     long    id of the first page on the free list, or 0 if there are no free pages
+ *     long    number of records
+ *     long    z-value lengths: bit i is set if a z-value of length i has been added
+ * </pre>
+ * Each other page is a leaf, an interior page, or a free page. The first byte of a page identifies its type.
+ * Leaves are linked in both directions.
+ */
+
+public abstract class PagedBTree<RECORD extends Record> extends Index<RECORD> implements Closeable
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("PagedBTree(%s)", file);
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record) throws IOException
+    {
+        try {
+            long z = record.z();
+            byte[] bytes = serialize(record);
+            List<Page.Interior> path = new ArrayList<>();
+            Page.Leaf leaf = descend(z, false, path);
+            int position = upperBound(leaf.zs, leaf.n, z);
+            if (!leaf.fits(bytes)) {
+                Page.Leaf right = splitLeaf(leaf, path);
+                if (position > leaf.n) {
+                    position -= leaf.n;
+                    leaf = right;
+                }
+            }
+            leaf.insert(position, z, bytes);
+            size++;
+            modifications++;
+            zLengths |= 1L << SpaceImpl.length(z);
+            if (filter != null) {
+                filter.add(z);
+                if (++filterZValues > filterCapacity) {
+                    buildFilter();
+                }
+            }
+        } finally {
+            bufferPool.release();
+        }
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter) throws IOException
+    {
+        try {
+            boolean removeRecordFound = false;
+            RECORD record = newRecord();
+            Page.Leaf leaf = descend(z, true, null);
+            int position = lowerBound(leaf.zs, leaf.n, z);
+            boolean sameZ = true;
+            while (leaf != null && sameZ && !removeRecordFound) {
+                if (position == leaf.n) {
+                    leaf = nextLeaf(leaf);
+                    position = 0;
+                } else if (leaf.zs[position] == z) {
+                    readRecord(leaf, position, record);
+                    if (filter.select(record)) {
+                        delete(leaf, position);
+                        removeRecordFound = true;
+                    } else {
+                        position++;
+                    }
+                } else {
+                    sameZ = false;
+                }
+            }
+            return removeRecordFound;
+        } finally {
+            bufferPool.release();
+        }
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new PagedBTreeCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        int n = super.ancestorCandidates(z, zLowerBound, candidates);
+        if (filter != null) {
+            int kept = 1;
+            for (int i = 1; i < n; i++) {
+                if (filter.mightContain(candidates[i])) {
+                    candidates[kept++] = candidates[i];
+                }
+            }
+            n = kept;
+        }
+        return n;
+    }
+
+    // Closeable interface
+
+    /**
+     * Flushes all updates to the file, and closes it.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (channel.isOpen()) {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    // PagedBTree interface
+
+    /**
+     * Writes all modified pages and the file header, and forces the file's contents to the storage device.
+     * All updates preceding the call are durable once this method returns.
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        bufferPool.flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(pageSize);
+        header.putLong(root);
+        header.putLong(pageCount);
+        header.putLong(freeList);
+        header.putLong(size);
+        header.putLong(zLengths);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    /**
+     * Returns the number of records in this index.
+     * @return The number of records in this index.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Opens a PagedBTree with the default page size and buffer pool size, creating the file if it does not exist
+     * or is empty.
+     * @param file The file containing the index.
+     * @param serializer Serializes records.
+     * @throws IOException
+     */
+    public PagedBTree(File file, RecordSerializer<RECORD> serializer) throws IOException
+    {
+        this(file, serializer, DEFAULT_PAGE_SIZE, DEFAULT_BUFFER_POOL_PAGES);
+    }
+
+    /**
+     * Opens a PagedBTree, creating the file if it does not exist or is empty.
+     * @param file The file containing the index.
+     * @param serializer Serializes records. A serialized record may occupy at most a quarter of a page.
+     * @param pageSize The page size, in bytes. If the file already exists, this must match the page size with
+     *                 which it was created.
+     * @param bufferPoolPages The number of pages cached in memory.
+     * @throws IOException
+     */
+    public PagedBTree(File file, RecordSerializer<RECORD> serializer, int pageSize, int bufferPoolPages)
+        throws IOException
+    {
+        if (pageSize < MIN_PAGE_SIZE) {
+            throw new IllegalArgumentException(String.format("pageSize %s < %s", pageSize, MIN_PAGE_SIZE));
+        }
+        if (bufferPoolPages < MIN_BUFFER_POOL_PAGES) {
+            throw new IllegalArgumentException(String.format("bufferPoolPages %s < %s",
+                                                             bufferPoolPages, MIN_BUFFER_POOL_PAGES));
+        }
+        this.file = file;
+        this.serializer = serializer;
+        this.pageSize = pageSize;
+        this.maxRecordSize = Page.Leaf.maxRecordSize(pageSize);
+        this.serializationBuffer = ByteBuffer.allocate(pageSize);
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.bufferPool = new BufferPool(channel, pageSize, bufferPoolPages);
+        if (channel.size() == 0) {
+            pageCount = 1;
+            freeList = Page.NO_PAGE;
+            root = allocateLeaf().id;
+            bufferPool.release();
+            flush();
+        } else {
+            readHeader();
+        }
+        buildFilter();
+    }
+
+    // For use by this package
+
+    // Returns the first leaf that could contain z (first = true), or the last one (first = false). If path is not
+    // null, it receives the interior pages visited.
+    Page.Leaf descend(long z, boolean first, List<Page.Interior> path) throws IOException
+    {
+        Page page = bufferPool.page(root);
+        while (page instanceof Page.Interior) {
+            Page.Interior interior = (Page.Interior) page;
+            if (path != null) {
+                path.add(interior);
+            }
+            int position =
+                first
+                ? lowerBound(interior.keys, interior.n - 1, z)
+                : upperBound(interior.keys, interior.n - 1, z);
+            page = bufferPool.page(interior.children[position]);
+        }
+        return (Page.Leaf) page;
+    }
+
+    Page page(long id) throws IOException
+    {
+        return bufferPool.page(id);
+    }
+
+    Page.Leaf nextLeaf(Page.Leaf leaf) throws IOException
+    {
+        return leaf.next == Page.NO_PAGE ? null : (Page.Leaf) bufferPool.page(leaf.next);
+    }
+
+    void readRecord(Page.Leaf leaf, int position, RECORD record)
+    {
+        record.z(leaf.zs[position]);
+        serializer.readFrom(ByteBuffer.wrap(leaf.records[position]), record);
+    }
+
+    // Returns true if the leaf became empty and was removed from the tree.
+    boolean delete(Page.Leaf leaf, int position) throws IOException
+    {
+        long z = leaf.zs[position];
+        leaf.delete(position);
+        size--;
+        modifications++;
+        boolean removeLeaf = leaf.n == 0 && leaf.id != root;
+        if (removeLeaf) {
+            if (leaf.prev != Page.NO_PAGE) {
+                Page.Leaf prev = (Page.Leaf) bufferPool.page(leaf.prev);
+                prev.next = leaf.next;
+                prev.markDirty();
+            }
+            if (leaf.next != Page.NO_PAGE) {
+                Page.Leaf next = (Page.Leaf) bufferPool.page(leaf.next);
+                next.prev = leaf.prev;
+                next.markDirty();
+            }
+            List<Page.Interior> path = new ArrayList<>();
+            findPath(bufferPool.page(root), z, leaf.id, path);
+            removeChild(path, path.size(), leaf);
+        }
+        return removeLeaf;
+    }
+
+    // Counts adds and deletes. A cursor that sees a change in this count can't rely on its position in a leaf.
+    long modifications()
+    {
+        return modifications;
+    }
+
+    void release()
+    {
+        bufferPool.release();
+    }
+
+    // Returns the position of the first element of keys[0:n) that is >= z.
+    static int lowerBound(long[] keys, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the position of the first element of keys[0:n) that is > z.
+    static int upperBound(long[] keys, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] <= z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // For use by this class
+
+    private void readHeader() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(String.format("%s: Incomplete header", file));
+            }
+        }
+        header.flip();
+        int magic = header.getInt();
+        if (magic != MAGIC) {
+            throw new IOException(String.format("%s is not a PagedBTree file", file));
+        }
+        int formatVersion = header.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException(String.format("%s: Unsupported format version %s", file, formatVersion));
+        }
+        int filePageSize = header.getInt();
+        if (filePageSize != pageSize) {
+            throw new IOException(String.format("%s: Page size is %s, not %s", file, filePageSize, pageSize));
+        }
+        root = header.getLong();
+        pageCount = header.getLong();
+        freeList = header.getLong();
+        size = header.getLong();
+        zLengths = header.getLong();
+    }
+
+    // Builds a filter of the z-values present, with room for as many again. Pages pinned by the current operation
+    // are released. If there are too many z-values to filter, ancestorCandidates relies on zLengths alone.
+    private void buildFilter() throws IOException
+    {
+        long capacity = Math.max(MIN_FILTER_CAPACITY, 2 * size);
+        if (capacity > Integer.MAX_VALUE) {
+            filter = null;
+        } else {
+            filterCapacity = (int) capacity;
+            filter = new BloomFilter(filterCapacity);
+            filterZValues = 0;
+            bufferPool.release();
+            Page.Leaf leaf = descend(SpaceImpl.Z_MIN, true, null);
+            while (leaf != null) {
+                for (int i = 0; i < leaf.n; i++) {
+                    filter.add(leaf.zs[i]);
+                }
+                filterZValues += leaf.n;
+                long next = leaf.next;
+                // Unpin the leaves already read, so that a scan of a large file doesn't fill the buffer pool.
+                bufferPool.release();
+                leaf = next == Page.NO_PAGE ? null : (Page.Leaf) bufferPool.page(next);
+            }
+            bufferPool.release();
+        }
+    }
+
+    private byte[] serialize(RECORD record)
+    {
+        boolean serialized = false;
+        while (!serialized) {
+            serializationBuffer.clear();
+            try {
+                serializer.writeTo(record, serializationBuffer);
+                serialized = true;
+            } catch (BufferOverflowException e) {
+                serializationBuffer = ByteBuffer.allocate(serializationBuffer.capacity() * 2);
+            }
+        }
+        serializationBuffer.flip();
+        int size = serializationBuffer.remaining();
+        if (size > maxRecordSize) {
+            throw new IllegalArgumentException(String.format("%s: Serialized record size %s exceeds %s",
+                                                             record, size, maxRecordSize));
+        }
+        byte[] bytes = new byte[size];
+        serializationBuffer.get(bytes);
+        return bytes;
+    }
+
+    // Moves the upper half of leaf's records, by size, to a new leaf, which is returned.
+    private Page.Leaf splitLeaf(Page.Leaf leaf, List<Page.Interior> path) throws IOException
+    {
+        Page.Leaf right = allocateLeaf();
+        leaf.moveTo(leaf.splitPosition(), right);
+        right.prev = leaf.id;
+        right.next = leaf.next;
+        if (leaf.next != Page.NO_PAGE) {
+            Page.Leaf next = (Page.Leaf) bufferPool.page(leaf.next);
+            next.prev = right.id;
+            next.markDirty();
+        }
+        leaf.next = right.id;
+        insertChild(path, path.size(), leaf, right.zs[0], right);
+        return right;
+    }
+
+    // Adds right to the parent of left, following left. path[level - 1] is the parent of left. Every record under
+    // left has a z-value <= separator, and every record under right has a z-value >= separator.
+    private void insertChild(List<Page.Interior> path, int level, Page left, long separator, Page right)
+        throws IOException
+    {
+        Page.Interior parent;
+        if (level == 0) {
+            parent = allocateInterior();
+            parent.children[0] = left.id;
+            parent.n = 1;
+            root = parent.id;
+        } else {
+            parent = path.get(level - 1);
+            if (parent.full()) {
+                Page.Interior parentRight = allocateInterior();
+                long parentSeparator = parent.moveTo(parent.n / 2, parentRight);
+                insertChild(path, level - 1, parent, parentSeparator, parentRight);
+                if (parentRight.contains(left.id)) {
+                    parent = parentRight;
+                }
+            }
+        }
+        parent.insertAfter(parent.childPosition(left.id), separator, right.id);
+    }
+
+    // Finds the path from page to the leaf identified by leafId, which could contain z.
+    private boolean findPath(Page page, long z, long leafId, List<Page.Interior> path) throws IOException
+    {
+        boolean found = page.id == leafId;
+        if (!found && page instanceof Page.Interior) {
+            Page.Interior interior = (Page.Interior) page;
+            path.add(interior);
+            int position = lowerBound(interior.keys, interior.n - 1, z);
+            int end = upperBound(interior.keys, interior.n - 1, z);
+            while (!found && position <= end) {
+                found = findPath(bufferPool.page(interior.children[position++]), z, leafId, path);
+            }
+            if (!found) {
+                path.remove(path.size() - 1);
+            }
+        }
+        return found;
+    }
+
+    // Removes child from its parent, path[level - 1], and frees child's page.
+    private void removeChild(List<Page.Interior> path, int level, Page child) throws IOException
+    {
+        Page.Interior parent = path.get(level - 1);
+        parent.delete(parent.childPosition(child.id));
+        free(child);
+        if (parent.n == 0) {
+            // parent can't be the root: a root with one child is replaced by that child.
+            removeChild(path, level - 1, parent);
+        } else if (parent.id == root && parent.n == 1) {
+            root = parent.children[0];
+            free(parent);
+        }
+    }
+
+    private Page.Leaf allocateLeaf() throws IOException
+    {
+        Page.Leaf leaf = new Page.Leaf(allocatePageId(), pageSize);
+        bufferPool.add(leaf);
+        return leaf;
+    }
+
+    private Page.Interior allocateInterior() throws IOException
+    {
+        Page.Interior interior = new Page.Interior(allocatePageId(), pageSize);
+        bufferPool.add(interior);
+        return interior;
+    }
+
+    private long allocatePageId() throws IOException
+    {
+        long id;
+        if (freeList == Page.NO_PAGE) {
+            id = pageCount++;
+        } else {
+            Page.Free free = (Page.Free) bufferPool.page(freeList);
+            id = free.id;
+            freeList = free.nextFree;
+        }
+        return id;
+    }
+
+    private void free(Page page) throws IOException
+    {
+        Page.Free free = new Page.Free(page.id);
+        free.nextFree = freeList;
+        freeList = free.id;
+        bufferPool.add(free);
+    }
+
+    // Class state
+
+    private static final int MAGIC = 0x67656f62;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 8 + 8 + 8;
+    private static final int MIN_PAGE_SIZE = 256;
+    private static final int DEFAULT_PAGE_SIZE = 8192;
+    // A split of an interior page pins at most two pages per level, plus a few leaves.
+    private static final int MIN_BUFFER_POOL_PAGES = 8;
+    private static final int DEFAULT_BUFFER_POOL_PAGES = 4096;
+    private static final int MIN_FILTER_CAPACITY = 1024;
+
+    // Object state
+
+    private final File file;
+    private final RecordSerializer<RECORD> serializer;
+    private final int pageSize;
+    private final int maxRecordSize;
+    private final FileChannel channel;
+    private final BufferPool bufferPool;
+    private ByteBuffer serializationBuffer;
+    private long root;
+    private long pageCount;
+    private long freeList;
+    private long size;
+    private long zLengths;
+    private long modifications;
+    // Filters the z-values present. filterZValues is the number of z-values added to the filter, which is rebuilt
+    // when this exceeds filterCapacity.
+    private BloomFilter filter;
+    private int filterCapacity;
+    private long filterZValues;
+}
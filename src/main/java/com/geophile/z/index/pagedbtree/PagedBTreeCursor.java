@@ -0,0 +1,269 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.pagedbtree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class PagedBTreeCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        try {
+            return neighbor();
+        } finally {
+            btree.release();
+        }
+    }
+
+    // Records are retrieved from one leaf, so that a batch requires at most one page to be read.
+    @Override
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        try {
+            int n = 0;
+            Page.Leaf leaf = leafContainingNext();
+            if (leaf != null) {
+                n = Math.min(max, leaf.n - position);
+                System.arraycopy(leaf.zs, position, zs, 0, n);
+                for (int i = 0; i < n; i++) {
+                    returned(zs[i]);
+                }
+                if (records != null) {
+                    for (int i = 0; i < n; i++) {
+                        if (records[i] == null) {
+                            records[i] = btree.newRecord();
+                        }
+                        btree.readRecord(leaf, position + i, records[i]);
+                    }
+                }
+                position += n;
+                if (records == null) {
+                    btree.readRecord(leaf, position - 1, record);
+                    current(record);
+                } else {
+                    current(records[n - 1]);
+                }
+                state(State.IN_USE);
+                this.leaf = leaf.id;
+                currentLeaf = leaf.id;
+                currentPosition = position - 1;
+            }
+            return n;
+        } finally {
+            btree.release();
+        }
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        lastZCount = 0;
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            try {
+                if (modifications != btree.modifications()) {
+                    reposition();
+                }
+                if (currentLeaf != Page.NO_PAGE) {
+                    Page.Leaf leaf = (Page.Leaf) btree.page(currentLeaf);
+                    // If the leaf is removed, its next pointer is still valid.
+                    boolean leafRemoved = btree.delete(leaf, currentPosition);
+                    if (this.leaf == currentLeaf) {
+                        if (leafRemoved) {
+                            this.leaf = leaf.next;
+                            position = 0;
+                        } else if (position > currentPosition) {
+                            position--;
+                        }
+                    }
+                    currentLeaf = Page.NO_PAGE;
+                    lastZCount--;
+                    modifications = btree.modifications();
+                    deleted = true;
+                }
+            } finally {
+                btree.release();
+            }
+        }
+        return deleted;
+    }
+
+    // PagedBTreeCursor interface
+
+    public PagedBTreeCursor(PagedBTree<RECORD> btree)
+    {
+        super(btree);
+        this.btree = btree;
+        this.record = btree.newRecord();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        Page.Leaf leaf = leafContainingNext();
+        if (leaf != null) {
+            btree.readRecord(leaf, position, record);
+            returned(leaf.zs[position]);
+            current(record);
+            state(State.IN_USE);
+            this.leaf = leaf.id;
+            currentLeaf = leaf.id;
+            currentPosition = position;
+            position++;
+        }
+        return current();
+    }
+
+    // Returns the leaf containing the next record to visit, at position, or null if there are no more records, in
+    // which case the cursor is closed.
+    private Page.Leaf leafContainingNext() throws IOException, InterruptedException
+    {
+        Page.Leaf leaf = null;
+        switch (state()) {
+            case NEVER_USED:
+                leaf = startIteration();
+                break;
+            case IN_USE:
+                leaf = resumeIteration();
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        while (leaf != null && position == leaf.n) {
+            leaf = btree.nextLeaf(leaf);
+            position = 0;
+        }
+        if (leaf == null) {
+            this.leaf = Page.NO_PAGE;
+            currentLeaf = Page.NO_PAGE;
+            close();
+        }
+        return leaf;
+    }
+
+    private Page.Leaf startIteration() throws IOException
+    {
+        modifications = btree.modifications();
+        // A goTo often targets a z-value close to the previous one. If the lower bound of startZ is in the current
+        // leaf or the next one, there is no need to descend from the root. The page may have been freed, and
+        // possibly reused, since the cursor last visited it.
+        if (leaf != Page.NO_PAGE) {
+            Page page = btree.page(leaf);
+            if (page instanceof Page.Leaf) {
+                Page.Leaf leaf = (Page.Leaf) page;
+                if (leaf.n > 0) {
+                    long lastZ = leaf.zs[leaf.n - 1];
+                    if (leaf.zs[0] < startZ && startZ <= lastZ) {
+                        position = PagedBTree.lowerBound(leaf.zs, leaf.n, startZ);
+                        return leaf;
+                    }
+                    Page.Leaf next = lastZ < startZ ? btree.nextLeaf(leaf) : null;
+                    if (next != null && next.n > 0 && startZ <= next.zs[next.n - 1]) {
+                        position = PagedBTree.lowerBound(next.zs, next.n, startZ);
+                        return next;
+                    }
+                }
+            }
+        }
+        Page.Leaf leaf = btree.descend(startZ, true, null);
+        position = PagedBTree.lowerBound(leaf.zs, leaf.n, startZ);
+        return leaf;
+    }
+
+    // Returns the leaf containing the next record to visit. If the tree has been modified since the cursor last
+    // visited it, records may have moved, and the leaf may have been freed, and possibly reused.
+    private Page.Leaf resumeIteration() throws IOException
+    {
+        Page.Leaf leaf;
+        if (modifications != btree.modifications()) {
+            leaf = reposition();
+        } else if (this.leaf == Page.NO_PAGE) {
+            leaf = null;
+        } else {
+            Page page = btree.page(this.leaf);
+            leaf = page instanceof Page.Leaf ? (Page.Leaf) page : reposition();
+        }
+        return leaf;
+    }
+
+    // Positions the cursor following the last record returned, found by searching for lastZ and skipping
+    // lastZCount records with that z-value, and returns the leaf containing the position, or null if there are no
+    // more records. currentLeaf and currentPosition locate the last record returned, unless it has been deleted.
+    private Page.Leaf reposition() throws IOException
+    {
+        boolean currentDeleted = currentLeaf == Page.NO_PAGE;
+        Page.Leaf leaf = btree.descend(lastZ, true, null);
+        int position = PagedBTree.lowerBound(leaf.zs, leaf.n, lastZ);
+        int skipped = 0;
+        boolean sameZ = true;
+        while (leaf != null && sameZ && skipped < lastZCount) {
+            if (position == leaf.n) {
+                leaf = btree.nextLeaf(leaf);
+                position = 0;
+            } else if (leaf.zs[position] == lastZ) {
+                currentLeaf = leaf.id;
+                currentPosition = position;
+                skipped++;
+                position++;
+            } else {
+                sameZ = false;
+            }
+        }
+        if (currentDeleted || skipped < lastZCount) {
+            currentLeaf = Page.NO_PAGE;
+        }
+        this.leaf = leaf == null ? Page.NO_PAGE : leaf.id;
+        this.position = position;
+        modifications = btree.modifications();
+        return leaf;
+    }
+
+    // Records that a record with the given z-value has been returned.
+    private void returned(long z)
+    {
+        if (lastZCount > 0 && z == lastZ) {
+            lastZCount++;
+        } else {
+            lastZ = z;
+            lastZCount = 1;
+        }
+    }
+
+    // Object state
+
+    private final PagedBTree<RECORD> btree;
+    // Records are deserialized here, and then copied to the Cursor's current record.
+    private final RECORD record;
+    private long startZ;
+    // Position of the next record to visit
+    private long leaf = Page.NO_PAGE;
+    private int position;
+    // Position of the record most recently returned by next()
+    private long currentLeaf = Page.NO_PAGE;
+    private int currentPosition;
+    // The last record returned is the lastZCount-th record with z-value lastZ, counting from the cursor's starting
+    // position. This locates the cursor if the tree is modified by anything other than the cursor's own
+    // deleteCurrent, (as indicated by modifications).
+    private long lastZ;
+    private int lastZCount;
+    private long modifications;
+}
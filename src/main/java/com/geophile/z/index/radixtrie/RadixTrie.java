@@ -0,0 +1,373 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.radixtrie;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RadixTrie implements the {@link com.geophile.z.Index} interface as a compressed binary radix trie (a PATRICIA
+ * trie) keyed by the bits of z-values. Each node represents a z-value, and the z-value of a node is a prefix of
+ * the z-values of all nodes in its subtree. A node exists only if records have that z-value, or if it is a
+ * branching point. Because a z-value sorts before the z-values it contains, a pre-order traversal of the trie
+ * visits z-values in z-order, and a {@link com.geophile.z.index.radixtrie.RadixTrieCursor} satisfies the
+ * {@link com.geophile.z.Cursor} contract.
+ * <p>
+ * Containment of z-values is a prefix relationship, so all the ancestors of a z-value that are present in a
+ * RadixTrie lie on a single path from the root. {@link #ancestorCandidates(long, long, long[])} walks that path,
+ * and returns exactly the ancestors present, so a spatial join never searches for a missing ancestor.
+ * <p>
+ * Records with the same z-value are kept in the order in which they were added. A RadixTrie is not safe for use
+ * by multiple threads.
+ */
+
+public abstract class RadixTrie<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        long z = copy.z();
+        zLengths |= 1L << SpaceImpl.length(z);
+        Node parent = null;
+        Node node = root;
+        boolean added = false;
+        while (!added) {
+            if (node == null) {
+                node = new Node(z);
+                node.addRecord(copy);
+                attach(parent, node);
+                added = true;
+            } else {
+                int nodeLength = SpaceImpl.length(node.z);
+                int common = commonPrefixLength(node.z, z);
+                if (common < nodeLength) {
+                    // z is not in the subtree of node. Replace node by a node for the common prefix of z and
+                    // node.z.
+                    Node replacement;
+                    if (common == SpaceImpl.length(z)) {
+                        // z is an ancestor of node.z
+                        replacement = new Node(z);
+                        replacement.addRecord(copy);
+                    } else {
+                        replacement = new Node(prefix(z, common));
+                        Node leaf = new Node(z);
+                        leaf.addRecord(copy);
+                        replacement.child(bit(z, common), leaf);
+                    }
+                    replace(parent, node, replacement);
+                    replacement.child(bit(node.z, common), node);
+                    added = true;
+                } else if (SpaceImpl.length(z) == nodeLength) {
+                    // z == node.z
+                    node.addRecord(copy);
+                    added = true;
+                } else {
+                    parent = node;
+                    node = node.child(bit(z, nodeLength));
+                }
+            }
+        }
+        modifications++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removed = false;
+        Node node = find(z);
+        if (node != null) {
+            for (int i = 0; !removed && i < node.records.size(); i++) {
+                if (filter.select(node.<RECORD>record(i))) {
+                    removeRecord(node, i);
+                    removed = true;
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new RadixTrieCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // Returns exactly the ancestors of z, greater than zLowerBound, that are present.
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        int n = 0;
+        candidates[n++] = z;
+        int zLength = SpaceImpl.length(z);
+        // Ancestors are found in increasing z order, but must be returned in decreasing order.
+        int first = n;
+        Node node = root;
+        while (node != null && SpaceImpl.contains(node.z, z) && node.z != z) {
+            if (node.records != null && node.z > zLowerBound) {
+                candidates[n++] = node.z;
+            }
+            int nodeLength = SpaceImpl.length(node.z);
+            node = nodeLength < zLength ? node.child(bit(z, nodeLength)) : null;
+        }
+        for (int i = first, j = n - 1; i < j; i++, j--) {
+            long swap = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = swap;
+        }
+        return n;
+    }
+
+    // RadixTrie interface
+
+    public RadixTrie()
+    {}
+
+    // For use by this package
+
+    // Returns the node with the smallest z-value >= z that has records, or null if there is no such node.
+    Node ceiling(long z)
+    {
+        return ceiling(root, z);
+    }
+
+    // Returns the node with z-value z, or null if there is no such node.
+    Node find(long z)
+    {
+        Node node = root;
+        int zLength = SpaceImpl.length(z);
+        while (node != null && node.z != z) {
+            int nodeLength = SpaceImpl.length(node.z);
+            node =
+                nodeLength < zLength && SpaceImpl.contains(node.z, z)
+                ? node.child(bit(z, nodeLength))
+                : null;
+        }
+        return node;
+    }
+
+    // Returns the node following the given node in pre-order that has records, or null if there is no such node.
+    static Node successor(Node node)
+    {
+        Node next = first(node.child(0));
+        if (next == null) {
+            next = first(node.child(1));
+        }
+        // Go up until arriving at a node from its 0 child, with a 1 child to visit.
+        while (next == null && node.parent != null) {
+            Node parent = node.parent;
+            if (parent.child(0) == node) {
+                next = first(parent.child(1));
+            }
+            node = parent;
+        }
+        return next;
+    }
+
+    // Removes the record at the given position of the node's records. If the node has no more records, then
+    // the node is removed, unless it is needed as a branching point, and its parent is removed if it is no longer
+    // needed as a branching point.
+    void removeRecord(Node node, int position)
+    {
+        node.records.remove(position);
+        if (node.records.isEmpty()) {
+            node.records = null;
+            Node parent = node.parent;
+            if (node.child(0) == null || node.child(1) == null) {
+                Node onlyChild = node.child(0) == null ? node.child(1) : node.child(0);
+                replace(parent, node, onlyChild);
+                if (onlyChild == null && parent != null && parent.records == null) {
+                    // parent had two children, and now has one.
+                    Node parentOnlyChild = parent.child(0) == null ? parent.child(1) : parent.child(0);
+                    replace(parent.parent, parent, parentOnlyChild);
+                }
+            }
+        }
+        modifications++;
+    }
+
+    int modifications()
+    {
+        return modifications;
+    }
+
+    // For use by this class
+
+    private static Node ceiling(Node node, long z)
+    {
+        Node ceiling = null;
+        if (node != null) {
+            if (node.z >= z) {
+                // node.z is the smallest z-value in the subtree.
+                ceiling = first(node);
+            } else if (SpaceImpl.contains(node.z, z)) {
+                // z is in the subtree, after node.z, so z is longer than node.z.
+                int b = bit(z, SpaceImpl.length(node.z));
+                ceiling = ceiling(node.child(b), z);
+                if (ceiling == null && b == 0) {
+                    ceiling = first(node.child(1));
+                }
+            }
+            // Otherwise, node.z < z, and z is outside the subtree, so every z-value in the subtree is < z.
+        }
+        return ceiling;
+    }
+
+    // Returns the first node in the subtree, in pre-order, that has records.
+    private static Node first(Node node)
+    {
+        // Every node without records has two children.
+        while (node != null && node.records == null) {
+            node = node.child(0);
+        }
+        return node;
+    }
+
+    private void attach(Node parent, Node node)
+    {
+        if (parent == null) {
+            root = node;
+            node.parent = null;
+        } else {
+            parent.child(bit(node.z, SpaceImpl.length(parent.z)), node);
+        }
+    }
+
+    private void replace(Node parent, Node node, Node replacement)
+    {
+        if (parent == null) {
+            root = replacement;
+            if (replacement != null) {
+                replacement.parent = null;
+            }
+        } else {
+            parent.child(parent.child(0) == node ? 0 : 1, replacement);
+        }
+    }
+
+    // Returns the number of leading bits that the z-values have in common, up to the length of the shorter one.
+    private static int commonPrefixLength(long a, long b)
+    {
+        // The most significant bit is unused, so the first z-value bit is preceded by one leading zero.
+        int common = Long.numberOfLeadingZeros((a ^ b) & ~LENGTH_MASK) - 1;
+        return Math.min(common, Math.min(SpaceImpl.length(a), SpaceImpl.length(b)));
+    }
+
+    // Returns the z-value consisting of the first length bits of z.
+    private static long prefix(long z, int length)
+    {
+        long mask = ((1L << length) - 1) << (63 - length);
+        return (z & mask) | length;
+    }
+
+    // Returns bit i of z, counting from 0 at the most significant z-value bit.
+    private static int bit(long z, int i)
+    {
+        return (int) (z >>> (62 - i)) & 1;
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final long LENGTH_MASK = (1L << SpaceImpl.LENGTH_BITS) - 1;
+
+    // Object state
+
+    private final String name = String.format("RadixTrie(%s)", idGenerator.getAndIncrement());
+    private Node root;
+    // Incremented by every add and remove, so that cursors can detect that the trie has changed.
+    private int modifications = 0;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+
+    // Inner classes
+
+    static class Node
+    {
+        Node child(int bit)
+        {
+            return bit == 0 ? child0 : child1;
+        }
+
+        void child(int bit, Node child)
+        {
+            if (bit == 0) {
+                child0 = child;
+            } else {
+                child1 = child;
+            }
+            if (child != null) {
+                child.parent = this;
+            }
+        }
+
+        // A node only contains records of its trie's record type, so the cast is safe.
+        @SuppressWarnings("unchecked")
+        <RECORD extends Record> RECORD record(int position)
+        {
+            return (RECORD) records.get(position);
+        }
+
+        void addRecord(Object record)
+        {
+            if (records == null) {
+                records = new ArrayList<>(1);
+            }
+            records.add(record);
+        }
+
+        Node(long z)
+        {
+            this.z = z;
+        }
+
+        final long z;
+        // Records with z-value z, in insertion order, or null if this node is only a branching point.
+        List<Object> records;
+        Node parent;
+        private Node child0;
+        private Node child1;
+    }
+}
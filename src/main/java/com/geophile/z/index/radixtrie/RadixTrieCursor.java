@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.radixtrie;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class RadixTrieCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE && lastNode != null) {
+            trie.removeRecord(lastNode, lastPosition);
+            // The record following the deleted one now occupies its position.
+            resumePosition--;
+            lastNode = null;
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    // RadixTrieCursor interface
+
+    public RadixTrieCursor(RadixTrie<RECORD> trie)
+    {
+        super(trie);
+        this.trie = trie;
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                if (trie.modifications() != modifications) {
+                    resume();
+                }
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (node == null) {
+            lastNode = null;
+            close();
+        } else {
+            lastNode = node;
+            lastPosition = position;
+            resumeZ = node.z;
+            resumePosition = position + 1;
+            current(node.<RECORD>record(position));
+            state(State.IN_USE);
+            if (++position == node.records.size()) {
+                node = RadixTrie.successor(node);
+                position = 0;
+            }
+        }
+        return current();
+    }
+
+    private void startIteration()
+    {
+        node = trie.ceiling(startZ);
+        position = 0;
+        lastNode = null;
+        modifications = trie.modifications();
+    }
+
+    // The trie has been modified since the cursor's position was computed, and nodes may have been removed.
+    // Relocate the record following the last one returned, using its z-value and position among records with
+    // the same z-value.
+    private void resume()
+    {
+        node = trie.find(resumeZ);
+        if (node != null && node.records != null && resumePosition < node.records.size()) {
+            position = resumePosition;
+        } else {
+            // z-values are never negative, so resumeZ + 1 doesn't overflow.
+            node = trie.ceiling(resumeZ + 1);
+            position = 0;
+        }
+        modifications = trie.modifications();
+    }
+
+    // Object state
+
+    private final RadixTrie<RECORD> trie;
+    private long startZ;
+    // Node and position within the node's records of the next record to return
+    private RadixTrie.Node node;
+    private int position;
+    // Location of the next record to return, used to resume after the trie is modified.
+    private long resumeZ;
+    private int resumePosition;
+    // Node and position of the last record returned via next(). Needed to support deleteCurrent().
+    private RadixTrie.Node lastNode;
+    private int lastPosition;
+    private int modifications;
+}
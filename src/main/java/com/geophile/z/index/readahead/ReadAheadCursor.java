@@ -0,0 +1,264 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.readahead;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A ReadAheadCursor retrieves records from a cursor on the index wrapped by a
+ * {@link com.geophile.z.index.readahead.ReadAheadIndex}, a batch at a time, using background tasks. The batch
+ * following the one being consumed is retrieved in the background. A goTo whose key is within the range of
+ * z-values of the current batch is done within the batch, and does not disturb the retrieval of the next batch.
+ * A {@link #prefetch(long)} hint retrieves the records at the given z-value using a second cursor, which becomes
+ * the cursor for read-ahead if the hint turns out to be correct.
+ */
+
+public class ReadAheadCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        if (state() == State.DONE) {
+            assert current() == null;
+            return null;
+        }
+        if (batch.position == batch.n && batch.n > 0) {
+            Batch<RECORD> consumed = batch;
+            batch = await(readAhead);
+            readAhead = batch.n == 0 ? null : fill(batch.cursor, null, consumed);
+        }
+        if (batch.position < batch.n) {
+            current(batch.records[batch.position++]);
+            state(State.IN_USE);
+            deleted = false;
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    @Override
+    public void goTo(RECORD key) throws IOException, InterruptedException
+    {
+        long z = key.z();
+        if (inBatch(z)) {
+            // The records following the key are in the batch, so the read ahead is still valid.
+            batch.position = lowerBound(batch.zs, batch.n, z);
+        } else {
+            // Any read ahead must complete before the read-ahead cursor can be repositioned.
+            if (readAhead != null) {
+                discard(readAhead);
+                readAhead = null;
+            }
+            if (prefetched != null && prefetchZ == z) {
+                Cursor<RECORD> cursor = batch.cursor;
+                Future<Batch<RECORD>> prefetched = this.prefetched;
+                this.prefetched = null;
+                batch = await(prefetched);
+                // The cursor used for the prefetch is now used for read ahead, and vice versa.
+                prefetchCursor = cursor;
+            } else {
+                // The hint was wrong, so a completed prefetch won't be used.
+                reclaimPrefetchCursor();
+                key.copyTo(goToKey);
+                batch = await(fill(batch.cursor, goToKey, new Batch<RECORD>(readAheadIndex.batchSize())));
+            }
+            readAhead =
+                batch.n == 0
+                ? null
+                : fill(batch.cursor, null, new Batch<RECORD>(readAheadIndex.batchSize()));
+        }
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public void prefetch(long z)
+    {
+        // A prefetch still in progress is not interrupted, and the hint is ignored.
+        if (!inBatch(z) && (prefetched == null || prefetched.isDone() && prefetchZ != z)) {
+            reclaimPrefetchCursor();
+            prefetchKey.z(z);
+            prefetchZ = z;
+            prefetched = fill(prefetchCursor, prefetchKey, new Batch<RECORD>(readAheadIndex.batchSize()));
+            prefetchCursor = null;
+        }
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean removed = false;
+        if (state() == State.IN_USE && !deleted) {
+            // The current record has already been consumed from the batch, so only the wrapped index changes.
+            final RECORD current = current();
+            removed = readAheadIndex.remove(current.z(),
+                                            new Record.Filter<RECORD>()
+                                            {
+                                                @Override
+                                                public boolean select(RECORD record)
+                                                {
+                                                    return record.equals(current);
+                                                }
+                                            });
+            deleted = true;
+        }
+        return removed;
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        batch.position = batch.n;
+    }
+
+    // ReadAheadCursor interface
+
+    public ReadAheadCursor(ReadAheadIndex<RECORD> readAheadIndex) throws IOException, InterruptedException
+    {
+        super(readAheadIndex);
+        this.readAheadIndex = readAheadIndex;
+        this.goToKey = readAheadIndex.newKeyRecord();
+        this.prefetchKey = readAheadIndex.newKeyRecord();
+        this.batch = new Batch<>(0);
+        this.batch.cursor = readAheadIndex.indexCursor();
+    }
+
+    // For use by this class
+
+    // Returns true if the first record with a z-value >= z is in the current batch. The batch contains consecutive
+    // records, so this is the case if z is past the first record of the batch, and not past the last one.
+    private boolean inBatch(long z)
+    {
+        return batch.n > 0 && batch.zs[0] < z && z <= batch.zs[batch.n - 1];
+    }
+
+    // Retrieves a batch of records into target, using the given cursor, positioned by key first unless key is
+    // null. If cursor is null, a new one is created.
+    private Future<Batch<RECORD>> fill(final Cursor<RECORD> cursor, final RECORD key, final Batch<RECORD> target)
+    {
+        return readAheadIndex.submit(
+            new Callable<Batch<RECORD>>()
+            {
+                @Override
+                public Batch<RECORD> call() throws Exception
+                {
+                    target.cursor = cursor == null ? readAheadIndex.indexCursor() : cursor;
+                    if (key != null) {
+                        target.cursor.goTo(key);
+                    }
+                    target.n = target.cursor.nextBatch(target.zs, target.records, target.zs.length);
+                    target.position = 0;
+                    return target;
+                }
+            });
+    }
+
+    // Takes back the cursor of a completed prefetch that will not be used, so that the next prefetch doesn't have to
+    // create a cursor on the wrapped index. The cursor of a failed prefetch is abandoned.
+    private void reclaimPrefetchCursor()
+    {
+        if (prefetched != null && prefetched.isDone()) {
+            try {
+                prefetchCursor = prefetched.get().cursor;
+            } catch (ExecutionException e) {
+                // The next prefetch will create a new cursor.
+            } catch (InterruptedException e) {
+                // Not expected, since the prefetch has completed.
+                Thread.currentThread().interrupt();
+            }
+            prefetched = null;
+        }
+    }
+
+    private Batch<RECORD> await(Future<Batch<RECORD>> future) throws IOException, InterruptedException
+    {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(String.format("%s: read ahead failed", readAheadIndex), cause);
+        }
+    }
+
+    // Waits for the future to complete, ignoring its result.
+    private void discard(Future<Batch<RECORD>> future) throws InterruptedException
+    {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            // The result wasn't needed.
+        }
+    }
+
+    private static int lowerBound(long[] zs, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Object state
+
+    private final ReadAheadIndex<RECORD> readAheadIndex;
+    // Records being consumed. batch.cursor is used to read ahead.
+    private Batch<RECORD> batch;
+    // The batch following the current one, retrieved by batch.cursor
+    private Future<Batch<RECORD>> readAhead;
+    private final RECORD goToKey;
+    // Records at prefetchZ, retrieved by a second cursor. prefetchCursor is the second cursor, while it isn't
+    // being used by a prefetch.
+    private Future<Batch<RECORD>> prefetched;
+    private long prefetchZ;
+    private final RECORD prefetchKey;
+    private Cursor<RECORD> prefetchCursor;
+    // True if the record most recently returned by next has been deleted
+    private boolean deleted;
+
+    // Inner classes
+
+    private static final class Batch<RECORD extends Record>
+    {
+        Batch(int capacity)
+        {
+            zs = new long[capacity];
+            // The array only receives records of the underlying index, so the cast is safe.
+            @SuppressWarnings("unchecked")
+            RECORD[] records = (RECORD[]) new Record[capacity];
+            this.records = records;
+        }
+
+        // The cursor that retrieved the batch
+        Cursor<RECORD> cursor;
+        final long[] zs;
+        final RECORD[] records;
+        int n;
+        int position;
+    }
+}
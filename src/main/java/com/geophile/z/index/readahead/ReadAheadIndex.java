@@ -0,0 +1,181 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.readahead;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * ReadAheadIndex is an {@link com.geophile.z.Index} that wraps another Index, and provides cursors that retrieve
+ * records from the wrapped index in batches, using background tasks. While a cursor's caller consumes one batch,
+ * the next batch is retrieved. A {@link com.geophile.z.Cursor#prefetch(long)} hint starts the retrieval of the
+ * records at the given z-value, so that a following {@link com.geophile.z.Cursor#goTo(com.geophile.z.Record)} to
+ * that z-value need not wait. For an index on disk, such as {@link com.geophile.z.index.pagedbtree.PagedBTree},
+ * this overlaps I/O with the caller's work, e.g. a spatial join.
+ * <p>
+ * Background tasks are run by the given ExecutorService, which may be shared by any number of ReadAheadIndexes.
+ * All access to the wrapped index, including access by background tasks, is serialized, so the wrapped index
+ * need not be safe for use by multiple threads. The wrapped index must not be accessed other than through the
+ * ReadAheadIndex. A cursor's records reflect the contents of the index at the time they were retrieved, so
+ * records added or removed while a cursor is in use may or may not be seen by the cursor. The exception is
+ * {@link com.geophile.z.Cursor#deleteCurrent()}, which removes the record most recently returned by the cursor
+ * from the wrapped index.
+ */
+
+public class ReadAheadIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("ReadAheadIndex(%s)", index);
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record) throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            index.add(record);
+        }
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter) throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            return index.remove(z, filter);
+        }
+    }
+
+    @Override
+    public Cursor<RECORD> cursor() throws IOException, InterruptedException
+    {
+        return new ReadAheadCursor<>(this);
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return index.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return index.newKeyRecord();
+    }
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return index.blindUpdates();
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return index.stableRecords();
+    }
+
+    @Override
+    public long zLengths()
+    {
+        synchronized (lock) {
+            return index.zLengths();
+        }
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        synchronized (lock) {
+            return index.ancestorCandidates(z, zLowerBound, candidates);
+        }
+    }
+
+    // ReadAheadIndex interface
+
+    /**
+     * Creates a ReadAheadIndex that retrieves records in batches of {@link #DEFAULT_BATCH_SIZE}.
+     * @param index The index to be wrapped.
+     * @param executor Runs the tasks that retrieve records.
+     */
+    public ReadAheadIndex(Index<RECORD> index, ExecutorService executor)
+    {
+        this(index, executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a ReadAheadIndex.
+     * @param index The index to be wrapped.
+     * @param executor Runs the tasks that retrieve records.
+     * @param batchSize The maximum number of records retrieved by a task.
+     */
+    public ReadAheadIndex(Index<RECORD> index, ExecutorService executor, int batchSize)
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(Integer.toString(batchSize));
+        }
+        this.index = index;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    // For use by this package
+
+    int batchSize()
+    {
+        return batchSize;
+    }
+
+    Cursor<RECORD> indexCursor() throws IOException, InterruptedException
+    {
+        synchronized (lock) {
+            return index.cursor();
+        }
+    }
+
+    // Runs the task in the background, with access to the wrapped index.
+    <T> Future<T> submit(final Callable<T> task)
+    {
+        return executor.submit(
+            new Callable<T>()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    synchronized (lock) {
+                        return task.call();
+                    }
+                }
+            });
+    }
+
+    // Class state
+
+    /**
+     * The default maximum number of records retrieved by a background task.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    // Object state
+
+    private final Index<RECORD> index;
+    private final ExecutorService executor;
+    private final int batchSize;
+    // Serializes access to index
+    private final Object lock = new Object();
+}
@@ -0,0 +1,89 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.index.SequencedKey;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class SkipListCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE && currentEntry != null) {
+            // false if another thread removed the record first.
+            deleted = index.delete(currentEntry.getKey(), currentEntry.getValue());
+            currentEntry = null;
+        }
+        return deleted;
+    }
+
+    // SkipListCursor interface
+
+    public SkipListCursor(SkipListIndex<RECORD> index)
+    {
+        super(index);
+        this.index = index;
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        Map.Entry<SequencedKey, RECORD> entry = null;
+        switch (state()) {
+            case NEVER_USED:
+                entry = index.first(startZ);
+                break;
+            case IN_USE:
+                // The key of the previous entry locates the next one, even if the previous one has been removed.
+                entry = index.next(lastKey);
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (entry == null) {
+            currentEntry = null;
+            close();
+        } else {
+            current(entry.getValue());
+            state(State.IN_USE);
+            currentEntry = entry;
+            lastKey = entry.getKey();
+        }
+        return current();
+    }
+
+    // Object state
+
+    private final SkipListIndex<RECORD> index;
+    private long startZ;
+    private SequencedKey lastKey;
+    // The entry most recently returned by next(), if it has not been deleted by this cursor
+    private Map.Entry<SequencedKey, RECORD> currentEntry;
+}
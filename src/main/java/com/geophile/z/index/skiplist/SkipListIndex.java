@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.SequencedKey;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SkipListIndex is an {@link com.geophile.z.Index} that is safe for concurrent use by multiple threads, without
+ * locking. Records are stored in a {@link java.util.concurrent.ConcurrentSkipListMap}, keyed by z-value and a
+ * sequence number assigned when the record is added, so that any number of records may have the same z-value.
+ * <p>
+ * Any number of threads may add and remove records, while other threads use cursors. A
+ * {@link com.geophile.z.index.skiplist.SkipListCursor} is weakly consistent: it reflects some, but not necessarily
+ * all, of the changes made after it was positioned, and never returns a record more than once, or out of order.
+ * Each cursor must be used by one thread at a time. Records are copied when added, and never modified, so
+ * records retrieved from a SkipListIndex are stable.
+ */
+
+public abstract class SkipListIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        // Record the length before the record becomes visible, so that zLengths() never omits the length of a
+        // visible record. Adds are concurrent, so a bit is set by compare-and-set.
+        long bit = 1L << SpaceImpl.length(copy.z());
+        long lengths;
+        while (((lengths = zLengths.get()) & bit) == 0 && !zLengths.compareAndSet(lengths, lengths | bit)) {
+        }
+        records.put(new SequencedKey(copy.z(), sequence.getAndIncrement()), copy);
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removeRecordFound = false;
+        for (Map.Entry<SequencedKey, RECORD> entry : records.subMap(new SequencedKey(z, Long.MIN_VALUE),
+                                                                    new SequencedKey(z, Long.MAX_VALUE)).entrySet()) {
+            // The record may be removed concurrently by another thread. If so, keep looking.
+            if (filter.select(entry.getValue()) && records.remove(entry.getKey(), entry.getValue())) {
+                removeRecordFound = true;
+                break;
+            }
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new SkipListCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths.get();
+    }
+
+    // SkipListIndex interface
+
+    /**
+     * Returns the number of records in this index. As for
+     * {@link java.util.concurrent.ConcurrentSkipListMap#size()}, this is not a constant-time operation, and the
+     * result may be inaccurate if the index is being updated concurrently.
+     * @return The number of records in this index.
+     */
+    public int size()
+    {
+        return records.size();
+    }
+
+    // For use by this package
+
+    // Returns the first entry with a z-value >= z, or null if there is no such entry.
+    Map.Entry<SequencedKey, RECORD> first(long z)
+    {
+        return records.ceilingEntry(new SequencedKey(z, Long.MIN_VALUE));
+    }
+
+    // Returns the entry following key, which need not be present, or null if there is no such entry.
+    Map.Entry<SequencedKey, RECORD> next(SequencedKey key)
+    {
+        return records.higherEntry(key);
+    }
+
+    boolean delete(SequencedKey key, RECORD record)
+    {
+        return records.remove(key, record);
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+
+    // Object state
+
+    private final String name = String.format("SkipListIndex(%s)", idGenerator.getAndIncrement());
+    private final ConcurrentNavigableMap<SequencedKey, RECORD> records = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong(0);
+    // Lengths of z-values added, as returned by zLengths()
+    private final AtomicLong zLengths = new AtomicLong(0);
+}
@@ -0,0 +1,31 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+class BinaryKeySearch extends KeySearch
+{
+    // KeySearch interface
+
+    @Override
+    int lowerBound(long z)
+    {
+        return SortedArray.lowerBound(records, n, z);
+    }
+
+    // BinaryKeySearch interface
+
+    BinaryKeySearch(Object[] records, int n)
+    {
+        this.records = records;
+        this.n = n;
+    }
+
+    // Object state
+
+    private final Object[] records;
+    private final int n;
+}
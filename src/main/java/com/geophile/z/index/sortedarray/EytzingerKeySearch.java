@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Record;
+
+// The z-values of the sorted records, copied into an array of primitives in Eytzinger (breadth-first) order: the
+// root of an implicit binary search tree is at index 1, and the children of the node at index k are at 2k and
+// 2k + 1. positions maps each index back to the position of the record in the sorted records. A search reads
+// only the long[] of z-values, never the records themselves, and the first levels of the tree, visited by every
+// search, are packed together at the start of the array, so they stay in cache. The loop has no
+// data-dependent branch, only a data-dependent index computation, so it doesn't suffer branch mispredictions,
+// and the nodes that might be visited next are adjacent in memory.
+
+class EytzingerKeySearch extends KeySearch
+{
+    // KeySearch interface
+
+    @Override
+    int lowerBound(long z)
+    {
+        int k = 1;
+        while (k <= n) {
+            k = 2 * k + (zs[k] < z ? 1 : 0);
+        }
+        // k encodes the path taken, one bit per level: 1 for right, 0 for left. The answer is the last node at
+        // which the search went left, found by removing the trailing 1s and the 0 preceding them.
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k == 0 ? n : positions[k];
+    }
+
+    // EytzingerKeySearch interface
+
+    EytzingerKeySearch(Object[] records, int n)
+    {
+        this.n = n;
+        this.zs = new long[n + 1];
+        this.positions = new int[n + 1];
+        if (n > 0) {
+            int position = build(records, 0, 1);
+            assert position == n : position;
+        }
+    }
+
+    // For use by this class
+
+    // Fills in the subtree rooted at index k, in order, from records starting at position. Returns the position
+    // following the last record placed in the subtree. The depth of recursion is log2(n).
+    private int build(Object[] records, int position, int k)
+    {
+        if (k <= n) {
+            position = build(records, position, 2 * k);
+            zs[k] = ((Record) records[position]).z();
+            positions[k] = position;
+            position = build(records, position + 1, 2 * k + 1);
+        }
+        return position;
+    }
+
+    // Object state
+
+    private final int n;
+    private final long[] zs;
+    private final int[] positions;
+}
@@ -0,0 +1,17 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+// A KeySearch locates z-values in the sorted records of a SortedArray. It is built when the records are sorted,
+// and discarded when records are moved, by compaction or by merging the tail. Deletion leaves tombstones, and
+// the tail is searched separately, so neither invalidates a KeySearch.
+
+abstract class KeySearch
+{
+    // Returns the position of the first record in records[0:n) whose z-value is >= z.
+    abstract int lowerBound(long z);
+}
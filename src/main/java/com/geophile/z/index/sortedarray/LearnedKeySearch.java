@@ -0,0 +1,176 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Record;
+
+import java.util.Arrays;
+
+// A piecewise-linear model of the position of each distinct z-value in the sorted records. Segments are
+// computed in one pass, by the shrinking cone algorithm: a segment is extended as long as some line through its
+// first point predicts the position of every distinct z-value in the segment to within MAX_ERROR. A search
+// binary-searches the segments' first z-values, which form a small array of primitives, predicts a position
+// using the segment's slope, and then searches outward from the prediction. Only the records near the predicted
+// position are examined, instead of the log2(n) records scattered across the array that a binary search
+// examines.
+
+class LearnedKeySearch extends KeySearch
+{
+    // KeySearch interface
+
+    @Override
+    int lowerBound(long z)
+    {
+        int position;
+        if (nSegments == 0 || z <= segmentZs[0]) {
+            position = 0;
+        } else {
+            // Find the last segment whose first z-value is < z. The position being searched for follows that
+            // z-value, and is no later than the start of the next segment.
+            int lo = 0;
+            int hi = nSegments;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (segmentZs[mid] < z) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int segment = lo - 1;
+            int segmentStart = segmentStarts[segment] + 1;
+            int segmentEnd = segment + 1 < nSegments ? segmentStarts[segment + 1] : n;
+            long predicted = segmentStarts[segment] + (long) (slopes[segment] * ((double) z - segmentZs[segment]));
+            int start = (int) Math.max(segmentStart, Math.min(segmentEnd, predicted));
+            position = searchNear(z, start, segmentStart, segmentEnd);
+        }
+        return position;
+    }
+
+    // LearnedKeySearch interface
+
+    LearnedKeySearch(Object[] records, int n)
+    {
+        this.records = records;
+        this.n = n;
+        long[] zs = new long[MIN_SEGMENTS];
+        int[] starts = new int[MIN_SEGMENTS];
+        double[] segmentSlopes = new double[MIN_SEGMENTS];
+        int segments = 0;
+        long firstZ = 0;
+        int firstPosition = 0;
+        double minSlope = 0;
+        double maxSlope = 0;
+        long previousZ = -1;
+        for (int position = 0; position < n; position++) {
+            long z = z(position);
+            if (z != previousZ) {
+                boolean newSegment = segments == 0;
+                if (!newSegment) {
+                    double dz = (double) z - firstZ;
+                    double dp = position - firstPosition;
+                    double low = Math.max(minSlope, (dp - MAX_ERROR) / dz);
+                    double high = Math.min(maxSlope, (dp + MAX_ERROR) / dz);
+                    if (low <= high) {
+                        minSlope = low;
+                        maxSlope = high;
+                    } else {
+                        segmentSlopes[segments - 1] = slope(minSlope, maxSlope);
+                        newSegment = true;
+                    }
+                }
+                if (newSegment) {
+                    if (segments == zs.length) {
+                        zs = Arrays.copyOf(zs, segments * 2);
+                        starts = Arrays.copyOf(starts, segments * 2);
+                        segmentSlopes = Arrays.copyOf(segmentSlopes, segments * 2);
+                    }
+                    zs[segments] = z;
+                    starts[segments] = position;
+                    segments++;
+                    firstZ = z;
+                    firstPosition = position;
+                    minSlope = 0;
+                    maxSlope = Double.POSITIVE_INFINITY;
+                }
+                previousZ = z;
+            }
+        }
+        if (segments > 0) {
+            segmentSlopes[segments - 1] = slope(minSlope, maxSlope);
+        }
+        this.nSegments = segments;
+        this.segmentZs = zs;
+        this.segmentStarts = starts;
+        this.slopes = segmentSlopes;
+    }
+
+    // For use by this package
+
+    int segments()
+    {
+        return nSegments;
+    }
+
+    // For use by this class
+
+    // Returns the position of the first record in records[lo:hi) whose z-value is >= z, given that
+    // records[lo - 1] < z, and records[hi] >= z (or hi = n). Searches outward from start, doubling the distance,
+    // until the position is bracketed. If the model's prediction is good, start is within MAX_ERROR of the
+    // position being searched for.
+    private int searchNear(long z, int start, int lo, int hi)
+    {
+        int left = start;
+        int right = start;
+        int distance = MAX_ERROR;
+        // Establish: left == lo or z(left - 1) < z
+        while (left > lo && z(left - 1) >= z) {
+            left = Math.max(lo, left - distance);
+            distance <<= 1;
+        }
+        distance = MAX_ERROR;
+        // Establish: right == hi or z(right) >= z
+        while (right < hi && z(right) < z) {
+            right = Math.min(hi, right + distance);
+            distance <<= 1;
+        }
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            if (z(mid) < z) {
+                left = mid + 1;
+            } else {
+                right = mid;
+            }
+        }
+        return left;
+    }
+
+    private long z(int position)
+    {
+        return ((Record) records[position]).z();
+    }
+
+    private static double slope(double minSlope, double maxSlope)
+    {
+        return maxSlope == Double.POSITIVE_INFINITY ? minSlope : (minSlope + maxSlope) / 2;
+    }
+
+    // Class state
+
+    private static final int MAX_ERROR = 16;
+    private static final int MIN_SEGMENTS = 16;
+
+    // Object state
+
+    private final Object[] records;
+    private final int n;
+    private final int nSegments;
+    // For each segment: the first z-value, its position, and the slope of the line predicting positions.
+    private final long[] segmentZs;
+    private final int[] segmentStarts;
+    private final double[] slopes;
+}
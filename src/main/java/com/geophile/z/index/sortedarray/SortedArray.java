@@ -10,14 +10,23 @@ import com.geophile.z.Cursor;
 import com.geophile.z.Index;
 import com.geophile.z.Record;
 import com.geophile.z.index.RecordWithSpatialObject;
+import com.geophile.z.space.SpaceImpl;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SortedArray implements the {@link com.geophile.z.Index} interface in terms of an array.
  * Intended to be used internally, for a spatial join between a SpatialIndex and a SpatialObject.
+ * <p>
+ * By default, a cursor locates records by binary search. A SortedArray created with {@link Search#LEARNED}
+ * instead builds a piecewise-linear model of record positions when the array is sorted, so that a cursor's
+ * {@link com.geophile.z.Cursor#goTo(com.geophile.z.Record)} examines only a few records near the predicted
+ * position. A SortedArray created with {@link Search#EYTZINGER} copies the sorted z-values into an array in
+ * breadth-first order, which is searched without reading the records themselves. Either structure is rebuilt
+ * whenever records are moved, so they are best suited to large arrays that are mostly read.
  */
 
 public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
@@ -35,55 +44,38 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     @Override
     public void add(RECORD record)
     {
-        ensureSpace(n + 1);
-        records[n++] = record;
-        sorted = false;
+        zLengths |= 1L << SpaceImpl.length(record.z());
+        if (sorted) {
+            addToTail(record);
+        } else {
+            ensureSpace(n + 1);
+            records[n++] = record;
+        }
     }
 
     @Override
     public boolean remove(long z, Record.Filter<RECORD> filter)
     {
+        ensureSorted();
         boolean removeRecordFound = false;
-        RECORD key = newKeyRecord();
-        key.z(z);
-        int binarySearchPosition = binarySearch(key);
-        if (binarySearchPosition >= 0) {
-            // There might be multiple occurrences of the same z. Search backward and forward for matching zs, looking
-            // for a record satisfying the record filter.
-            boolean sameZ = true;
-            int position = binarySearchPosition;
-            while (position >= 0 && sameZ && !removeRecordFound) {
-                RECORD record = (RECORD) records[position];
-                if (record.z() == z) {
-                    if (filter.select(record)) {
-                        removeRecordFound = true;
-                    } else {
-                        position--;
-                    }
-                } else {
-                    sameZ = false;
-                }
-            }
-            if (!removeRecordFound) {
-                // Search forward
-                sameZ = true;
-                position = binarySearchPosition + 1;
-                while (position < n && sameZ && !removeRecordFound) {
-                    RECORD record = (RECORD) records[position];
-                    if (record.z() == z) {
-                        if (filter.select(record)) {
-                            removeRecordFound = true;
-                        } else {
-                            position++;
-                        }
-                    } else {
-                        sameZ = false;
-                    }
-                }
+        // There might be multiple occurrences of the same z, in records and in tail.
+        int position = lowerBound(z);
+        while (position < n && ((RECORD) records[position]).z() == z && !removeRecordFound) {
+            if (!deleted.get(position) && filter.select((RECORD) records[position])) {
+                deleteRecord(position);
+                compactIfNeeded();
+                removeRecordFound = true;
+            } else {
+                position++;
             }
-            if (removeRecordFound) {
-                System.arraycopy(records, position + 1, records, position, n - 1 - position);
-                n--;
+        }
+        position = lowerBound(tail, tailN, z);
+        while (position < tailN && ((RECORD) tail[position]).z() == z && !removeRecordFound) {
+            if (filter.select((RECORD) tail[position])) {
+                deleteTailRecord(position);
+                removeRecordFound = true;
+            } else {
+                position++;
             }
         }
         return removeRecordFound;
@@ -93,6 +85,7 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     public Cursor<RECORD> cursor()
     {
         ensureSorted();
+        compactIfNeeded();
         return new SortedArrayCursor<RECORD>(this);
     }
 
@@ -111,27 +104,100 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
         return true;
     }
 
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
     // SortedArray
 
     public void reset()
     {
+        Arrays.fill(records, 0, n, null);
+        Arrays.fill(tail, 0, tailN, null);
+        deleted.clear();
+        deletedCount = 0;
         n = 0;
+        tailN = 0;
+        zLengths = 0;
+        // Go back to appending, so that a bulk load is followed by a single sort.
+        sorted = false;
+        keySearch = null;
+        modifications++;
     }
 
     public SortedArray()
-    {}
+    {
+        this(Search.BINARY);
+    }
+
+    public SortedArray(Search search)
+    {
+        this.search = search;
+    }
 
     // For use by this package
 
-    int binarySearch(RECORD key)
+    // Returns the position of the first record in array[0:n) whose z-value is >= z.
+    static int lowerBound(Object[] array, int n, long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((Record) array[mid]).z() < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the position of the first record in records[0:n) whose z-value is >= z. Must not be called before
+    // records is sorted.
+    int lowerBound(long z)
     {
-        return Arrays.binarySearch(records, 0, n, key, SortedArray.Z_COMPARATOR);
+        if (keySearch == null) {
+            switch (search) {
+                case LEARNED:
+                    keySearch = new LearnedKeySearch(records, n);
+                    break;
+                case EYTZINGER:
+                    keySearch = new EytzingerKeySearch(records, n);
+                    break;
+                default:
+                    keySearch = new BinaryKeySearch(records, n);
+                    break;
+            }
+        }
+        return keySearch.lowerBound(z);
     }
 
+    // Marks the record at the given position as deleted. Positions of other records are unchanged, so a cursor
+    // that deletes records as it goes doesn't need to adjust its position, and deleting many records costs time
+    // proportional to the number of records deleted. Deleted records are removed by compaction, which happens
+    // when a cursor is created, when a record is removed through the index, and when tail is merged. Compaction
+    // may happen while other cursors are open. Like any other movement of records, it is counted by
+    // modifications, so that those cursors reposition themselves.
     void deleteRecord(int at)
     {
-        System.arraycopy(records, at + 1, records, at, n - at - 1);
-        records[--n] = null;
+        assert !deleted.get(at) : at;
+        deleted.set(at);
+        deletedCount++;
+    }
+
+    boolean deleted(int at)
+    {
+        return deleted.get(at);
+    }
+
+    void deleteTailRecord(int at)
+    {
+        System.arraycopy(tail, at + 1, tail, at, tailN - at - 1);
+        tail[--tailN] = null;
+        modifications++;
     }
 
     // For use by this class
@@ -139,22 +205,86 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     private void ensureSorted()
     {
         if (!sorted) {
-            if (n == 0) {
-                records = new Object[0];
+            Arrays.sort(records, 0, n, Z_COMPARATOR);
+            sorted = true;
+            keySearch = null;
+            modifications++;
+        }
+    }
+
+    // Once records is sorted, an added record is inserted into tail, which is kept sorted, and which is much
+    // smaller than records. When tail is full, it is merged into records in linear time. Insertion and merging
+    // both cost O(sqrt(n)) per added record, amortized. This avoids re-sorting records for every add that is
+    // followed by a call of cursor().
+    private void addToTail(RECORD record)
+    {
+        if (tailN == tail.length) {
+            tail = Arrays.copyOf(tail, Math.max(MIN_ARRAY_SIZE, tailN * 2));
+        }
+        // Insert after records with the same z-value, preserving insertion order. z-values are never negative, so
+        // z + 1 doesn't overflow.
+        int position = lowerBound(tail, tailN, record.z() + 1);
+        System.arraycopy(tail, position, tail, position + 1, tailN - position);
+        tail[position] = record;
+        tailN++;
+        modifications++;
+        if (tailN >= Math.max(MIN_TAIL_SIZE, (int) Math.sqrt(n))) {
+            mergeTail();
+        }
+    }
+
+    private void compactIfNeeded()
+    {
+        if (deletedCount > n * MAX_DELETED_FRACTION) {
+            compact();
+        }
+    }
+
+    private void compact()
+    {
+        int live = 0;
+        for (int i = 0; i < n; i++) {
+            if (!deleted.get(i)) {
+                records[live++] = records[i];
+            }
+        }
+        Arrays.fill(records, live, n, null);
+        n = live;
+        keySearch = null;
+        deleted.clear();
+        deletedCount = 0;
+        modifications++;
+    }
+
+    private void mergeTail()
+    {
+        if (deletedCount > 0) {
+            compact();
+        }
+        ensureSpace(n + tailN);
+        // Merge from the end, so that records doesn't need to be copied first. On a tie, the record from tail is
+        // placed later, since it was added later.
+        int r = n - 1;
+        int t = tailN - 1;
+        int m = n + tailN - 1;
+        while (t >= 0) {
+            if (r >= 0 && ((Record) records[r]).z() > ((Record) tail[t]).z()) {
+                records[m--] = records[r--];
             } else {
-                Arrays.sort(records, 0, n, Z_COMPARATOR);
+                records[m--] = tail[t];
+                tail[t--] = null;
             }
-            sorted = true;
         }
+        n += tailN;
+        tailN = 0;
+        keySearch = null;
+        modifications++;
     }
 
     private void ensureSpace(int n)
     {
-        int newLength = Math.max(MIN_ARRAY_SIZE, (int) (n * 1.5));
-        if (records == null) {
-            records = new Object[newLength];
-        } else if (records.length < n) {
-            records = Arrays.copyOf(records, newLength);
+        if (records.length < n) {
+            records = Arrays.copyOf(records, Math.max(MIN_ARRAY_SIZE, (int) (n * 1.5)));
         }
     }
 
@@ -162,6 +292,8 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
 
     private static final AtomicInteger idGenerator = new AtomicInteger(0);
     private static final int MIN_ARRAY_SIZE = 20;
+    private static final int MIN_TAIL_SIZE = 64;
+    private static final double MAX_DELETED_FRACTION = 0.25;
     static final Comparator Z_COMPARATOR =
         new Comparator()
         {
@@ -177,12 +309,49 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     // Object state
 
     private final String name = String.format("SortedArray(%s)", idGenerator.getAndIncrement());
-    Object[] records;
+    Object[] records = new Object[0];
     int n = 0;
+    // Records added since records was sorted, in z-order.
+    Object[] tail = new Object[0];
+    int tailN = 0;
+    // Counts changes to the positions of records in records and tail. A cursor that sees a change in this count
+    // repositions itself.
+    int modifications = 0;
+    // Positions in records of deleted records
+    private final BitSet deleted = new BitSet();
+    private int deletedCount = 0;
     private boolean sorted = false;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private final Search search;
+    // Built on demand once records is sorted, and discarded when records are moved.
+    private KeySearch keySearch;
 
     // Inner classes
 
+    /**
+     * Specifies how a cursor locates the records of a SortedArray.
+     */
+    public enum Search
+    {
+        /**
+         * Binary search of the sorted records.
+         */
+        BINARY,
+
+        /**
+         * Prediction of a record's position by a piecewise-linear model of the sorted z-values, followed by a
+         * search of nearby records.
+         */
+        LEARNED,
+
+        /**
+         * Branch-free search of a copy of the sorted z-values, stored in Eytzinger (breadth-first) order, so that
+         * the records themselves are not read during the search.
+         */
+        EYTZINGER
+    }
+
     public static class OfBaseRecord extends SortedArray<RecordWithSpatialObject>
     {
         @Override
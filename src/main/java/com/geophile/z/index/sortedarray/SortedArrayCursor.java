@@ -21,6 +21,39 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
         return neighbor();
     }
 
+    @Override
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return 0;
+        }
+        int n = 0;
+        RECORD record = null;
+        RECORD last = null;
+        while (n < max && (record = advance()) != null) {
+            zs[n] = record.z();
+            if (records != null) {
+                batchRecord(records, n, record);
+            }
+            last = record;
+            n++;
+        }
+        if (n == 0) {
+            close();
+        } else {
+            current(last);
+            state(State.IN_USE);
+        }
+        return n;
+    }
+
     @Override
     public void goTo(RECORD key)
     {
@@ -28,16 +61,52 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
         state(State.NEVER_USED);
     }
 
+    // Gallops from the current positions in records and tail, falling back to a search of the entire array if key
+    // is far from those positions.
+    @Override
+    public void goToForward(RECORD key)
+    {
+        long z = key.z();
+        if (state() == State.NEVER_USED || modifications != sortedArray.modifications) {
+            // The cursor hasn't been positioned yet, or records have moved since it was.
+            goTo(key);
+        } else {
+            position = gallop(sortedArray.records, sortedArray.n, position, z);
+            if (position == UNDEFINED) {
+                position = sortedArray.lowerBound(z);
+            }
+            tailPosition = gallop(sortedArray.tail, sortedArray.tailN, tailPosition, z);
+            if (tailPosition == UNDEFINED) {
+                tailPosition = SortedArray.lowerBound(sortedArray.tail, sortedArray.tailN, z);
+            }
+            lastReportedPosition = UNDEFINED;
+            lastZ = z;
+            lastZCount = 0;
+            // Positions are now set up for next(), as if by startIteration.
+            state(State.IN_USE);
+        }
+    }
+
     @Override
     public boolean deleteCurrent() throws IOException, InterruptedException
     {
         boolean deleted = false;
-        if (state() == State.IN_USE) {
-            assert lastReportedPosition != UNDEFINED;
-            sortedArray.deleteRecord(lastReportedPosition);
-            if (position != DONE && position > lastReportedPosition) {
-                position--;
+        if (state() == State.IN_USE && modifications != sortedArray.modifications) {
+            reposition();
+        }
+        if (state() == State.IN_USE && lastReportedPosition != UNDEFINED) {
+            if (lastReportedFromTail) {
+                sortedArray.deleteTailRecord(lastReportedPosition);
+                if (tailPosition > lastReportedPosition) {
+                    tailPosition--;
+                }
+                modifications = sortedArray.modifications;
+            } else {
+                // Deletion from records leaves a tombstone, so positions don't change.
+                sortedArray.deleteRecord(lastReportedPosition);
             }
+            lastReportedPosition = UNDEFINED;
+            lastZCount--;
             deleted = true;
         }
         return deleted;
@@ -53,11 +122,13 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
 
     // For use by this class
 
+    // Records from the SortedArray's records and tail arrays are merged. On a tie, the record from records is
+    // returned first, since it was added earlier.
     private RECORD neighbor() throws IOException, InterruptedException
     {
         switch (state()) {
             case NEVER_USED:
-                startIteration(true);
+                startIteration();
                 break;
             case IN_USE:
                 break;
@@ -65,54 +136,165 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
                 assert current() == null;
                 return null;
         }
-        if (position != DONE) {
-            RECORD record = record(position);
+        RECORD record = advance();
+        if (record == null) {
+            close();
+        } else {
             current(record);
-            startAt = record;
-            lastReportedPosition = position;
             state(State.IN_USE);
+        }
+        return current();
+    }
+
+    // Returns the next record, and records its position for deleteCurrent(), or returns null if there are no
+    // more records.
+    private RECORD advance()
+    {
+        if (modifications != sortedArray.modifications) {
+            reposition();
+        }
+        while (position < sortedArray.n && sortedArray.deleted(position)) {
             position++;
-            assert position <= sortedArray.n : position;
-            if (position == sortedArray.n) {
-                position = DONE;
+        }
+        boolean recordsAvailable = position < sortedArray.n;
+        boolean tailAvailable = tailPosition < sortedArray.tailN;
+        RECORD record = null;
+        if (recordsAvailable || tailAvailable) {
+            lastReportedFromTail =
+                tailAvailable &&
+                (!recordsAvailable ||
+                 ((Record) sortedArray.tail[tailPosition]).z() < ((Record) sortedArray.records[position]).z());
+            if (lastReportedFromTail) {
+                record = record(sortedArray.tail, tailPosition);
+                lastReportedPosition = tailPosition++;
+            } else {
+                record = record(sortedArray.records, position);
+                lastReportedPosition = position++;
+            }
+            long z = record.z();
+            if (lastZCount > 0 && z == lastZ) {
+                lastZCount++;
+            } else {
+                lastZ = z;
+                lastZCount = 1;
             }
-        } else {
-            close();
         }
-        return current();
+        return record;
     }
 
-    private void startIteration(boolean includeStartKey)
+    // Positions the cursor following the last record returned, after records have been moved by an update through
+    // the index. The last record returned is found by searching for lastZ, and skipping lastZCount records with
+    // that z-value, in the order in which advance() returns them: first those in records, then those in tail.
+    // lastReportedPosition locates the last record returned, unless it has been deleted.
+    private void reposition()
     {
-        position = sortedArray.binarySearch(startAt);
-        if (position < 0) {
-            // Key not found
-            position = -position - 1; // See javadoc for binarySearch
-        } else {
-            // Key found
-            if (!includeStartKey) {
-                position++;
+        boolean currentDeleted = lastReportedPosition == UNDEFINED;
+        int skip = lastZCount;
+        position = sortedArray.lowerBound(lastZ);
+        while (skip > 0 &&
+               position < sortedArray.n &&
+               ((Record) sortedArray.records[position]).z() == lastZ) {
+            if (!sortedArray.deleted(position)) {
+                lastReportedPosition = position;
+                lastReportedFromTail = false;
+                skip--;
             }
+            position++;
+        }
+        tailPosition = SortedArray.lowerBound(sortedArray.tail, sortedArray.tailN, lastZ);
+        while (skip > 0 &&
+               tailPosition < sortedArray.tailN &&
+               ((Record) sortedArray.tail[tailPosition]).z() == lastZ) {
+            lastReportedPosition = tailPosition;
+            lastReportedFromTail = true;
+            skip--;
+            tailPosition++;
         }
-        assert position <= sortedArray.n : position;
-        if (position == -1 || position == sortedArray.n) {
-            position = DONE;
+        if (currentDeleted || skip > 0) {
+            lastReportedPosition = UNDEFINED;
         }
+        modifications = sortedArray.modifications;
     }
 
-    private RECORD record(int i)
+    // records and tail only contain records of the array's record type, so the cast is safe.
+    @SuppressWarnings("unchecked")
+    private RECORD record(Object[] array, int position)
     {
-        return (RECORD) sortedArray.records[i];
+        return (RECORD) array[position];
     }
 
+    private void startIteration()
+    {
+        long z = startAt.z();
+        position = sortedArray.lowerBound(z);
+        tailPosition = SortedArray.lowerBound(sortedArray.tail, sortedArray.tailN, z);
+        lastReportedPosition = UNDEFINED;
+        lastZ = z;
+        lastZCount = 0;
+        modifications = sortedArray.modifications;
+    }
+
+    // Returns the position of the first record in array[0:n) whose z-value is >= z, by searching outward from
+    // start, at distances doubling from 1 up to MAX_GALLOP. The search is usually forward, but a short backward
+    // search is also common: in an ancestor search, next() may return a record beyond the next key. Returns
+    // UNDEFINED if z is too far from start.
+    private static int gallop(Object[] array, int n, int start, long z)
+    {
+        // The position being searched for is in [lo, hi].
+        int lo;
+        int hi;
+        int bound = 1;
+        if (start == 0 || ((Record) array[start - 1]).z() < z) {
+            // Forward: find the smallest bound such that array[start + bound - 1] >= z.
+            while (bound <= MAX_GALLOP && start + bound <= n && ((Record) array[start + bound - 1]).z() < z) {
+                bound <<= 1;
+            }
+            lo = start + bound / 2;
+            hi = Math.min(n, start + bound - 1);
+        } else {
+            // Backward: array[start - 1] >= z. Find the smallest bound such that array[start - bound - 1] < z.
+            while (bound <= MAX_GALLOP && start - bound > 0 && ((Record) array[start - bound - 1]).z() >= z) {
+                bound <<= 1;
+            }
+            lo = Math.max(0, start - bound);
+            hi = start - bound / 2 - 1;
+        }
+        int position = UNDEFINED;
+        if (bound <= MAX_GALLOP) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (((Record) array[mid]).z() < z) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            position = lo;
+        }
+        return position;
+    }
+
+    // Class state
+
+    private static final int MAX_GALLOP = 1 << 10;
+
     // Object state
 
-    private static final int DONE = -1;
     private static final int UNDEFINED = -1;
 
     private final SortedArray<RECORD> sortedArray;
     private RECORD startAt;
+    // Positions of the next records to consider, in records and tail
     private int position;
-    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    private int tailPosition;
+    // Position of the last record returned via next(), and the array containing it. Needed to support
+    // deleteCurrent().
     private int lastReportedPosition = UNDEFINED;
+    private boolean lastReportedFromTail;
+    // The last record returned is the lastZCount-th record with z-value lastZ, counting from the position at which
+    // the cursor started, (or the cursor has just been positioned at lastZ, if lastZCount is 0). This locates the
+    // cursor if records move, (as indicated by modifications).
+    private long lastZ;
+    private int lastZCount;
+    private int modifications;
 }
@@ -0,0 +1,264 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.versioned;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Version is an immutable state of a {@link com.geophile.z.index.versioned.VersionedIndex}, and is itself an
+ * {@link com.geophile.z.Index} that can be searched, e.g. by a spatial join, but not updated. Records are stored in
+ * blocks, ordered by z-value, and a Version shares the blocks that were not affected by the updates that created it
+ * with the previous Version. A Version is safe for use by multiple threads.
+ */
+
+public final class Version<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("Version(%s blocks)", blocks.size());
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        throw new UnsupportedOperationException(String.format("%s is immutable", this));
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        throw new UnsupportedOperationException(String.format("%s is immutable", this));
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new VersionedCursor<>(this, null);
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return versionedIndex.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return versionedIndex.newKeyRecord();
+    }
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // For use by this package
+
+    // An empty Version
+    Version(VersionedIndex<RECORD> versionedIndex)
+    {
+        this(versionedIndex, new ArrayList<Block<RECORD>>(), 0);
+    }
+
+    int blocks()
+    {
+        return blocks.size();
+    }
+
+    Block<RECORD> block(int b)
+    {
+        return blocks.get(b);
+    }
+
+    // Returns the block that contains z, if any record with that z-value is present: the last block whose first
+    // z-value is not greater than z, or block 0.
+    int blockContaining(long z)
+    {
+        int lo = 0;
+        int hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).zs[0] <= z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == 0 ? 0 : lo - 1;
+    }
+
+    // Returns a new Version, reflecting this Version updated by ops, in order. If removed is not null, removed[i]
+    // is set to indicate whether the removal ops[i] found a record.
+    Version<RECORD> apply(List<VersionedIndex.Op<RECORD>> ops, boolean[] removed)
+    {
+        // Each op is applied to a copy of the block that contains its z-value, (with block 0 created if there are
+        // no blocks). A z-value's records are never split across blocks, so all records with a given z-value are
+        // in one copy.
+        int nBlocks = Math.max(blocks.size(), 1);
+        List<List<RECORD>> updatedBlocks = new ArrayList<>(Collections.<List<RECORD>>nCopies(nBlocks, null));
+        long zLengths = this.zLengths;
+        int i = 0;
+        for (VersionedIndex.Op<RECORD> op : ops) {
+            int b = blockContaining(op.z);
+            List<RECORD> records = updatedBlocks.get(b);
+            if (records == null) {
+                records =
+                    b < blocks.size()
+                    ? new ArrayList<>(Arrays.asList(blocks.get(b).records))
+                    : new ArrayList<RECORD>();
+                updatedBlocks.set(b, records);
+            }
+            if (op.record != null) {
+                // Records with the same z-value are kept in the order added.
+                records.add(upperBound(records, op.z), op.record);
+                zLengths |= 1L << SpaceImpl.length(op.z);
+            } else {
+                int position = lowerBound(records, op.z);
+                while (position < records.size() &&
+                       records.get(position).z() == op.z &&
+                       !op.filter.select(records.get(position))) {
+                    position++;
+                }
+                boolean found = position < records.size() && records.get(position).z() == op.z;
+                if (found) {
+                    records.remove(position);
+                }
+                if (removed != null) {
+                    removed[i] = found;
+                }
+            }
+            i++;
+        }
+        // Blocks not updated are shared with this Version. Updated blocks that have become empty are dropped, and
+        // those that have grown too large are split.
+        List<Block<RECORD>> newBlocks = new ArrayList<>(nBlocks);
+        for (int b = 0; b < nBlocks; b++) {
+            List<RECORD> records = updatedBlocks.get(b);
+            if (records == null) {
+                if (b < blocks.size()) {
+                    newBlocks.add(blocks.get(b));
+                }
+            } else {
+                split(records, newBlocks);
+            }
+        }
+        return new Version<>(versionedIndex, newBlocks, zLengths);
+    }
+
+    // For use by this class
+
+    private Version(VersionedIndex<RECORD> versionedIndex, List<Block<RECORD>> blocks, long zLengths)
+    {
+        this.versionedIndex = versionedIndex;
+        this.blocks = blocks;
+        this.zLengths = zLengths;
+    }
+
+    private void split(List<RECORD> records, List<Block<RECORD>> blocks)
+    {
+        int blockSize = versionedIndex.blockSize();
+        int n = records.size();
+        int start = 0;
+        while (start < n) {
+            int end = n - start > 2 * blockSize ? start + blockSize : n;
+            // Don't split the records with one z-value
+            while (end < n && records.get(end).z() == records.get(end - 1).z()) {
+                end++;
+            }
+            blocks.add(new Block<>(records.subList(start, end)));
+            start = end;
+        }
+    }
+
+    private static <RECORD extends Record> int lowerBound(List<RECORD> records, long z)
+    {
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (records.get(mid).z() < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static <RECORD extends Record> int upperBound(List<RECORD> records, long z)
+    {
+        int lo = 0;
+        int hi = records.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (records.get(mid).z() <= z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Object state
+
+    private final VersionedIndex<RECORD> versionedIndex;
+    private final List<Block<RECORD>> blocks;
+    // Lengths of z-values added, as returned by zLengths()
+    private final long zLengths;
+
+    // Inner classes
+
+    // An immutable, non-empty array of records, ordered by z-value.
+    static final class Block<RECORD extends Record>
+    {
+        Block(List<RECORD> records)
+        {
+            int n = records.size();
+            this.zs = new long[n];
+            // The array only holds records of the index, so the cast is safe.
+            @SuppressWarnings("unchecked")
+            RECORD[] blockRecords = (RECORD[]) new Record[n];
+            this.records = blockRecords;
+            for (int i = 0; i < n; i++) {
+                RECORD record = records.get(i);
+                this.zs[i] = record.z();
+                this.records[i] = record;
+            }
+        }
+
+        final long[] zs;
+        final RECORD[] records;
+    }
+}
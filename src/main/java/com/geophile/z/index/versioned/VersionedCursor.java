@@ -0,0 +1,138 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.versioned;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+/**
+ * A VersionedCursor visits the records of one {@link com.geophile.z.index.versioned.Version} at a time, and is not
+ * affected by updates committed after the Version was created. A cursor obtained from a Version always visits that
+ * Version, and does not support {@link #deleteCurrent()}. A cursor obtained from a
+ * {@link com.geophile.z.index.versioned.VersionedIndex} visits the Version that was current when the cursor was
+ * last positioned by {@link #goTo(com.geophile.z.Record)}, and deleteCurrent removes the current record from the
+ * VersionedIndex, creating a new Version.
+ */
+
+public class VersionedCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        while (block != null && position == block.zs.length) {
+            block = ++b < version.blocks() ? version.block(b) : null;
+            position = 0;
+        }
+        if (block == null) {
+            close();
+        } else {
+            current(block.records[position++]);
+            state(State.IN_USE);
+            deleted = false;
+        }
+        return current();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        goToZ = key.z();
+        if (versionedIndex != null) {
+            version = versionedIndex.current();
+        }
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        if (versionedIndex == null) {
+            throw new UnsupportedOperationException(String.format("%s is immutable", version));
+        }
+        boolean removed = false;
+        if (state() == State.IN_USE && !deleted) {
+            // Records are shared by Versions, so the record is identified by identity.
+            final RECORD current = current();
+            removed = versionedIndex.remove(current.z(),
+                                            new Record.Filter<RECORD>()
+                                            {
+                                                @Override
+                                                public boolean select(RECORD record)
+                                                {
+                                                    return record == current;
+                                                }
+                                            });
+            deleted = true;
+        }
+        return removed;
+    }
+
+    // VersionedCursor interface
+
+    VersionedCursor(Version<RECORD> version, VersionedIndex<RECORD> versionedIndex)
+    {
+        super(versionedIndex == null ? version : versionedIndex);
+        this.version = version;
+        this.versionedIndex = versionedIndex;
+    }
+
+    // For use by this class
+
+    private void startIteration()
+    {
+        if (version.blocks() == 0) {
+            block = null;
+        } else {
+            b = version.blockContaining(goToZ);
+            block = version.block(b);
+            position = lowerBound(block.zs, goToZ);
+        }
+    }
+
+    private static int lowerBound(long[] zs, long z)
+    {
+        int lo = 0;
+        int hi = zs.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Object state
+
+    private Version<RECORD> version;
+    // Null if the cursor was obtained from a Version
+    private final VersionedIndex<RECORD> versionedIndex;
+    private long goToZ;
+    // The cursor is positioned before block.records[position], and block is version.block(b), or null if the
+    // cursor is past the last block.
+    private Version.Block<RECORD> block;
+    private int b;
+    private int position;
+    // True if the record most recently returned by next has been deleted
+    private boolean deleted;
+}
@@ -0,0 +1,242 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.versioned;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * VersionedIndex is an {@link com.geophile.z.Index} for read-mostly workloads, whose contents are a sequence of
+ * immutable {@link com.geophile.z.index.versioned.Version}s. Each
+ * {@link com.geophile.z.index.versioned.VersionedIndex.Batch} of updates, committed atomically, creates a new
+ * Version, which shares the blocks of records not affected by the updates with the previous Version. A Version is
+ * itself an Index, which can be searched and joined by any number of threads, without locking, and without being
+ * affected by later updates. Versions that are no longer in use are reclaimed by the garbage collector.
+ * <p>
+ * {@link #current()} returns the most recent Version, and a cursor obtained from the VersionedIndex visits the
+ * Version that was current when the cursor was last positioned. To see one consistent state across repositioning
+ * and across multiple cursors, e.g. for a spatial join, obtain the cursors from the same Version. add and remove
+ * are single-update batches. Commits are serialized, but don't block readers. Records are copied when added, and
+ * are never modified, so records are stable.
+ */
+
+public abstract class VersionedIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("VersionedIndex(%s)", current);
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        commit(Collections.singletonList(Op.add(copy(record))), null);
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean[] removed = new boolean[1];
+        commit(Collections.singletonList(Op.remove(z, filter)), removed);
+        return removed[0];
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new VersionedCursor<>(current, this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return current.zLengths();
+    }
+
+    // VersionedIndex interface
+
+    /**
+     * Returns the most recently committed Version.
+     * @return The most recently committed Version.
+     */
+    public Version<RECORD> current()
+    {
+        return current;
+    }
+
+    /**
+     * Returns a new Batch, for updates to be committed atomically.
+     * @return A new Batch.
+     */
+    public Batch newBatch()
+    {
+        return new Batch();
+    }
+
+    /**
+     * Creates a VersionedIndex whose blocks contain about {@link #DEFAULT_BLOCK_SIZE} records.
+     */
+    public VersionedIndex()
+    {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a VersionedIndex.
+     * @param blockSize The number of records in a block created by splitting a block that has grown too large.
+     *                  A block is split when it contains more than twice this number of records, but records with the
+     *                  same z-value are never split across blocks.
+     */
+    public VersionedIndex(int blockSize)
+    {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException(Integer.toString(blockSize));
+        }
+        this.blockSize = blockSize;
+        this.current = new Version<>(this);
+    }
+
+    // For use by this package
+
+    int blockSize()
+    {
+        return blockSize;
+    }
+
+    // For use by this class
+
+    private RECORD copy(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        return copy;
+    }
+
+    private Version<RECORD> commit(List<Op<RECORD>> ops, boolean[] removed)
+    {
+        synchronized (commitLock) {
+            current = current.apply(ops, removed);
+            return current;
+        }
+    }
+
+    // Class state
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    // Object state
+
+    private final int blockSize;
+    private final Object commitLock = new Object();
+    private volatile Version<RECORD> current;
+
+    // Inner classes
+
+    /**
+     * A Batch accumulates updates, which become visible together when the Batch is committed. The updates are
+     * applied to the Version that is current at the time of the commit, in the order in which they were made.
+     * A Batch is not safe for use by multiple threads, and can be committed once.
+     */
+    public final class Batch
+    {
+        /**
+         * Adds a record, as for {@link com.geophile.z.Index#add(com.geophile.z.Record)}.
+         * @param record The record to be added. It is copied, so the caller may modify it once this method
+         *               returns.
+         */
+        public void add(RECORD record)
+        {
+            checkNotCommitted();
+            ops.add(Op.add(copy(record)));
+        }
+
+        /**
+         * Removes a record, as for {@link com.geophile.z.Index#remove(long, com.geophile.z.Record.Filter)}. The
+         * filter is applied when the Batch is committed.
+         * @param z z-value of the record to be removed.
+         * @param filter identifies the record to be removed.
+         */
+        public void remove(long z, Record.Filter<RECORD> filter)
+        {
+            checkNotCommitted();
+            ops.add(Op.remove(z, filter));
+        }
+
+        /**
+         * Applies the updates of this Batch to the current Version, creating a new Version, which becomes
+         * current.
+         * @return The new Version.
+         */
+        public Version<RECORD> commit()
+        {
+            checkNotCommitted();
+            committed = true;
+            return VersionedIndex.this.commit(ops, null);
+        }
+
+        private void checkNotCommitted()
+        {
+            if (committed) {
+                throw new IllegalStateException("Batch has already been committed");
+            }
+        }
+
+        private final List<Op<RECORD>> ops = new ArrayList<>();
+        private boolean committed = false;
+    }
+
+    // An update to be applied by Version.apply.
+    static final class Op<RECORD extends Record>
+    {
+        static <RECORD extends Record> Op<RECORD> add(RECORD record)
+        {
+            return new Op<>(record.z(), record, null);
+        }
+
+        static <RECORD extends Record> Op<RECORD> remove(long z, Record.Filter<RECORD> filter)
+        {
+            return new Op<>(z, null, filter);
+        }
+
+        private Op(long z, RECORD record, Record.Filter<RECORD> filter)
+        {
+            this.z = z;
+            this.record = record;
+            this.filter = filter;
+        }
+
+        final long z;
+        // Record to be added, or null for a removal.
+        final RECORD record;
+        final Record.Filter<RECORD> filter;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CompressedZArray is a variant of {@link com.geophile.z.index.zarray.ZArray} in which the z-values are
+ * compressed. Sorted z-values are stored in blocks of up to {@link #BLOCK_SIZE}. The first z-value of each block
+ * is stored in an array of block heads, and each following z-value is stored as a varint-encoded delta from its
+ * predecessor. The z-values of a dense index differ by small deltas, typically requiring one or two bytes each,
+ * instead of eight. A cursor positions itself by binary-searching the block heads and decoding one block, and
+ * then decodes blocks as it advances.
+ * <p>
+ * Added records are buffered, and merged into the compressed blocks the next time a cursor is created, or when
+ * a search by {@link #remove(long, com.geophile.z.Record.Filter)} requires it. Only the blocks receiving added
+ * records are decoded and re-encoded, (and split if they become too large). Removed records are marked as
+ * deleted, and are removed when a cursor is created, if they are a large enough fraction of the index. A
+ * CompressedZArray is therefore best suited to indexes that are loaded and then mostly read.
+ * Records retrieved from a CompressedZArray are not stable. A CompressedZArray is not safe for use by multiple
+ * threads.
+ */
+
+public abstract class CompressedZArray<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        if (pendingN == pendingZs.length) {
+            int newLength = Math.max(MIN_PENDING_SIZE, pendingN * 2);
+            pendingZs = Arrays.copyOf(pendingZs, newLength);
+            pendingIds = Arrays.copyOf(pendingIds, newLength);
+        }
+        pendingZs[pendingN] = record.z();
+        zLengths |= 1L << SpaceImpl.length(record.z());
+        pendingIds[pendingN] = recordId(record);
+        pendingN++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        if (pendingN > 0) {
+            build();
+        }
+        boolean removeRecordFound = false;
+        RECORD record = newRecord();
+        long[] blockZs = new long[BLOCK_SIZE];
+        int block = firstBlock(z);
+        int blockStart = blockStart(block);
+        int position = blockStart;
+        int blockEnd = decodeBlock(block, blockZs);
+        // Skip records in the block with z-values < z.
+        while (position < blockEnd && blockZs[position - blockStart] < z) {
+            position++;
+        }
+        boolean sameZ = true;
+        while (sameZ && !removeRecordFound && position < n) {
+            if (position == blockEnd) {
+                block++;
+                blockStart = blockEnd;
+                blockEnd = decodeBlock(block, blockZs);
+            }
+            long positionZ = blockZs[position - blockStart];
+            if (positionZ == z) {
+                if (!deleted.get(position)) {
+                    setupRecord(record, ids[position]);
+                    record.z(positionZ);
+                    if (filter.select(record)) {
+                        deleteRecord(position);
+                        removeRecordFound = true;
+                    }
+                }
+                position++;
+            } else {
+                sameZ = false;
+            }
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        if (pendingN > 0 || deletedCount > n * MAX_DELETED_FRACTION) {
+            build();
+        }
+        return new CompressedZArrayCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // CompressedZArray interface
+
+    /**
+     * Returns the number of bytes used to represent the z-values of this index, including block heads and
+     * offsets. Records added since the last time a cursor was created are not included.
+     * @return The number of bytes used to represent the z-values of this index.
+     */
+    public long zBytes()
+    {
+        return dataSize + heads.length * 8L + blockStarts.length * 4L + blockOffsets.length * 4L;
+    }
+
+    public CompressedZArray()
+    {}
+
+    /**
+     * Returns the id identifying the given record. The record's z-value is stored separately, and should not
+     * be encoded in the id.
+     * @param record The record being added to this CompressedZArray.
+     * @return The id identifying the given record.
+     */
+    protected abstract long recordId(RECORD record);
+
+    /**
+     * Modifies the given record so that it represents the record with the given id. The record's z-value is
+     * set by the caller.
+     * @param record The record to be modified.
+     * @param recordId An id previously obtained by {@link #recordId(com.geophile.z.Record)}.
+     */
+    protected abstract void setupRecord(RECORD record, long recordId);
+
+    // For use by this package
+
+    // Returns the block containing the first record with z-value >= z. This is the block preceding the first
+    // block whose head is >= z, because the preceding block may end with records whose z-values are >= z.
+    int firstBlock(long z)
+    {
+        int lo = 0;
+        int hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (heads[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.max(0, lo - 1);
+    }
+
+    // Returns the position of the first record of the given block, or n if there is no such block.
+    int blockStart(int block)
+    {
+        return block < blocks ? blockStarts[block] : n;
+    }
+
+    // Decodes the z-values of the given block into blockZs, and returns the position following the last record
+    // of the block.
+    int decodeBlock(int block, long[] blockZs)
+    {
+        int end = n;
+        if (block < blocks) {
+            end = blockStarts[block + 1];
+            long z = heads[block];
+            blockZs[0] = z;
+            int offset = blockOffsets[block];
+            int count = end - blockStarts[block];
+            for (int i = 1; i < count; i++) {
+                // Unsigned LEB128 varint
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    delta |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while (b < 0);
+                z += delta;
+                blockZs[i] = z;
+            }
+        }
+        return end;
+    }
+
+    long id(int position)
+    {
+        return ids[position];
+    }
+
+    boolean deleted(int position)
+    {
+        return deleted.get(position);
+    }
+
+    // Marks the record as deleted. Positions of other records are unchanged.
+    void deleteRecord(int position)
+    {
+        deleted.set(position);
+        deletedCount++;
+    }
+
+    // Counts builds that change the positions of records. A cursor that sees a change in this count repositions
+    // itself.
+    long modifications()
+    {
+        return modifications;
+    }
+
+    // For use by this class
+
+    // Removes deleted records if they are a large enough fraction of the index, and then merges pending records.
+    private void build()
+    {
+        if (deletedCount > n * MAX_DELETED_FRACTION) {
+            purge();
+        }
+        if (pendingN > 0) {
+            merge();
+        }
+    }
+
+    // Removes deleted records. Blocks without deleted records are copied without being decoded. Records only move
+    // toward the start of ids, so ids can be compacted in place.
+    private void purge()
+    {
+        BlockWriter writer = new BlockWriter(blocks, dataSize);
+        long[] blockZs = new long[BLOCK_SIZE];
+        for (int block = 0; block < blocks; block++) {
+            int start = blockStarts[block];
+            int end = blockStarts[block + 1];
+            int newStart = writer.n;
+            int firstDeleted = deleted.nextSetBit(start);
+            if (firstDeleted < 0 || firstDeleted >= end) {
+                System.arraycopy(ids, start, ids, newStart, end - start);
+                writer.copy(this, block);
+            } else {
+                decodeBlock(block, blockZs);
+                int live = 0;
+                for (int position = start; position < end; position++) {
+                    if (!deleted.get(position)) {
+                        blockZs[live] = blockZs[position - start];
+                        ids[newStart + live] = ids[position];
+                        live++;
+                    }
+                }
+                if (live > 0) {
+                    writer.encode(blockZs, 0, live);
+                }
+            }
+        }
+        install(writer);
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    // Merges pending records following existing records with the same z-value. Each pending record goes to the last
+    // block whose head is <= its z-value, (or to the first block). Blocks receiving no pending records are copied
+    // without being decoded, and the others are decoded, merged with their pending records, and re-encoded, (as
+    // more than one block if necessary). Records only move toward the end of ids, so ids are merged in place,
+    // working backward.
+    private void merge()
+    {
+        // Sort pending records, preserving insertion order among records with the same z-value.
+        ZArray.sort(pendingZs, pendingIds, new long[pendingN], new long[pendingN], 0, pendingN);
+        // Pending records pendingStarts[segment] .. pendingStarts[segment + 1] - 1 are merged into block segment.
+        // If there are no blocks, there is one segment, containing only pending records.
+        int segments = Math.max(blocks, 1);
+        int[] pendingStarts = new int[segments + 1];
+        int p = 0;
+        for (int block = 1; block < blocks; block++) {
+            while (p < pendingN && pendingZs[p] < heads[block]) {
+                p++;
+            }
+            pendingStarts[block] = p;
+        }
+        pendingStarts[segments] = pendingN;
+        // Encode blocks
+        int maxSegmentPending = 0;
+        int maxBlocks = 0;
+        for (int segment = 0; segment < segments; segment++) {
+            int segmentPending = pendingStarts[segment + 1] - pendingStarts[segment];
+            int segmentN = blockStart(segment + 1) - blockStart(segment) + segmentPending;
+            maxSegmentPending = Math.max(maxSegmentPending, segmentPending);
+            maxBlocks += segmentPending == 0 ? 1 : (segmentN + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        }
+        BlockWriter writer = new BlockWriter(maxBlocks, dataSize + pendingN * 2);
+        long[] blockZs = new long[BLOCK_SIZE];
+        long[] mergedZs = new long[BLOCK_SIZE + maxSegmentPending];
+        for (int segment = 0; segment < segments; segment++) {
+            int pendingStart = pendingStarts[segment];
+            int pendingEnd = pendingStarts[segment + 1];
+            if (pendingStart == pendingEnd) {
+                writer.copy(this, segment);
+            } else {
+                int start = blockStart(segment);
+                int end = decodeBlock(segment, blockZs);
+                int i = start;
+                int j = pendingStart;
+                int m = 0;
+                while (i < end || j < pendingEnd) {
+                    mergedZs[m++] =
+                        j == pendingEnd || i < end && blockZs[i - start] <= pendingZs[j]
+                        ? blockZs[i++ - start]
+                        : pendingZs[j++];
+                }
+                // Split the merged z-values into blocks of nearly equal size.
+                int k = (m + BLOCK_SIZE - 1) / BLOCK_SIZE;
+                for (int b = 0; b < k; b++) {
+                    writer.encode(mergedZs, (int) ((long) m * b / k), (int) ((long) m * (b + 1) / k));
+                }
+            }
+        }
+        // Move ids and deleted positions, working backward.
+        if (ids.length < n + pendingN) {
+            ids = Arrays.copyOf(ids, Math.max(n + pendingN, ids.length * 2));
+        }
+        BitSet movedDeleted = new BitSet();
+        for (int segment = segments - 1; segment >= 0; segment--) {
+            int pendingStart = pendingStarts[segment];
+            int pendingEnd = pendingStarts[segment + 1];
+            int start = blockStart(segment);
+            int end = blockStart(segment + 1);
+            int newStart = start + pendingStart;
+            if (pendingStart == pendingEnd) {
+                System.arraycopy(ids, start, ids, newStart, end - start);
+                for (int d = deleted.nextSetBit(start); d >= 0 && d < end; d = deleted.nextSetBit(d + 1)) {
+                    movedDeleted.set(d + pendingStart);
+                }
+            } else {
+                decodeBlock(segment, blockZs);
+                int i = end - 1;
+                int j = pendingEnd - 1;
+                for (int position = newStart + end - start + pendingEnd - pendingStart - 1;
+                     position >= newStart;
+                     position--) {
+                    if (i < start || j >= pendingStart && pendingZs[j] >= blockZs[i - start]) {
+                        ids[position] = pendingIds[j--];
+                    } else {
+                        if (deleted.get(i)) {
+                            movedDeleted.set(position);
+                        }
+                        ids[position] = ids[i--];
+                    }
+                }
+            }
+        }
+        install(writer);
+        deleted.clear();
+        deleted.or(movedDeleted);
+        pendingZs = new long[0];
+        pendingIds = new long[0];
+        pendingN = 0;
+    }
+
+    // Replaces the blocks of this CompressedZArray by those of the writer.
+    private void install(BlockWriter writer)
+    {
+        n = writer.n;
+        blocks = writer.blocks;
+        heads = Arrays.copyOf(writer.heads, blocks);
+        blockStarts = Arrays.copyOf(writer.starts, blocks + 1);
+        blockOffsets = Arrays.copyOf(writer.offsets, blocks);
+        data = Arrays.copyOf(writer.data, writer.size);
+        dataSize = writer.size;
+        modifications++;
+    }
+
+    // Class state
+
+    /**
+     * The maximum number of z-values in a block.
+     */
+    public static final int BLOCK_SIZE = 128;
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final int MIN_PENDING_SIZE = 20;
+    private static final int MIN_DATA_SIZE = 64;
+    private static final int MAX_VARINT_SIZE = 10;
+    private static final double MAX_DELETED_FRACTION = 0.25;
+
+    // Object state
+
+    private final String name = String.format("CompressedZArray(%s)", idGenerator.getAndIncrement());
+    // Compressed records
+    int n = 0;
+    private int blocks = 0;
+    private long[] heads = new long[0];
+    // Position of the first record of each block, followed by n
+    private int[] blockStarts = new int[]{0};
+    private int[] blockOffsets = new int[0];
+    private byte[] data = new byte[0];
+    private int dataSize = 0;
+    // ids[0:n) contains the id of each record. Its length may exceed n.
+    private long[] ids = new long[0];
+    // Positions of deleted records
+    private final BitSet deleted = new BitSet();
+    private int deletedCount = 0;
+    // Records added since the last build, in insertion order
+    private long[] pendingZs = new long[0];
+    private long[] pendingIds = new long[0];
+    private int pendingN = 0;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private long modifications = 0;
+
+    // Inner classes
+
+    // Accumulates compressed blocks, to replace those of a CompressedZArray.
+    private static final class BlockWriter
+    {
+        // Appends a block containing zs[start:end), which must be sorted.
+        void encode(long[] zs, int start, int end)
+        {
+            heads[blocks] = zs[start];
+            starts[blocks] = n;
+            offsets[blocks] = size;
+            for (int i = start + 1; i < end; i++) {
+                if (size + MAX_VARINT_SIZE > data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                long delta = zs[i] - zs[i - 1];
+                while ((delta & ~0x7fL) != 0) {
+                    data[size++] = (byte) ((delta & 0x7f) | 0x80);
+                    delta >>>= 7;
+                }
+                data[size++] = (byte) delta;
+            }
+            blocks++;
+            n += end - start;
+            starts[blocks] = n;
+        }
+
+        // Appends the given block of zArray, without decoding it.
+        void copy(CompressedZArray<?> zArray, int block)
+        {
+            int offset = zArray.blockOffsets[block];
+            int bytes = (block + 1 < zArray.blocks ? zArray.blockOffsets[block + 1] : zArray.dataSize) - offset;
+            if (size + bytes > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + bytes, data.length * 2));
+            }
+            System.arraycopy(zArray.data, offset, data, size, bytes);
+            heads[blocks] = zArray.heads[block];
+            starts[blocks] = n;
+            offsets[blocks] = size;
+            size += bytes;
+            blocks++;
+            n += zArray.blockStarts[block + 1] - zArray.blockStarts[block];
+            starts[blocks] = n;
+        }
+
+        BlockWriter(int maxBlocks, int dataCapacity)
+        {
+            heads = new long[maxBlocks];
+            starts = new int[maxBlocks + 1];
+            offsets = new int[maxBlocks];
+            data = new byte[Math.max(MIN_DATA_SIZE, dataCapacity)];
+        }
+
+        final long[] heads;
+        final int[] starts;
+        final int[] offsets;
+        byte[] data;
+        int blocks;
+        // Number of records in the blocks written
+        int n;
+        // Number of bytes of data used
+        int size;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class CompressedZArrayCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            resumeIteration();
+            if (lastReportedPosition != UNDEFINED) {
+                // Deletion leaves a tombstone, so positions don't change.
+                zArray.deleteRecord(lastReportedPosition);
+                lastReportedPosition = UNDEFINED;
+                lastZCount--;
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    // CompressedZArrayCursor interface
+
+    public CompressedZArrayCursor(CompressedZArray<RECORD> zArray)
+    {
+        super(zArray);
+        this.zArray = zArray;
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                resumeIteration();
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (skipDeleted()) {
+            long z = blockZs[position - blockStart];
+            RECORD record = recordBuffer();
+            zArray.setupRecord(record, zArray.id(position));
+            record.z(z);
+            current(record);
+            returned(z);
+            lastReportedPosition = position++;
+            state(State.IN_USE);
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    private void startIteration()
+    {
+        positionAt(startZ);
+        lastReportedPosition = UNDEFINED;
+        lastZ = startZ;
+        lastZCount = 0;
+        modifications = zArray.modifications();
+    }
+
+    // If records have moved since the cursor last used its position, positions the cursor following the last record
+    // returned, found by searching for lastZ and skipping lastZCount records with that z-value. Deleted records are
+    // not counted, as next() doesn't return them. lastReportedPosition locates the last record returned, unless it
+    // has been deleted.
+    private void resumeIteration()
+    {
+        if (modifications != zArray.modifications()) {
+            boolean currentDeleted = lastReportedPosition == UNDEFINED;
+            int skipped = 0;
+            positionAt(lastZ);
+            while (skipped < lastZCount && skipDeleted() && blockZs[position - blockStart] == lastZ) {
+                lastReportedPosition = position++;
+                skipped++;
+            }
+            if (currentDeleted || skipped < lastZCount) {
+                lastReportedPosition = UNDEFINED;
+            }
+            modifications = zArray.modifications();
+        }
+    }
+
+    // Positions the cursor at the first record with z-value >= z, decoding the block containing it.
+    private void positionAt(long z)
+    {
+        block = zArray.firstBlock(z);
+        blockStart = zArray.blockStart(block);
+        blockEnd = zArray.decodeBlock(block, blockZs);
+        position = blockStart;
+        while (position < blockEnd && blockZs[position - blockStart] < z) {
+            position++;
+        }
+    }
+
+    // Advances position past deleted records, decoding blocks as necessary. Returns false if there are no more
+    // records.
+    private boolean skipDeleted()
+    {
+        boolean found = false;
+        while (!found && position < zArray.n) {
+            if (position == blockEnd) {
+                decodeNextBlock();
+            }
+            if (zArray.deleted(position)) {
+                position++;
+            } else {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    private void decodeNextBlock()
+    {
+        block++;
+        blockStart = blockEnd;
+        blockEnd = zArray.decodeBlock(block, blockZs);
+    }
+
+    // Records that a record with the given z-value has been returned.
+    private void returned(long z)
+    {
+        if (lastZCount > 0 && z == lastZ) {
+            lastZCount++;
+        } else {
+            lastZ = z;
+            lastZCount = 1;
+        }
+    }
+
+    // Object state
+
+    private static final int UNDEFINED = -1;
+
+    private final CompressedZArray<RECORD> zArray;
+    // z-values of the current block
+    private final long[] blockZs = new long[CompressedZArray.BLOCK_SIZE];
+    private long startZ;
+    private int block;
+    // Positions of the first record of the current block, and of the first record of the next block
+    private int blockStart;
+    private int blockEnd;
+    private int position;
+    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    private int lastReportedPosition = UNDEFINED;
+    // The last record returned is the lastZCount-th record with z-value lastZ, counting from the cursor's starting
+    // position. This locates the cursor if records move, (as indicated by modifications).
+    private long lastZ;
+    private int lastZCount;
+    private long modifications;
+}
@@ -0,0 +1,253 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ZArray implements the {@link com.geophile.z.Index} interface in terms of two parallel primitive arrays:
+ * the z-values of the records, and a long identifying each record. Unlike
+ * {@link com.geophile.z.index.sortedarray.SortedArray}, no {@link com.geophile.z.Record} objects are retained,
+ * so an entry occupies 16 bytes, and searches run over a long[] instead of dereferencing a Record per probe.
+ * A subclass maps between records and ids by implementing {@link #recordId(com.geophile.z.Record)} and
+ * {@link #setupRecord(com.geophile.z.Record, long)}. Because a record is reconstituted from its id each time
+ * a cursor visits it, records retrieved from a ZArray are not stable.
+ * A ZArray is not safe for use by multiple threads.
+ */
+
+public abstract class ZArray<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        ensureSpace(n + 1);
+        zs[n] = record.z();
+        zLengths |= 1L << SpaceImpl.length(zs[n]);
+        ids[n] = recordId(record);
+        n++;
+        modifications++;
+        // Adding records in z-order, (e.g. when loading from a sorted source), doesn't require sorting.
+        if (sorted && n > 1 && zs[n - 2] > zs[n - 1]) {
+            sorted = false;
+        }
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        ensureSorted();
+        boolean removeRecordFound = false;
+        RECORD record = newRecord();
+        int position = lowerBound(z);
+        while (position < n && zs[position] == z && !removeRecordFound) {
+            copyOut(position, record);
+            if (filter.select(record)) {
+                deleteRecord(position);
+                removeRecordFound = true;
+            } else {
+                position++;
+            }
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        ensureSorted();
+        return new ZArrayCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return zLengths;
+    }
+
+    // ZArray interface
+
+    public void reset()
+    {
+        n = 0;
+        zLengths = 0;
+        sorted = true;
+        modifications++;
+    }
+
+    public ZArray()
+    {}
+
+    /**
+     * Returns the id identifying the given record. The record's z-value is stored separately, and should not
+     * be encoded in the id.
+     * @param record The record being added to this ZArray.
+     * @return The id identifying the given record.
+     */
+    protected abstract long recordId(RECORD record);
+
+    /**
+     * Modifies the given record so that it represents the record with the given id. The record's z-value is
+     * set by the caller.
+     * @param record The record to be modified.
+     * @param recordId An id previously obtained by {@link #recordId(com.geophile.z.Record)}.
+     */
+    protected abstract void setupRecord(RECORD record, long recordId);
+
+    // For use by this package
+
+    // Returns the position of the first record whose z-value is >= z, or n if there is no such record.
+    int lowerBound(long z)
+    {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    void copyOut(int position, RECORD record)
+    {
+        setupRecord(record, ids[position]);
+        record.z(zs[position]);
+    }
+
+    void deleteRecord(int at)
+    {
+        System.arraycopy(zs, at + 1, zs, at, n - at - 1);
+        System.arraycopy(ids, at + 1, ids, at, n - at - 1);
+        n--;
+        modifications++;
+    }
+
+    void ensureSorted()
+    {
+        if (!sorted) {
+            sort(zs, ids, new long[n], new long[n], 0, n);
+            sorted = true;
+            modifications++;
+        }
+    }
+
+    // Counts changes to the positions of records. A cursor that sees a change in this count repositions itself.
+    long modifications()
+    {
+        return modifications;
+    }
+
+    // For use by this class
+
+    private void ensureSpace(int n)
+    {
+        int newLength = Math.max(MIN_ARRAY_SIZE, (int) (n * 1.5));
+        if (zs.length < n) {
+            zs = Arrays.copyOf(zs, newLength);
+            ids = Arrays.copyOf(ids, newLength);
+        }
+    }
+
+    // Stable merge sort of zs[lo:hi), with ids kept parallel to zs. Stability preserves the insertion order of
+    // records with the same z-value, which is what SortedArray does too.
+    static void sort(long[] zs, long[] ids, long[] zsTemp, long[] idsTemp, int lo, int hi)
+    {
+        if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                long z = zs[i];
+                long id = ids[i];
+                int j = i - 1;
+                while (j >= lo && zs[j] > z) {
+                    zs[j + 1] = zs[j];
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+                zs[j + 1] = z;
+                ids[j + 1] = id;
+            }
+        } else {
+            int mid = (lo + hi) >>> 1;
+            sort(zs, ids, zsTemp, idsTemp, lo, mid);
+            sort(zs, ids, zsTemp, idsTemp, mid, hi);
+            merge(zs, ids, zsTemp, idsTemp, lo, mid, hi);
+        }
+    }
+
+    // Merges the sorted ranges zs[lo:mid) and zs[mid:hi), with ids kept parallel to zs. On a tie, the record from
+    // zs[lo:mid) goes first.
+    static void merge(long[] zs, long[] ids, long[] zsTemp, long[] idsTemp, int lo, int mid, int hi)
+    {
+        if (lo < mid && mid < hi && zs[mid - 1] > zs[mid]) {
+            System.arraycopy(zs, lo, zsTemp, lo, hi - lo);
+            System.arraycopy(ids, lo, idsTemp, lo, hi - lo);
+            int i = lo;
+            int j = mid;
+            for (int k = lo; k < hi; k++) {
+                if (j == hi || i < mid && zsTemp[i] <= zsTemp[j]) {
+                    zs[k] = zsTemp[i];
+                    ids[k] = idsTemp[i];
+                    i++;
+                } else {
+                    zs[k] = zsTemp[j];
+                    ids[k] = idsTemp[j];
+                    j++;
+                }
+            }
+        }
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final int MIN_ARRAY_SIZE = 20;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Object state
+
+    private final String name = String.format("ZArray(%s)", idGenerator.getAndIncrement());
+    long[] zs = new long[0];
+    long[] ids = new long[0];
+    int n = 0;
+    private boolean sorted = true;
+    // Lengths of z-values added, as returned by zLengths()
+    private long zLengths = 0;
+    private long modifications = 0;
+}
@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class ZArrayCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            resumeIteration();
+            if (lastReportedPosition != UNDEFINED) {
+                zArray.deleteRecord(lastReportedPosition);
+                if (position > lastReportedPosition) {
+                    position--;
+                }
+                lastReportedPosition = UNDEFINED;
+                lastZCount--;
+                modifications = zArray.modifications();
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    // ZArrayCursor interface
+
+    public ZArrayCursor(ZArray<RECORD> zArray)
+    {
+        super(zArray);
+        this.zArray = zArray;
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                resumeIteration();
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (position < zArray.n) {
+            RECORD record = recordBuffer();
+            zArray.copyOut(position, record);
+            current(record);
+            returned(zArray.zs[position]);
+            lastReportedPosition = position++;
+            state(State.IN_USE);
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    private void startIteration()
+    {
+        zArray.ensureSorted();
+        position = zArray.lowerBound(startZ);
+        lastReportedPosition = UNDEFINED;
+        lastZ = startZ;
+        lastZCount = 0;
+        modifications = zArray.modifications();
+    }
+
+    // If records have moved since the cursor last used its position, positions the cursor following the last record
+    // returned, found by searching for lastZ and skipping lastZCount records with that z-value.
+    // lastReportedPosition locates the last record returned, unless it has been deleted.
+    private void resumeIteration()
+    {
+        if (modifications != zArray.modifications()) {
+            zArray.ensureSorted();
+            boolean currentDeleted = lastReportedPosition == UNDEFINED;
+            int skipped = 0;
+            position = zArray.lowerBound(lastZ);
+            while (skipped < lastZCount && position < zArray.n && zArray.zs[position] == lastZ) {
+                lastReportedPosition = position++;
+                skipped++;
+            }
+            if (currentDeleted || skipped < lastZCount) {
+                lastReportedPosition = UNDEFINED;
+            }
+            modifications = zArray.modifications();
+        }
+    }
+
+    // Records that a record with the given z-value has been returned.
+    private void returned(long z)
+    {
+        if (lastZCount > 0 && z == lastZ) {
+            lastZCount++;
+        } else {
+            lastZ = z;
+            lastZCount = 1;
+        }
+    }
+
+    // Object state
+
+    private static final int UNDEFINED = -1;
+
+    private final ZArray<RECORD> zArray;
+    private long startZ;
+    // Position of the next record to visit
+    private int position;
+    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    private int lastReportedPosition = UNDEFINED;
+    // The last record returned is the lastZCount-th record with z-value lastZ, counting from the cursor's starting
+    // position. This locates the cursor if records move, (as indicated by modifications).
+    private long lastZ;
+    private int lastZCount;
+    private long modifications;
+}
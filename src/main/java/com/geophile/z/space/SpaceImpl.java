@@ -325,6 +325,22 @@ public class SpaceImpl extends Space
         return prefix;
     }
 
+    // Writes z to candidates[0], followed by the ancestors of z that are greater than zLowerBound and whose lengths
+    // are selected by zLengths (bit i set for length i), in decreasing order. Returns the number of z-values written.
+    // This is the default implementation of Index.ancestorCandidates and AsyncIndex.ancestorCandidates.
+    public static int ancestorCandidates(long z, long zLowerBound, long zLengths, long[] candidates)
+    {
+        int n = 0;
+        candidates[n++] = z;
+        long ancestor = z;
+        while (length(ancestor) > 0 && (ancestor = parent(ancestor)) > zLowerBound) {
+            if ((zLengths & 1L << length(ancestor)) != 0) {
+                candidates[n++] = ancestor;
+            }
+        }
+        return n;
+    }
+
     public static int length(long z)
     {
         return (int) (z & LENGTH_MASK);
@@ -502,6 +518,7 @@ public class SpaceImpl extends Space
     public static final int MAX_Z_BITS = 57; // MSB is unused. 6 LSBs contain the number of z-value bits.
     public static final long Z_MIN = 0x0L;
     public static final long Z_MAX = ((1L << MAX_Z_BITS) - 1) << LENGTH_BITS | LENGTH_MASK;
+    public static final long ALL_Z_LENGTHS = (1L << (MAX_Z_BITS + 1)) - 1; // Bit i set for each length i.
 
     // Object state
 
@@ -90,7 +90,7 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
         return singleCell;
     }
 
-    public Index index()
+    public Index<RECORD> index()
     {
         return index;
     }
@@ -0,0 +1,107 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// Drives an asynchronous spatial join: the 4-way merge of SpatialJoinIterator.findPairs, run as a state machine.
+// Steps are run in a loop as long as they complete immediately. A step that has to wait resumes the loop when it
+// completes, in the thread that completes it.
+
+class AsyncSpatialJoinDriver
+{
+    // AsyncSpatialJoinDriver interface
+
+    public CompletableFuture<Void> start()
+    {
+        left.start()
+            .thenCompose(
+                new Function<Void, CompletionStage<Void>>()
+                {
+                    @Override
+                    public CompletionStage<Void> apply(Void ignored)
+                    {
+                        return right.start();
+                    }
+                })
+            .whenComplete(resume);
+        return done;
+    }
+
+    public AsyncSpatialJoinDriver(AsyncSpatialJoinInput left, AsyncSpatialJoinInput right)
+    {
+        this.left = left;
+        this.right = right;
+    }
+
+    // For use by this class
+
+    // Runs steps until one has to wait, or the join is complete.
+    private void run()
+    {
+        try {
+            CompletableFuture<Void> step;
+            long zMin;
+            do {
+                step = null;
+                long zLeftEnter = left.nextEntry();
+                long zLeftExit = left.nextExit();
+                long zRightEnter = right.nextEntry();
+                long zRightExit = right.nextExit();
+                zMin = Math.min(Math.min(zLeftEnter, zLeftExit), Math.min(zRightEnter, zRightExit));
+                if (zMin < SpatialJoinInput.EOF) {
+                    // Prefer entry to exit to avoid missing join output
+                    if (zMin == zLeftEnter) {
+                        step = left.enterZ();
+                    } else if (zMin == zRightEnter) {
+                        step = right.enterZ();
+                    } else if (zMin == zLeftExit) {
+                        left.exitZ();
+                    } else {
+                        right.exitZ();
+                    }
+                }
+            } while (zMin < SpatialJoinInput.EOF &&
+                     (step == null || step.isDone() && !step.isCompletedExceptionally()));
+            if (zMin < SpatialJoinInput.EOF) {
+                // The step is waiting, or has failed, in which case resume is called immediately.
+                step.whenComplete(resume);
+            } else {
+                left.close();
+                right.close();
+                done.complete(null);
+            }
+        } catch (RuntimeException | Error e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    // Object state
+
+    private final AsyncSpatialJoinInput left;
+    private final AsyncSpatialJoinInput right;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final BiConsumer<Void, Throwable> resume =
+        new BiConsumer<Void, Throwable>()
+        {
+            @Override
+            public void accept(Void ignored, Throwable failure)
+            {
+                if (failure == null) {
+                    run();
+                } else {
+                    done.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null
+                                               ? failure.getCause()
+                                               : failure);
+                }
+            }
+        };
+}
@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.AsyncIndex;
+import com.geophile.z.AsyncSpatialJoin;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+
+import java.util.concurrent.CompletableFuture;
+
+public class AsyncSpatialJoinImpl extends AsyncSpatialJoin
+{
+    public AsyncSpatialJoinImpl(SpatialJoin.Filter<?, ?> filter)
+    {
+        // The filter is applied to records of the joined indexes, whatever its type arguments.
+        @SuppressWarnings("unchecked")
+        SpatialJoin.Filter<Record, Record> recordFilter = (SpatialJoin.Filter<Record, Record>) filter;
+        this.filter = recordFilter;
+    }
+
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    CompletableFuture<Void> join(AsyncIndex<LEFT_RECORD> leftIndex,
+                                 AsyncIndex<RIGHT_RECORD> rightIndex,
+                                 final Output<LEFT_RECORD, RIGHT_RECORD> output)
+    {
+        SpatialJoinOutput leftRight =
+            new SpatialJoinOutput()
+            {
+                // left and right come from leftIndex and rightIndex, so the casts are safe.
+                @Override
+                @SuppressWarnings("unchecked")
+                public boolean add(Record left, Record right)
+                {
+                    if (filter == null || filter.overlap(left, right)) {
+                        output.add((LEFT_RECORD) left, (RIGHT_RECORD) right);
+                    }
+                    return true;
+                }
+            };
+        SpatialJoinOutput rightLeft =
+            new SpatialJoinOutput()
+            {
+                // left and right come from leftIndex and rightIndex, so the casts are safe.
+                @Override
+                @SuppressWarnings("unchecked")
+                public boolean add(Record right, Record left)
+                {
+                    if (filter == null || filter.overlap(left, right)) {
+                        output.add((LEFT_RECORD) left, (RIGHT_RECORD) right);
+                    }
+                    return true;
+                }
+            };
+        AsyncSpatialJoinInput left = new AsyncSpatialJoinInput(leftIndex, leftRight);
+        AsyncSpatialJoinInput right = new AsyncSpatialJoinInput(rightIndex, rightLeft);
+        left.otherInput(right);
+        right.otherInput(left);
+        return new AsyncSpatialJoinDriver(left, right).start();
+    }
+
+    private final SpatialJoin.Filter<Record, Record> filter;
+}
@@ -0,0 +1,246 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.AsyncCursor;
+import com.geophile.z.AsyncIndex;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// The asynchronous counterpart of SpatialJoinInput. See SpatialJoinInput for a description of the algorithm.
+// Operations that access the cursor return a future, completed when the operation is done.
+
+class AsyncSpatialJoinInput
+{
+    // Object interface
+
+    @Override
+    public final String toString()
+    {
+        return String.format("asjinput(%s)", id);
+    }
+
+    // AsyncSpatialJoinInput interface
+
+    public long nextEntry()
+    {
+        return eof ? SpatialJoinInput.EOF : SpaceImpl.zLo(current.z());
+    }
+
+    public long nextExit()
+    {
+        return nest.isEmpty() ? SpatialJoinInput.EOF : SpaceImpl.zHi(nest.peek().z());
+    }
+
+    public CompletableFuture<Void> enterZ()
+    {
+        assert !eof;
+        CompletableFuture<Void> entered;
+        if (currentOverlapsOtherNest() ||
+            !that.eof && overlap(current.z(), that.current.z())) {
+            push(current);
+            entered = cursor.next().thenAccept(copyToCurrent);
+        } else {
+            entered = advanceCursor();
+        }
+        return entered;
+    }
+
+    public void exitZ()
+    {
+        assert !nest.isEmpty();
+        Record top = nest.pop();
+        that.generateSpatialJoinOutput(top);
+    }
+
+    public final void otherInput(AsyncSpatialJoinInput that)
+    {
+        this.that = that;
+    }
+
+    // Positions the cursor at the first record of the index.
+    public CompletableFuture<Void> start()
+    {
+        Record zMinKey = index.newKeyRecord();
+        zMinKey.z(SpaceImpl.Z_MIN);
+        return
+            cursor.goTo(zMinKey)
+                  .thenCompose(
+                      new Function<Void, CompletionStage<Record>>()
+                      {
+                          @Override
+                          public CompletionStage<Record> apply(Void ignored)
+                          {
+                              return cursor.next();
+                          }
+                      })
+                  .thenAccept(copyToCurrent);
+    }
+
+    public void close()
+    {
+        cursor.close();
+    }
+
+    public AsyncSpatialJoinInput(AsyncIndex<? extends Record> index, SpatialJoinOutput spatialJoinOutput)
+    {
+        // Only records obtained from the index are passed to it, so it can be used as an index of Records.
+        @SuppressWarnings("unchecked")
+        AsyncIndex<Record> recordIndex = (AsyncIndex<Record>) index;
+        this.index = recordIndex;
+        this.stableRecords = recordIndex.stableRecords();
+        this.cursor = recordIndex.cursor();
+        this.current = stableRecords ? null : recordIndex.newRecord();
+        this.randomAccessKey = recordIndex.newKeyRecord();
+        this.spatialJoinOutput = spatialJoinOutput;
+    }
+
+    // For use by this class
+
+    private CompletableFuture<Void> advanceCursor()
+    {
+        CompletableFuture<Void> advanced = DONE;
+        if (that.eof) {
+            // If that.current is EOF, then we can skip to the end on this side too.
+            this.eof = true;
+        } else {
+            long thisCurrentZ = this.current.z();
+            long thatCurrentZ = that.current.z();
+            assert thatCurrentZ >= thisCurrentZ; // otherwise, we would have entered that.current
+            if (thatCurrentZ > thisCurrentZ) {
+                // See SpatialJoinInput.advanceCursor for why the search starts at thatCurrentZ.
+                int nCandidates = index.ancestorCandidates(thatCurrentZ, thisCurrentZ, zCandidates);
+                assert nCandidates > 0 && zCandidates[0] == thatCurrentZ;
+                advanced = probe(nCandidates - 1);
+            }
+        }
+        return advanced;
+    }
+
+    // Searches for zCandidates[c], the largest candidate ancestor not yet examined. If it isn't present, the
+    // remaining candidates are searched. zCandidates[0] is the z-value at which to resume if no ancestor is found.
+    private CompletableFuture<Void> probe(final int c)
+    {
+        final long zCandidate = zCandidates[c];
+        randomAccessKey.z(zCandidate);
+        return
+            cursor.goTo(randomAccessKey)
+                  .thenCompose(
+                      new Function<Void, CompletionStage<Record>>()
+                      {
+                          @Override
+                          public CompletionStage<Record> apply(Void ignored)
+                          {
+                              return cursor.next();
+                          }
+                      })
+                  .thenCompose(
+                      new Function<Record, CompletionStage<Void>>()
+                      {
+                          @Override
+                          public CompletionStage<Void> apply(Record record)
+                          {
+                              CompletableFuture<Void> found = DONE;
+                              if (c == 0 || record != null && record.z() == zCandidate) {
+                                  copyToCurrent(record);
+                              } else {
+                                  found = probe(c - 1);
+                              }
+                              return found;
+                          }
+                      });
+    }
+
+    private boolean currentOverlapsOtherNest()
+    {
+        boolean overlap = false;
+        Record thatNestTop = that.nest.peek();
+        if (thatNestTop != null) {
+            long thisCurrentZ = current.z();
+            overlap =
+                SpaceImpl.contains(thisCurrentZ, thatNestTop.z()) ||
+                SpaceImpl.contains(that.nest.peekLast().z(), thisCurrentZ);
+        }
+        return overlap;
+    }
+
+    private void generateSpatialJoinOutput(Record thatRecord)
+    {
+        for (Record thisRecord : nest) {
+            spatialJoinOutput.add(thisRecord, thatRecord);
+        }
+    }
+
+    private boolean overlap(long z1, long z2)
+    {
+        return SpaceImpl.contains(z1, z2) || SpaceImpl.contains(z2, z1);
+    }
+
+    private void copyToCurrent(Record record)
+    {
+        if (record == null) {
+            eof = true;
+        } else {
+            if (stableRecords) {
+                current = record;
+            } else {
+                record.copyTo(current);
+            }
+            eof = false;
+        }
+    }
+
+    private void push(Record record)
+    {
+        if (stableRecords) {
+            nest.push(record);
+        } else {
+            Record copy = index.newRecord();
+            record.copyTo(copy);
+            nest.push(copy);
+        }
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    // Object state
+
+    private final int id = idGenerator.getAndIncrement();
+    private final AsyncIndex<Record> index;
+    private final boolean stableRecords;
+    private AsyncSpatialJoinInput that;
+    private final SpatialJoinOutput spatialJoinOutput;
+    // nest contains z-values that have been entered but not exited. current is the next z-value to enter,
+    // and cursor contains later z-values.
+    private final Deque<Record> nest = new ArrayDeque<>();
+    private final AsyncCursor<Record> cursor;
+    private Record current;
+    private final Record randomAccessKey;
+    // For use in finding ancestors
+    private final long[] zCandidates = new long[SpaceImpl.MAX_Z_BITS];
+    private boolean eof = false;
+    private final Consumer<Record> copyToCurrent =
+        new Consumer<Record>()
+        {
+            @Override
+            public void accept(Record record)
+            {
+                copyToCurrent(record);
+            }
+        };
+}
@@ -0,0 +1,40 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+
+import java.util.HashSet;
+
+// The PairConsumer counterpart of DuplicateEliminatingIterator. A Pair is created for each record pair, but only
+// to record the pairs already passed on.
+
+class DuplicateEliminatingPairConsumer<LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    implements SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD>
+{
+    // PairConsumer interface
+
+    @Override
+    public boolean accept(LEFT_RECORD left, RIGHT_RECORD right)
+    {
+        return !seen.add(new Pair<>(left, right)) || consumer.accept(left, right);
+    }
+
+    // DuplicateEliminatingPairConsumer interface
+
+    public DuplicateEliminatingPairConsumer(SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer)
+    {
+        this.consumer = consumer;
+    }
+
+    // Object state
+
+    private final SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer;
+    private final HashSet<Pair<LEFT_RECORD, RIGHT_RECORD>> seen = new HashSet<>();
+}
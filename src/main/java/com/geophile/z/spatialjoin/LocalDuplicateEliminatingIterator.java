@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Like DuplicateEliminatingIterator, but duplicates are recognized by a LocalDuplicateEliminator, so memory
+// use does not grow with the output.
+
+class LocalDuplicateEliminatingIterator<PAIR extends Pair<?, ?>> implements Iterator<PAIR>
+{
+    // Iterator interface
+
+    @Override
+    public boolean hasNext()
+    {
+        tryToEnsureNext();
+        return next != null;
+    }
+
+    @Override
+    public PAIR next()
+    {
+        tryToEnsureNext();
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        PAIR output = next;
+        next = null;
+        return output;
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    // LocalDuplicateEliminatingIterator interface
+
+    public LocalDuplicateEliminatingIterator(Iterator<PAIR> input, LocalDuplicateEliminator duplicateEliminator)
+    {
+        this.input = input;
+        this.duplicateEliminator = duplicateEliminator;
+    }
+
+    // For use by this class
+
+    private void tryToEnsureNext()
+    {
+        while (next == null && input.hasNext()) {
+            next = input.next();
+            if (!duplicateEliminator.firstOccurrence(next.left(), next.right())) {
+                next = null;
+            }
+        }
+    }
+
+    // Object state
+
+    private final Iterator<PAIR> input;
+    private final LocalDuplicateEliminator duplicateEliminator;
+    private PAIR next;
+}
@@ -0,0 +1,39 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+
+// Like DuplicateEliminatingPairConsumer, but duplicates are recognized by a LocalDuplicateEliminator, so memory
+// use does not grow with the output.
+
+class LocalDuplicateEliminatingPairConsumer<LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    implements SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD>
+{
+    // PairConsumer interface
+
+    @Override
+    public boolean accept(LEFT_RECORD left, RIGHT_RECORD right)
+    {
+        return !duplicateEliminator.firstOccurrence(left, right) || consumer.accept(left, right);
+    }
+
+    // LocalDuplicateEliminatingPairConsumer interface
+
+    public LocalDuplicateEliminatingPairConsumer(SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer,
+                                                 LocalDuplicateEliminator duplicateEliminator)
+    {
+        this.consumer = consumer;
+        this.duplicateEliminator = duplicateEliminator;
+    }
+
+    // Object state
+
+    private final SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer;
+    private final LocalDuplicateEliminator duplicateEliminator;
+}
@@ -0,0 +1,147 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoinException;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.space.SpatialIndexImpl;
+
+// Decides whether a pair of records from a spatial join is a duplicate, without remembering the pairs already
+// seen. This is the z-order counterpart of the reference point technique.
+//
+// A spatial join reports a pair of spatial objects, (a, b), once for each pair of their z-values, (za, zb), that
+// overlap, i.e. one contains the other. The intersection of za and zb is the smaller of the two, and the
+// intersections of different z-value pairs are disjoint, since the z-values of one spatial object are disjoint.
+// The pair of spatial objects is therefore reported only for the z-value pair whose intersection comes first in
+// z-order. Finding that z-value pair requires the z-values of both spatial objects, which are recomputed by
+// decomposing them, (so records must carry their spatial objects, and must have been added using the spatial
+// objects' own maxZ).
+//
+// A spatial object in a single-cell input has just one z-value. If it is the intersection, (i.e., it is
+// contained by the other z-value), then no other z-value of the other spatial object can overlap it, so the pair
+// is not a duplicate, and no decomposition is needed. This is always the case for points.
+//
+// The z-values of the most recently decomposed spatial object on each side are kept, since the output of a spatial
+// join tends to combine one record with many others. Not thread-safe.
+
+class LocalDuplicateEliminator
+{
+    // LocalDuplicateEliminator interface
+
+    // Returns true if the pair should be reported, false if it is a duplicate.
+    public boolean firstOccurrence(Record left, Record right)
+    {
+        long zLeft = left.z();
+        long zRight = right.z();
+        assert SpaceImpl.contains(zLeft, zRight) || SpaceImpl.contains(zRight, zLeft);
+        boolean first;
+        if (leftSingleCell && SpaceImpl.contains(zRight, zLeft) ||
+            rightSingleCell && SpaceImpl.contains(zLeft, zRight)) {
+            first = true;
+        } else {
+            long[] zsLeft = leftSingleCell ? singleZ(leftZ, zLeft) : decomposeLeft(left);
+            long[] zsRight = rightSingleCell ? singleZ(rightZ, zRight) : decomposeRight(right);
+            if (!contains(zsLeft, zLeft) || !contains(zsRight, zRight)) {
+                throw new SpatialJoinException(
+                    String.format("z-values of records %s and %s differ from the decompositions of their " +
+                                  "spatial objects", left, right));
+            }
+            long firstIntersection = SpaceImpl.Z_NULL;
+            for (int l = 0; l < zsLeft.length && zsLeft[l] != SpaceImpl.Z_NULL; l++) {
+                long zl = zsLeft[l];
+                for (int r = 0; r < zsRight.length && zsRight[r] != SpaceImpl.Z_NULL; r++) {
+                    long zr = zsRight[r];
+                    long intersection =
+                        SpaceImpl.contains(zl, zr) ? zr :
+                        SpaceImpl.contains(zr, zl) ? zl :
+                        SpaceImpl.Z_NULL;
+                    if (intersection != SpaceImpl.Z_NULL &&
+                        (firstIntersection == SpaceImpl.Z_NULL || intersection < firstIntersection)) {
+                        firstIntersection = intersection;
+                    }
+                }
+            }
+            first = firstIntersection == (SpaceImpl.length(zLeft) >= SpaceImpl.length(zRight) ? zLeft : zRight);
+        }
+        return first;
+    }
+
+    public LocalDuplicateEliminator(SpatialIndexImpl<?> leftSpatialIndex, SpatialIndexImpl<?> rightSpatialIndex)
+    {
+        this.space = (SpaceImpl) leftSpatialIndex.space();
+        this.leftSingleCell = leftSpatialIndex.singleCell();
+        this.rightSingleCell = rightSpatialIndex.singleCell();
+    }
+
+    // For use by this class
+
+    private long[] decomposeLeft(Record left)
+    {
+        SpatialObject spatialObject = spatialObject(left);
+        if (spatialObject != leftSpatialObject) {
+            leftZs = decompose(spatialObject);
+            leftSpatialObject = spatialObject;
+        }
+        return leftZs;
+    }
+
+    private long[] decomposeRight(Record right)
+    {
+        SpatialObject spatialObject = spatialObject(right);
+        if (spatialObject != rightSpatialObject) {
+            rightZs = decompose(spatialObject);
+            rightSpatialObject = spatialObject;
+        }
+        return rightZs;
+    }
+
+    private long[] decompose(SpatialObject spatialObject)
+    {
+        long[] zs = new long[spatialObject.maxZ()];
+        space.decompose(spatialObject, zs);
+        return zs;
+    }
+
+    private static long[] singleZ(long[] zs, long z)
+    {
+        zs[0] = z;
+        return zs;
+    }
+
+    private static boolean contains(long[] zs, long z)
+    {
+        boolean found = false;
+        for (int i = 0; !found && i < zs.length && zs[i] != SpaceImpl.Z_NULL; i++) {
+            found = zs[i] == z;
+        }
+        return found;
+    }
+
+    private static SpatialObject spatialObject(Record record)
+    {
+        if (!(record instanceof RecordWithSpatialObject)) {
+            throw new SpatialJoinException(
+                String.format("Local duplicate elimination requires records with spatial objects: %s", record));
+        }
+        return ((RecordWithSpatialObject) record).spatialObject();
+    }
+
+    // Object state
+
+    private final SpaceImpl space;
+    private final boolean leftSingleCell;
+    private final boolean rightSingleCell;
+    private final long[] leftZ = new long[1];
+    private final long[] rightZ = new long[1];
+    private SpatialObject leftSpatialObject;
+    private long[] leftZs;
+    private SpatialObject rightSpatialObject;
+    private long[] rightZs;
+}
@@ -0,0 +1,298 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Pair;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialJoinRuntimeException;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.space.SpatialIndexImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+// Computes a spatial join in parallel. z-space is divided into partitions, [zLo, zHi), with boundaries chosen by
+// sampling the z-values of both inputs, so that partitions have roughly equal numbers of records. Each partition is
+// joined by a task submitted to an executor, running the usual sequential algorithm against a PartitionIndex view
+// of each input.
+//
+// A pair of overlapping z-values is related by containment, and the pair is found in the partition containing the
+// larger (contained) z-value: the view of each input includes the records in the partition, and the ancestors
+// of zLo, which are the only records outside the partition containing a z-value in it. A pair may also be found
+// in other partitions, e.g. two ancestors of zLo are both in the view. Each pair is therefore reported only by the
+// partition owning it, the one containing the larger z-value, so that the output is the same as for a sequential
+// join.
+//
+// Workers deliver output in batches through a bounded queue, so a slow consumer limits the memory used. The
+// iterator must be consumed to completion (or the executor shut down), otherwise the workers wait for room in the
+// queue indefinitely.
+
+class ParallelSpatialJoinIterator<LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    implements Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>>
+{
+    // Iterator interface
+
+    @Override
+    public boolean hasNext()
+    {
+        ensureBatch();
+        return batch != null;
+    }
+
+    @Override
+    public Pair<LEFT_RECORD, RIGHT_RECORD> next()
+    {
+        ensureBatch();
+        if (batch == null) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(batchPosition++);
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    // ParallelSpatialJoinIterator interface
+
+    public static <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    ParallelSpatialJoinIterator<LEFT_RECORD, RIGHT_RECORD>
+    pairIterator(SpatialIndexImpl<LEFT_RECORD> leftSpatialIndex,
+                 SpatialIndexImpl<RIGHT_RECORD> rightSpatialIndex,
+                 SpatialJoin.Filter<?, ?> filter,
+                 ExecutorService executor,
+                 int partitions)
+        throws IOException, InterruptedException
+    {
+        if (partitions < 1) {
+            throw new IllegalArgumentException(Integer.toString(partitions));
+        }
+        return new ParallelSpatialJoinIterator<>(leftSpatialIndex, rightSpatialIndex, filter, executor, partitions);
+    }
+
+    // For use by this class
+
+    private ParallelSpatialJoinIterator(SpatialIndexImpl<LEFT_RECORD> leftSpatialIndex,
+                                        SpatialIndexImpl<RIGHT_RECORD> rightSpatialIndex,
+                                        SpatialJoin.Filter<?, ?> filter,
+                                        ExecutorService executor,
+                                        int partitions)
+        throws IOException, InterruptedException
+    {
+        long[] boundaries = boundaries(leftSpatialIndex.index(), rightSpatialIndex.index(), partitions);
+        int nPartitions = boundaries.length - 1;
+        this.queue = new ArrayBlockingQueue<>(nPartitions * QUEUE_BATCHES_PER_PARTITION);
+        // Views are created here, so that cursors on the inputs are only created by this thread.
+        List<Worker> workers = new ArrayList<>(nPartitions);
+        for (int p = 0; p < nPartitions; p++) {
+            long zLo = boundaries[p];
+            long zHi = boundaries[p + 1];
+            workers.add(new Worker(partitionView(leftSpatialIndex, zLo, zHi),
+                                   partitionView(rightSpatialIndex, zLo, zHi),
+                                   new PartitionFilter(filter, zLo, zHi)));
+        }
+        this.runningWorkers = nPartitions;
+        for (Worker worker : workers) {
+            executor.execute(worker);
+        }
+    }
+
+    private void ensureBatch()
+    {
+        while ((batch == null || batchPosition == batch.size()) && runningWorkers > 0) {
+            List<Pair<LEFT_RECORD, RIGHT_RECORD>> next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                throw new SpatialJoinRuntimeException(e);
+            }
+            if (next == end) {
+                runningWorkers--;
+                if (failure != null) {
+                    throw new SpatialJoinRuntimeException(failure);
+                }
+            } else {
+                batch = next;
+                batchPosition = 0;
+            }
+        }
+        if (batch != null && batchPosition == batch.size()) {
+            batch = null;
+        }
+    }
+
+    private static <RECORD extends Record> SpatialIndexImpl<RECORD> partitionView(SpatialIndexImpl<RECORD> spatialIndex,
+                                                                                 long zLo,
+                                                                                 long zHi)
+        throws IOException, InterruptedException
+    {
+        return new SpatialIndexImpl<>((SpaceImpl) spatialIndex.space(),
+                                      new PartitionIndex<>(spatialIndex.index(), zLo, zHi),
+                                      spatialIndex.singleCell()
+                                      ? SpatialIndex.Options.SINGLE_CELL
+                                      : SpatialIndex.Options.DEFAULT);
+    }
+
+    // Returns partition boundaries, b, such that partition p is [b[p], b[p+1]). Boundaries are quantiles of a
+    // reservoir sample of the z-values of both inputs. There may be fewer partitions than requested, e.g. if
+    // the inputs are small.
+    private static long[] boundaries(Index<?> left, Index<?> right, int partitions)
+        throws IOException, InterruptedException
+    {
+        long[] sample = new long[partitions * SAMPLES_PER_PARTITION];
+        int sampleSize = 0;
+        long zCount = 0;
+        Random random = new Random(partitions);
+        long[] zs = new long[SAMPLE_BATCH_SIZE];
+        for (Index<?> index : Arrays.<Index<?>>asList(left, right)) {
+            Cursor<?> cursor = startCursor(index);
+            int n;
+            while ((n = cursor.nextBatch(zs, null, zs.length)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    zCount++;
+                    if (sampleSize < sample.length) {
+                        sample[sampleSize++] = zs[i];
+                    } else {
+                        long r = (long) (random.nextDouble() * zCount);
+                        if (r < sample.length) {
+                            sample[(int) r] = zs[i];
+                        }
+                    }
+                }
+            }
+            cursor.close();
+        }
+        Arrays.sort(sample, 0, sampleSize);
+        long[] boundaries = new long[partitions + 1];
+        int nBoundaries = 0;
+        boundaries[nBoundaries++] = SpaceImpl.Z_MIN;
+        for (int p = 1; p < partitions; p++) {
+            long z = sample[(int) ((long) p * sampleSize / partitions)];
+            if (z > boundaries[nBoundaries - 1]) {
+                boundaries[nBoundaries++] = z;
+            }
+        }
+        boundaries[nBoundaries++] = Long.MAX_VALUE;
+        return Arrays.copyOf(boundaries, nBoundaries);
+    }
+
+    // Returns a cursor positioned at the start of the index.
+    private static <RECORD extends Record> Cursor<RECORD> startCursor(Index<RECORD> index)
+        throws IOException, InterruptedException
+    {
+        Cursor<RECORD> cursor = index.cursor();
+        RECORD zMinKey = index.newKeyRecord();
+        zMinKey.z(SpaceImpl.Z_MIN);
+        cursor.goTo(zMinKey);
+        return cursor;
+    }
+
+    // Class state
+
+    private static final int SAMPLES_PER_PARTITION = 64;
+    private static final int SAMPLE_BATCH_SIZE = 1024;
+    private static final int OUTPUT_BATCH_SIZE = 256;
+    private static final int QUEUE_BATCHES_PER_PARTITION = 4;
+    // Object state
+
+    // Queued by a worker when its partition is done
+    private final List<Pair<LEFT_RECORD, RIGHT_RECORD>> end =
+        Collections.unmodifiableList(new ArrayList<Pair<LEFT_RECORD, RIGHT_RECORD>>());
+    private final BlockingQueue<List<Pair<LEFT_RECORD, RIGHT_RECORD>>> queue;
+    private volatile Throwable failure;
+    // Accessed only by the consuming thread
+    private int runningWorkers;
+    private List<Pair<LEFT_RECORD, RIGHT_RECORD>> batch;
+    private int batchPosition;
+
+    // Inner classes
+
+    // Accepts pairs owned by a partition, i.e., the larger z-value is in [zLo, zHi), and that pass the join's filter.
+    private static class PartitionFilter implements SpatialJoin.Filter<Record, Record>
+    {
+        @Override
+        public boolean overlap(Record left, Record right)
+        {
+            long z = Math.max(left.z(), right.z());
+            return z >= zLo && z < zHi && filter.overlap(left, right);
+        }
+
+        PartitionFilter(SpatialJoin.Filter<?, ?> filter, long zLo, long zHi)
+        {
+            // The filter is applied to records of the joined indexes, whatever its type arguments.
+            @SuppressWarnings("unchecked")
+            SpatialJoin.Filter<Record, Record> recordFilter = (SpatialJoin.Filter<Record, Record>) filter;
+            this.filter = recordFilter;
+            this.zLo = zLo;
+            this.zHi = zHi;
+        }
+
+        private final SpatialJoin.Filter<Record, Record> filter;
+        private final long zLo;
+        private final long zHi;
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try {
+                Iterator<?> pairs = SpatialJoinIterator.pairIterator(left, right, filter, null, null);
+                List<Pair<LEFT_RECORD, RIGHT_RECORD>> output = new ArrayList<>(OUTPUT_BATCH_SIZE);
+                while (pairs.hasNext()) {
+                    // A pair contains a record of each input, so the cast is safe.
+                    @SuppressWarnings("unchecked")
+                    Pair<LEFT_RECORD, RIGHT_RECORD> pair = (Pair<LEFT_RECORD, RIGHT_RECORD>) pairs.next();
+                    output.add(pair);
+                    if (output.size() == OUTPUT_BATCH_SIZE) {
+                        queue.put(output);
+                        output = new ArrayList<>(OUTPUT_BATCH_SIZE);
+                    }
+                }
+                if (!output.isEmpty()) {
+                    queue.put(output);
+                }
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                try {
+                    queue.put(end);
+                } catch (InterruptedException e) {
+                    // The executor is being shut down. The consumer will never see the end of this partition.
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        Worker(SpatialIndexImpl<LEFT_RECORD> left, SpatialIndexImpl<RIGHT_RECORD> right, PartitionFilter filter)
+        {
+            this.left = left;
+            this.right = right;
+            this.filter = filter;
+        }
+
+        private final SpatialIndexImpl<LEFT_RECORD> left;
+        private final SpatialIndexImpl<RIGHT_RECORD> right;
+        private final PartitionFilter filter;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A read-only view of the part of an index needed to compute the part of a spatial join owned by one partition of
+// z-space, [zLo, zHi). The view contains the index's records with z-values in the partition, preceded by the
+// records whose z-values are ancestors of zLo. The ancestors are the only records outside the partition that can
+// contain a z-value in the partition, since a z-value's descendents immediately follow it in z-order.
+//
+// The ancestors, and a cursor on the index, are obtained when the view is created, so that the view can be used
+// by another thread, without creating a cursor on the index concurrently with other threads.
+
+class PartitionIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("PartitionIndex(%s, [%s, %s))",
+                             index, SpaceImpl.formatZ(zLo), zHi == Long.MAX_VALUE ? "EOF" : SpaceImpl.formatZ(zHi));
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        throw new UnsupportedOperationException(toString());
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        throw new UnsupportedOperationException(toString());
+    }
+
+    @Override
+    public Cursor<RECORD> cursor() throws IOException, InterruptedException
+    {
+        Cursor<RECORD> cursor = indexCursor;
+        if (cursor == null) {
+            cursor = index.cursor();
+        } else {
+            indexCursor = null;
+        }
+        return new PartitionCursor(cursor);
+    }
+
+    @Override
+    public RECORD newRecord()
+    {
+        return index.newRecord();
+    }
+
+    @Override
+    public RECORD newKeyRecord()
+    {
+        return index.newKeyRecord();
+    }
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return index.blindUpdates();
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return index.stableRecords();
+    }
+
+    @Override
+    public long zLengths()
+    {
+        return index.zLengths();
+    }
+
+    @Override
+    public int ancestorCandidates(long z, long zLowerBound, long[] candidates)
+    {
+        return index.ancestorCandidates(z, zLowerBound, candidates);
+    }
+
+    // PartitionIndex interface
+
+    PartitionIndex(Index<RECORD> index, long zLo, long zHi) throws IOException, InterruptedException
+    {
+        this.index = index;
+        this.zLo = zLo;
+        this.zHi = zHi;
+        this.indexCursor = index.cursor();
+        this.ancestors = zLo == SpaceImpl.Z_MIN ? Collections.<RECORD>emptyList() : ancestors(zLo);
+    }
+
+    // For use by this class
+
+    // Returns the records whose z-values are ancestors of z, in z-order.
+    private List<RECORD> ancestors(long z) throws IOException, InterruptedException
+    {
+        long[] zAncestors = new long[SpaceImpl.MAX_Z_BITS];
+        int n = 0;
+        for (long ancestor = z; SpaceImpl.length(ancestor) > 0; ) {
+            ancestor = SpaceImpl.parent(ancestor);
+            zAncestors[n++] = ancestor;
+        }
+        List<RECORD> ancestors = new ArrayList<>();
+        RECORD key = index.newKeyRecord();
+        boolean stableRecords = index.stableRecords();
+        for (int i = n - 1; i >= 0; i--) {
+            key.z(zAncestors[i]);
+            indexCursor.goTo(key);
+            RECORD record;
+            while ((record = indexCursor.next()) != null && record.z() == zAncestors[i]) {
+                if (stableRecords) {
+                    ancestors.add(record);
+                } else {
+                    RECORD copy = index.newRecord();
+                    record.copyTo(copy);
+                    ancestors.add(copy);
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    // Object state
+
+    private final Index<RECORD> index;
+    private final long zLo;
+    private final long zHi;
+    private final List<RECORD> ancestors;
+    // Cursor for use by the first call of cursor()
+    private Cursor<RECORD> indexCursor;
+
+    // Inner classes
+
+    private class PartitionCursor extends Cursor<RECORD>
+    {
+        // Cursor interface
+
+        @Override
+        public RECORD next() throws IOException, InterruptedException
+        {
+            if (state() == State.DONE) {
+                assert current() == null;
+                return null;
+            }
+            RECORD record;
+            if (ancestorPosition < ancestors.size()) {
+                record = ancestors.get(ancestorPosition++);
+            } else {
+                record = cursor.next();
+                if (record != null && record.z() >= zHi) {
+                    record = null;
+                }
+            }
+            if (record == null) {
+                close();
+            } else {
+                current(record);
+                state(State.IN_USE);
+            }
+            return current();
+        }
+
+        @Override
+        public void goTo(RECORD key) throws IOException, InterruptedException
+        {
+            long z = key.z();
+            int position = 0;
+            while (position < ancestors.size() && ancestors.get(position).z() < z) {
+                position++;
+            }
+            ancestorPosition = position;
+            if (z < zLo) {
+                cursor.goTo(zLoKey);
+            } else {
+                cursor.goTo(key);
+            }
+            state(State.NEVER_USED);
+        }
+
+        @Override
+        public boolean deleteCurrent()
+        {
+            throw new UnsupportedOperationException(PartitionIndex.this.toString());
+        }
+
+        // PartitionCursor interface
+
+        PartitionCursor(Cursor<RECORD> cursor)
+        {
+            super(PartitionIndex.this);
+            this.cursor = cursor;
+            this.zLoKey = index.newKeyRecord();
+            this.zLoKey.z(zLo);
+        }
+
+        // Object state
+
+        private final Cursor<RECORD> cursor;
+        private final RECORD zLoKey;
+        private int ancestorPosition;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.space.SpatialIndexImpl;
+
+import java.io.IOException;
+
+// Computes a spatial join, passing each pair of records to a PairConsumer as it is generated by
+// SpatialJoinInput.generateSpatialJoinOutput. Unlike SpatialJoinIterator, no Pair is created, and output is not
+// queued.
+
+class PushSpatialJoin<LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+{
+    // PushSpatialJoin interface
+
+    // Returns true if the join is completed, false if it is stopped by the consumer.
+    public static <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    boolean join(SpatialIndexImpl<LEFT_RECORD> leftSpatialIndex,
+                 SpatialIndexImpl<RIGHT_RECORD> rightSpatialIndex,
+                 SpatialJoin.Filter<?, ?> filter,
+                 SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer,
+                 SpatialJoin.InputObserver leftInputObserver,
+                 SpatialJoin.InputObserver rightInputObserver)
+        throws IOException, InterruptedException
+    {
+        return new PushSpatialJoin<>(filter, consumer).run(leftSpatialIndex,
+                                                           rightSpatialIndex,
+                                                           leftInputObserver,
+                                                           rightInputObserver);
+    }
+
+    // For use by this class
+
+    private PushSpatialJoin(SpatialJoin.Filter<?, ?> filter,
+                            SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer)
+    {
+        // The filter is applied to records of the joined indexes, whatever its type arguments.
+        @SuppressWarnings("unchecked")
+        SpatialJoin.Filter<Record, Record> recordFilter = (SpatialJoin.Filter<Record, Record>) filter;
+        this.filter = recordFilter;
+        this.consumer = consumer;
+    }
+
+    private boolean run(SpatialIndexImpl<LEFT_RECORD> leftSpatialIndex,
+                        SpatialIndexImpl<RIGHT_RECORD> rightSpatialIndex,
+                        SpatialJoin.InputObserver leftInputObserver,
+                        SpatialJoin.InputObserver rightInputObserver)
+        throws IOException, InterruptedException
+    {
+        SpatialJoinOutput leftRight =
+            new SpatialJoinOutput()
+            {
+                @Override
+                public boolean add(Record left, Record right)
+                {
+                    return accept(left, right);
+                }
+            };
+        SpatialJoinOutput rightLeft =
+            new SpatialJoinOutput()
+            {
+                @Override
+                public boolean add(Record right, Record left)
+                {
+                    return accept(left, right);
+                }
+            };
+        SpatialJoinInput left = SpatialJoinInput.newSpatialJoinInput(leftSpatialIndex, leftRight, leftInputObserver);
+        SpatialJoinInput right = SpatialJoinInput.newSpatialJoinInput(rightSpatialIndex, rightLeft, rightInputObserver);
+        left.otherInput(right);
+        right.otherInput(left);
+        boolean more = true;
+        while (more && !stopped) {
+            more = SpatialJoinInput.mergeStep(left, right);
+        }
+        return !stopped;
+    }
+
+    // left and right come from the left and right inputs, so the casts are safe.
+    @SuppressWarnings("unchecked")
+    private boolean accept(Record left, Record right)
+    {
+        if (filter.overlap(left, right) && !consumer.accept((LEFT_RECORD) left, (RIGHT_RECORD) right)) {
+            stopped = true;
+        }
+        return !stopped;
+    }
+
+    // Object state
+
+    private final SpatialJoin.Filter<Record, Record> filter;
+    private final SpatialJoin.PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer;
+    private boolean stopped = false;
+}
@@ -24,6 +24,7 @@ import com.geophile.z.space.SpatialIndexImpl;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 public class SpatialJoinImpl extends SpatialJoin
 {
@@ -56,10 +57,54 @@ public class SpatialJoinImpl extends SpatialJoin
                                              filter,
                                              leftObserver,
                                              rightObserver);
+        return eliminateDuplicates(iterator, leftSpatialIndex, rightSpatialIndex);
+    }
+
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    boolean join(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                 SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                 PairConsumer<LEFT_RECORD, RIGHT_RECORD> consumer)
+        throws IOException, InterruptedException
+    {
+        if (!leftSpatialIndex.space().equals(rightSpatialIndex.space())) {
+            throw new SpatialJoinException("Attempt to join spatial indexes with incompatible spaces");
+        }
         if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
-            iterator = new DuplicateEliminatingIterator<Pair<LEFT_RECORD, RIGHT_RECORD>>(iterator);
+            consumer = new DuplicateEliminatingPairConsumer<>(consumer);
+        } else if (duplicates == SpatialJoin.Duplicates.EXCLUDE_LOCAL) {
+            consumer =
+                new LocalDuplicateEliminatingPairConsumer<>(
+                    consumer,
+                    new LocalDuplicateEliminator((SpatialIndexImpl<?>) leftSpatialIndex,
+                                                 (SpatialIndexImpl<?>) rightSpatialIndex));
         }
-        return iterator;
+        return PushSpatialJoin.join((SpatialIndexImpl<LEFT_RECORD>) leftSpatialIndex,
+                                    (SpatialIndexImpl<RIGHT_RECORD>) rightSpatialIndex,
+                                    filter,
+                                    consumer,
+                                    leftObserver,
+                                    rightObserver);
+    }
+
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> parallelIterator(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                               SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                               ExecutorService executor,
+                                                               int partitions)
+        throws IOException, InterruptedException
+    {
+        if (!leftSpatialIndex.space().equals(rightSpatialIndex.space())) {
+            throw new SpatialJoinException("Attempt to join spatial indexes with incompatible spaces");
+        }
+        Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> iterator =
+            ParallelSpatialJoinIterator.pairIterator((SpatialIndexImpl<LEFT_RECORD>) leftSpatialIndex,
+                                                     (SpatialIndexImpl<RIGHT_RECORD>) rightSpatialIndex,
+                                                     filter,
+                                                     executor,
+                                                     partitions);
+        return eliminateDuplicates(iterator, leftSpatialIndex, rightSpatialIndex);
     }
 
     @Override
@@ -92,8 +137,25 @@ public class SpatialJoinImpl extends SpatialJoin
                                                                          filter,
                                                                          leftObserver,
                                                                          rightObserver);
+        if (duplicates != SpatialJoin.Duplicates.INCLUDE) {
+            iterator = new DuplicateEliminatingIterator<>(iterator);
+        }
+        return iterator;
+    }
+
+    private <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> eliminateDuplicates(Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> iterator,
+                                                                  SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                                  SpatialIndex<RIGHT_RECORD> rightSpatialIndex)
+    {
         if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
             iterator = new DuplicateEliminatingIterator<>(iterator);
+        } else if (duplicates == SpatialJoin.Duplicates.EXCLUDE_LOCAL) {
+            iterator =
+                new LocalDuplicateEliminatingIterator<>(
+                    iterator,
+                    new LocalDuplicateEliminator((SpatialIndexImpl<?>) leftSpatialIndex,
+                                                 (SpatialIndexImpl<?>) rightSpatialIndex));
         }
         return iterator;
     }
@@ -347,6 +347,7 @@ class SpatialJoinInput
     public void enterZ() throws IOException, InterruptedException
     {
         assert !eof;
+        assert exitingRecord == null && that.exitingRecord == null;
         observer.enter(current.z());
         if (currentOverlapsOtherNest() ||
             !that.eof && overlap(current.z(), that.current.z())) {
@@ -366,9 +367,10 @@ class SpatialJoinInput
     public void exitZ()
     {
         assert !nest.isEmpty();
+        assert that.exitingRecord == null;
         Record top = nest.pop();
         observer.exit(top.z());
-        that.generateSpatialJoinOutput(top);
+        that.startSpatialJoinOutput(top);
         log("exit");
     }
 
@@ -377,6 +379,40 @@ class SpatialJoinInput
         this.that = that;
     }
 
+    // Carries out the next event of the 4-way merge of left and right, or if the generation of output has been
+    // suspended, resumes it. Returns false if there is nothing more to do, i.e. the spatial join is complete.
+    public static boolean mergeStep(SpatialJoinInput left, SpatialJoinInput right)
+        throws IOException, InterruptedException
+    {
+        boolean more = true;
+        if (left.exitingRecord != null) {
+            left.generateSpatialJoinOutput();
+        } else if (right.exitingRecord != null) {
+            right.generateSpatialJoinOutput();
+        } else {
+            long zLeftEnter = left.nextEntry();
+            long zLeftExit = left.nextExit();
+            long zRightEnter = right.nextEntry();
+            long zRightExit = right.nextExit();
+            long zMin = Math.min(Math.min(zLeftEnter, zLeftExit), Math.min(zRightEnter, zRightExit));
+            if (zMin < EOF) {
+                // Prefer entry to exit to avoid missing join output
+                if (zMin == zLeftEnter) {
+                    left.enterZ();
+                } else if (zMin == zRightEnter) {
+                    right.enterZ();
+                } else if (zMin == zLeftExit) {
+                    left.exitZ();
+                } else {
+                    right.exitZ();
+                }
+            } else {
+                more = false;
+            }
+        }
+        return more;
+    }
+
     public static SpatialJoinInput newSpatialJoinInput(SpatialIndexImpl spatialIndex,
                                                        SpatialJoinOutput spatialJoinOutput,
                                                        SpatialJoin.InputObserver observer)
@@ -401,7 +437,7 @@ class SpatialJoinInput
             if (thatCurrentZ > thisCurrentZ) {
                 if (singleCellOptimization && singleCell) {
                     randomAccessKey.z(thatCurrentZ);
-                    cursorGoTo(cursor, randomAccessKey);
+                    cursorGoToForward(cursor, randomAccessKey);
                     copyToCurrent(cursorNext(cursor));
                 } else {
                     // Why this works: There are two cases to consider.
@@ -423,23 +459,20 @@ class SpatialJoinInput
     private void advanceToNextOrAncestor(long zStart, long zLowerBound)
         throws IOException, InterruptedException
     {
-        // Generate all the ancestors that need to be considered.
-        int nCandidates = 0;
-        long zCandidate = zStart;
-        while (zCandidate > zLowerBound) {
-            zCandidates[nCandidates++] = zCandidate;
-            zCandidate = SpaceImpl.parent(zCandidate);
-        }
-        // In the caller, thatCurrentZ > thisCurrentZ, so zStart > zLowerBound, and zCandidate is initialized to
-        // zStart. So zCandidate > zLowerBound has to be true at least once, and nCandidates > 0.
-        assert nCandidates > 0;
+        // Generate all the ancestors that need to be considered. The index may omit ancestors that it knows
+        // to be absent. In the caller, thatCurrentZ > thisCurrentZ, so zStart > zLowerBound.
+        assert zStart > zLowerBound;
+        int nCandidates = spatialIndex.index().ancestorCandidates(zStart, zLowerBound, zCandidates);
+        assert nCandidates > 0 && zCandidates[0] == zStart;
+        long zCandidate;
         // Find the largest ancestor among the candidates that exists.
         int c = nCandidates;
         boolean foundAncestor = false;
         while (!foundAncestor && --c >= 0) {
             zCandidate = zCandidates[c];
             randomAccessKey.z(zCandidate);
-            cursorGoTo(cursor, randomAccessKey);
+            // Candidates are examined in increasing z order, all past the current position.
+            cursorGoToForward(cursor, randomAccessKey);
             Record record = cursorNext(cursor);
             if (c == 0) {
                 // No ancestors were found. Go to the record following zStart.
@@ -473,6 +506,17 @@ class SpatialJoinInput
         return overlap;
     }
 
+    // Returns true if, as things stand, the other input's next enterZ would call advanceCursor, i.e. do a random
+    // access to current's z-value or one of its ancestors.
+    private boolean thatWillAdvance()
+    {
+        return
+            !that.eof &&
+            that.current.z() < current.z() &&
+            !overlap(current.z(), that.current.z()) &&
+            !that.currentOverlapsOtherNest();
+    }
+
     private Record nestTop()
     {
         return nest.peek();
@@ -483,10 +527,25 @@ class SpatialJoinInput
         return nest.peekLast();
     }
 
-    private void generateSpatialJoinOutput(Record thatRecord)
+    // Output combines thatRecord, just exited by the other input, with each record in this input's nest.
+    private void startSpatialJoinOutput(Record thatRecord)
+    {
+        exitingRecord = thatRecord;
+        outputScan = nest.iterator();
+        generateSpatialJoinOutput();
+    }
+
+    // Generates output until it is complete, or until spatialJoinOutput suspends it. The merge does not proceed,
+    // (and the nest is therefore not modified), until the output is complete.
+    private void generateSpatialJoinOutput()
     {
-        for (Record thisRecord : nest) {
-            spatialJoinOutput.add(thisRecord, thatRecord);
+        boolean more = true;
+        while (more && outputScan.hasNext()) {
+            more = spatialJoinOutput.add(outputScan.next(), exitingRecord);
+        }
+        if (!outputScan.hasNext()) {
+            exitingRecord = null;
+            outputScan = null;
         }
     }
 
@@ -509,8 +568,14 @@ class SpatialJoinInput
         this.stableRecords = index.stableRecords();
         this.spatialIndex = spatialIndex;
         this.observer = observer == null ? DEFAULT_OBSERVER : observer;
-        // Initialize cursor
-        this.cursor = index.cursor();
+        // Sequential accesses can be batched only if they don't need to be observed individually.
+        this.batched = observer == null;
+        this.batchZs = batched ? new long[MAX_BATCH_SIZE] : null;
+        this.batchRecords = batched ? new Record[MAX_BATCH_SIZE] : null;
+        // Initialize cursor. The cursor yields records of the joined index, whatever its type argument.
+        @SuppressWarnings("unchecked")
+        Cursor<Record> recordCursor = (Cursor<Record>) index.cursor();
+        this.cursor = recordCursor;
         Record zMinKey = index.newKeyRecord();
         zMinKey.z(SpaceImpl.Z_MIN);
         cursorGoTo(cursor, zMinKey);
@@ -535,6 +600,11 @@ class SpatialJoinInput
                 record.copyTo(current);
             }
             eof = false;
+            // Sequential steps don't need a hint, so send one only when the other input is expected to skip
+            // ahead to current's z-value, or to one of its ancestors.
+            if (that != null && thatWillAdvance()) {
+                that.cursor.prefetch(current.z());
+            }
         }
     }
 
@@ -549,20 +619,49 @@ class SpatialJoinInput
         }
     }
 
-    private void cursorGoTo(Cursor cursor, Record key) throws IOException, InterruptedException
+    private void cursorGoTo(Cursor<Record> cursor, Record key) throws IOException, InterruptedException
     {
+        discardBatch();
         cursor.goTo(key);
         lastZRandomAccess = key.z();
         observer.randomAccess(cursor, lastZRandomAccess);
     }
 
-    private Record cursorNext(Cursor cursor) throws IOException, InterruptedException
+    private void cursorGoToForward(Cursor<Record> cursor, Record key) throws IOException, InterruptedException
     {
-        Record record = cursor.next();
-        observer.sequentialAccess(cursor, lastZRandomAccess, record);
+        discardBatch();
+        cursor.goToForward(key);
+        lastZRandomAccess = key.z();
+        observer.randomAccess(cursor, lastZRandomAccess);
+    }
+
+    // If batched, records are retrieved using nextBatch. A batch is small following a random access, since
+    // records read ahead are discarded by the next random access. The batch size doubles with each batch retrieved
+    // by sequential access.
+    private Record cursorNext(Cursor<Record> cursor) throws IOException, InterruptedException
+    {
+        Record record;
+        if (batched) {
+            if (batchPosition == batchSize) {
+                batchSize = cursor.nextBatch(batchZs, batchRecords, nextBatchSize);
+                batchPosition = 0;
+                nextBatchSize = Math.min(MAX_BATCH_SIZE, nextBatchSize * 2);
+            }
+            record = batchPosition < batchSize ? batchRecords[batchPosition++] : null;
+        } else {
+            record = cursor.next();
+            observer.sequentialAccess(cursor, lastZRandomAccess, record);
+        }
         return record;
     }
 
+    private void discardBatch()
+    {
+        batchSize = 0;
+        batchPosition = 0;
+        nextBatchSize = 1;
+    }
+
     private void log(String label)
     {
         if (LOG.isLoggable(Level.FINE)) {
@@ -608,6 +707,7 @@ class SpatialJoinInput
     private static final Logger LOG = Logger.getLogger(SpatialJoinInput.class.getName());
     private static final AtomicInteger idGenerator = new AtomicInteger(0);
     private static final SpatialJoin.InputObserver DEFAULT_OBSERVER = new SpatialJoin.InputObserver();
+    private static final int MAX_BATCH_SIZE = 64;
 
     // Object state
 
@@ -620,13 +720,24 @@ class SpatialJoinInput
     // nest contains z-values that have been entered but not exited. current is the next z-value to enter,
     // and cursor contains later z-values.
     private final Deque<Record> nest = new ArrayDeque<>();
-    private final Cursor cursor;
+    private final Cursor<Record> cursor;
     private Record current;
     private final Record randomAccessKey;
+    // Output in progress: exitingRecord, exited by the other input, is being combined with the nest records
+    // remaining in outputScan.
+    private Record exitingRecord;
+    private Iterator<Record> outputScan;
     // For use in finding ancestors
     private final long[] zCandidates = new long[SpaceImpl.MAX_Z_BITS];
     private long lastZRandomAccess; // For observing access pattern
     private boolean eof = false;
     private final boolean singleCellOptimization;
     private final SpatialJoin.InputObserver observer;
+    // Records retrieved by the cursor, but not yet consumed: batchRecords[batchPosition:batchSize).
+    private final boolean batched;
+    private final long[] batchZs;
+    private final Record[] batchRecords;
+    private int batchSize = 0;
+    private int batchPosition = 0;
+    private int nextBatchSize = 1;
 }
@@ -108,11 +108,13 @@ class SpatialJoinIterator<T> implements Iterator<T>
             new SpatialJoinOutput()
             {
                 @Override
-                public void add(Record left, Record right)
+                public boolean add(Record left, Record right)
                 {
-                    if (filter.overlap(left, right)) {
+                    boolean overlap = filter.overlap(left, right);
+                    if (overlap) {
                         pending.add(outputGenerator.generateOutput(left, right));
                     }
+                    return !overlap;
                 }
             };
         left = SpatialJoinInput.newSpatialJoinInput(leftSpatialIndex, pendingLeftRight, leftInputObserver);
@@ -120,11 +122,13 @@ class SpatialJoinIterator<T> implements Iterator<T>
             new SpatialJoinOutput()
             {
                 @Override
-                public void add(Record right, Record left)
+                public boolean add(Record right, Record left)
                 {
-                    if (filter.overlap(left, right)) {
+                    boolean overlap = filter.overlap(left, right);
+                    if (overlap) {
                         pending.add(outputGenerator.generateOutput(left, right));
                     }
+                    return !overlap;
                 }
             };
         right = SpatialJoinInput.newSpatialJoinInput(rightSpatialIndex, pendingRightLeft, rightInputObserver);
@@ -167,11 +171,13 @@ class SpatialJoinIterator<T> implements Iterator<T>
             new SpatialJoinOutput()
             {
                 @Override
-                public void add(Record left, Record right)
+                public boolean add(Record left, Record right)
                 {
-                    if (filter.overlap(querySpatialObject, right)) {
+                    boolean overlap = filter.overlap(querySpatialObject, right);
+                    if (overlap) {
                         pending.add(outputGenerator.generateOutput(left, right));
                     }
+                    return !overlap;
                 }
             };
         left = SpatialJoinInput.newSpatialJoinInput((SpatialIndexImpl) querySpatialIndex,
@@ -181,11 +187,13 @@ class SpatialJoinIterator<T> implements Iterator<T>
             new SpatialJoinOutput()
             {
                 @Override
-                public void add(Record right, Record left)
+                public boolean add(Record right, Record left)
                 {
-                    if (filter.overlap(querySpatialObject, right)) {
+                    boolean overlap = filter.overlap(querySpatialObject, right);
+                    if (overlap) {
                         pending.add(outputGenerator.generateOutput(left, right));
                     }
+                    return !overlap;
                 }
             };
         right = SpatialJoinInput.newSpatialJoinInput(dataSpatialIndex,
@@ -215,33 +223,10 @@ class SpatialJoinIterator<T> implements Iterator<T>
     private void findPairs() throws IOException, InterruptedException
     {
         assert pending.isEmpty();
-        long zMin;
+        boolean more;
         do {
-            long zLeftEnter = left.nextEntry();
-            long zLeftExit = left.nextExit();
-            long zRightEnter = right.nextEntry();
-            long zRightExit = right.nextExit();
-            zMin = min(zLeftEnter, zLeftExit, zRightEnter, zRightExit);
-            if (zMin < SpatialJoinInput.EOF) {
-                // Prefer entry to exit to avoid missing join output
-                if (zMin == zLeftEnter) {
-                    left.enterZ();
-                } else if (zMin == zRightEnter) {
-                    right.enterZ();
-                } else if (zMin == zLeftExit) {
-                    left.exitZ();
-                } else {
-                    right.exitZ();
-                }
-            }
-        } while (pending.isEmpty() && zMin < SpatialJoinInput.EOF);
-    }
-
-    private long min(long a, long b, long c, long d)
-    {
-        long minAB = a < b ? a : b;
-        long minCD = c < d ? c : d;
-        return minAB < minCD ? minAB : minCD;
+            more = SpatialJoinInput.mergeStep(left, right);
+        } while (more && pending.isEmpty());
     }
 
     // Class state
@@ -258,6 +243,8 @@ class SpatialJoinIterator<T> implements Iterator<T>
     private final String name = String.format("sj(%s)", idGenerator.getAndIncrement());
     private final SpatialJoinInput left;
     private final SpatialJoinInput right;
+    // Each SpatialJoinOutput suspends the generation of output as soon as it adds to pending. Output is therefore
+    // generated as next() is called, and pending never holds more than one element.
     private final Queue<T> pending = new ArrayDeque<>();
 
     // Inner classes
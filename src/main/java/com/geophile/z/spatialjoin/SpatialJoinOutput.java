@@ -8,7 +8,10 @@ package com.geophile.z.spatialjoin;
 
 import com.geophile.z.Record;
 
+// Receives pairs of overlapping records from a spatial join input. add returns false to suspend the generation of
+// output, which is resumed by the next SpatialJoinInput.mergeStep.
+
 interface SpatialJoinOutput
 {
-    void add(Record r, Record s);
+    boolean add(Record r, Record s);
 }
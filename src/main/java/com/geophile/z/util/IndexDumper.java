@@ -21,9 +21,15 @@ public class IndexDumper<RECORD extends Record>
         RECORD start = index.newKeyRecord();
         start.z(0);
         cursor.goTo(start);
-        RECORD record;
-        while ((record = cursor.next()) != null) {
-            output.println(describe(record));
+        long[] zs = new long[BATCH_SIZE];
+        // The array only receives records of the index, so the cast is safe.
+        @SuppressWarnings("unchecked")
+        RECORD[] records = (RECORD[]) new Record[BATCH_SIZE];
+        int n;
+        while ((n = cursor.nextBatch(zs, records, BATCH_SIZE)) > 0) {
+            for (int i = 0; i < n; i++) {
+                output.println(describe(records[i]));
+            }
         }
     }
 
@@ -37,5 +43,7 @@ public class IndexDumper<RECORD extends Record>
         this.index = index;
     }
 
+    private static final int BATCH_SIZE = 100;
+
     private final Index<RECORD> index;
 }
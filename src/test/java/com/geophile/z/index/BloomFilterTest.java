@@ -0,0 +1,74 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest
+{
+    @Test
+    public void testMembership()
+    {
+        Random random = new Random(439);
+        Set<Long> zs = new HashSet<>();
+        while (zs.size() < N) {
+            zs.add(randomZ(random));
+        }
+        BloomFilter filter = new BloomFilter(N);
+        for (long z : zs) {
+            filter.add(z);
+        }
+        // A filter recreated from the state of another must give the same answers.
+        BloomFilter copy = new BloomFilter(filter.words());
+        for (long z : zs) {
+            assertTrue(filter.mightContain(z));
+            assertTrue(copy.mightContain(z));
+        }
+        int falsePositives = 0;
+        int probes = 0;
+        while (probes < N) {
+            long z = randomZ(random);
+            if (!zs.contains(z)) {
+                probes++;
+                if (filter.mightContain(z)) {
+                    falsePositives++;
+                }
+                assertTrue(filter.mightContain(z) == copy.mightContain(z));
+            }
+        }
+        assertTrue(falsePositives < N * MAX_FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        BloomFilter filter = new BloomFilter(0);
+        assertTrue(!filter.mightContain(SpaceImpl.Z_MIN));
+        assertTrue(!filter.mightContain(SpaceImpl.Z_MAX));
+    }
+
+    // z-values of varying lengths, sharing many of their high-order bits, as in a real index.
+    private static long randomZ(Random random)
+    {
+        long z = SpaceImpl.z((random.nextLong() >>> 20) & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+        int length = random.nextInt(SpaceImpl.MAX_Z_BITS + 1);
+        while (SpaceImpl.length(z) > length) {
+            z = SpaceImpl.parent(z);
+        }
+        return z;
+    }
+
+    private static final int N = 100000;
+    private static final double MAX_FALSE_POSITIVE_RATE = 0.02;
+}
@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableMap;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -79,6 +80,115 @@ public abstract class IndexTestBase
         }
     }
 
+    // Index contents are the ancestors, with lengths that are multiples of 4, of random z-values. zLengths must
+    // include those lengths, and ancestorCandidates must return every ancestor present.
+    @Test
+    public void testZLengths() throws Exception
+    {
+        try {
+            Index<TestRecord> index = newIndex();
+            Random random = new Random(419);
+            long[] bases = new long[N_BASES];
+            long expectedZLengths = 0;
+            for (int id = 0; id < N_BASES; id++) {
+                bases[id] = SpaceImpl.z(random.nextLong() & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+                for (long z = bases[id]; SpaceImpl.length(z) > 0; z = SpaceImpl.parent(z)) {
+                    if (SpaceImpl.length(z) % 4 == 0) {
+                        TestRecord record = index.newRecord();
+                        record.z(z);
+                        record.spatialObject(new TestSpatialObject(id));
+                        record.soid(id);
+                        index.add(record);
+                        expectedZLengths |= 1L << SpaceImpl.length(z);
+                    }
+                }
+            }
+            commit();
+            assertEquals(expectedZLengths, index.zLengths() & expectedZLengths);
+            long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+            for (int id = 0; id < N_BASES; id++) {
+                long z = bases[id];
+                int n = index.ancestorCandidates(z, SpaceImpl.Z_MIN, candidates);
+                assertEquals(z, candidates[0]);
+                int c = 1;
+                for (long ancestor = SpaceImpl.parent(z);
+                     SpaceImpl.length(ancestor) > 0;
+                     ancestor = SpaceImpl.parent(ancestor)) {
+                    if (c < n && candidates[c] == ancestor) {
+                        c++;
+                    } else {
+                        assertTrue(SpaceImpl.length(ancestor) % 4 != 0);
+                    }
+                }
+                assertEquals(n, c);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    // nextBatch must retrieve the same records as next(), when mixed with calls to next(), and deleteCurrent must
+    // delete the last record of a batch.
+    @Test
+    public void testNextBatch() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        try {
+            load(index, N_BATCH_OBJECTS, 3);
+            List<Long> expectedZs = new ArrayList<>();
+            List<Integer> expectedSoids = new ArrayList<>();
+            Cursor<TestRecord> cursor = newCursor(index, SpaceImpl.Z_MIN);
+            TestRecord record;
+            while ((record = cursor.next()) != null) {
+                expectedZs.add(record.z());
+                expectedSoids.add(record.soid());
+            }
+            long[] zs = new long[BATCH_SIZE];
+            TestRecord[] records = new TestRecord[BATCH_SIZE];
+            for (int max = 1; max <= BATCH_SIZE; max *= 4) {
+                for (boolean retrieveRecords : new boolean[]{false, true}) {
+                    cursor = newCursor(index, SpaceImpl.Z_MIN);
+                    int count = 0;
+                    int n;
+                    do {
+                        n = cursor.nextBatch(zs, retrieveRecords ? records : null, max);
+                        assertTrue(n <= max);
+                        for (int i = 0; i < n; i++) {
+                            assertEquals(expectedZs.get(count).longValue(), zs[i]);
+                            if (retrieveRecords) {
+                                assertEquals(zs[i], records[i].z());
+                                assertEquals(expectedSoids.get(count).intValue(), records[i].soid());
+                            }
+                            count++;
+                        }
+                        // Interleave next() with nextBatch
+                        if (n > 0 && (record = cursor.next()) != null) {
+                            assertEquals(expectedZs.get(count).longValue(), record.z());
+                            count++;
+                        }
+                    } while (n > 0);
+                    assertEquals(expectedZs.size(), count);
+                    assertEquals(0, cursor.nextBatch(zs, records, max));
+                }
+            }
+            // Delete the last record of each full batch
+            int expectedRemaining = expectedZs.size();
+            cursor = newCursor(index, SpaceImpl.Z_MIN);
+            while (cursor.nextBatch(zs, records, 7) == 7) {
+                assertTrue(cursor.deleteCurrent());
+                expectedRemaining--;
+            }
+            cursor = newCursor(index, SpaceImpl.Z_MIN);
+            int remaining = 0;
+            while (cursor.next() != null) {
+                remaining++;
+            }
+            assertEquals(expectedRemaining, remaining);
+        } finally {
+            shutdown();
+        }
+    }
+
     protected abstract Index<TestRecord> newIndex() throws IOException, InterruptedException;
 
     protected void commit()
@@ -291,9 +401,10 @@ public abstract class IndexTestBase
         print("}");
     }
 
-    private long z(long x)
+    // Maps distinct values of x to distinct z-values of maximum length, in the same order.
+    public static long z(long x)
     {
-        return SpaceImpl.z(x << SpaceImpl.LENGTH_BITS, SpaceImpl.MAX_Z_BITS);
+        return SpaceImpl.z(x << (SpaceImpl.LENGTH_BITS + 1), SpaceImpl.MAX_Z_BITS);
     }
 
     private Record.Filter<TestRecord> recordFilter(final long z, final int soid)
@@ -339,4 +450,7 @@ public abstract class IndexTestBase
 
     protected static final SpatialObjectSerializer SERIALIZER = SpatialObjectSerializer.newSerializer();
     private static final int GAP = 10;
+    private static final int N_BASES = 200;
+    private static final int N_BATCH_OBJECTS = 500;
+    private static final int BATCH_SIZE = 64;
 }
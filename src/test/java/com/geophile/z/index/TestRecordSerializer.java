@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+import com.geophile.z.TestRecord;
+
+import java.nio.ByteBuffer;
+
+// Serializes TestRecords whose spatial objects are TestSpatialObjects, for indexes that store records as bytes.
+
+public class TestRecordSerializer implements RecordSerializer<TestRecord>
+{
+    @Override
+    public void writeTo(TestRecord record, ByteBuffer buffer)
+    {
+        record.spatialObject().writeTo(buffer);
+        buffer.putInt(record.soid());
+    }
+
+    @Override
+    public void readFrom(ByteBuffer buffer, TestRecord record)
+    {
+        TestSpatialObject spatialObject = new TestSpatialObject();
+        spatialObject.readFrom(buffer);
+        record.spatialObject(spatialObject);
+        record.soid(buffer.getInt());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.btree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BTreeTest extends IndexTestBase
+{
+    @Test
+    public void testDuplicateOrder() throws Exception
+    {
+        BTree<TestRecord> index = newIndex();
+        long z = z(1);
+        for (int soid = 0; soid < N_DUPLICATES; soid++) {
+            index.add(record(soid, z));
+        }
+        assertEquals(N_DUPLICATES, index.size());
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(z);
+        cursor.goTo(key);
+        for (int soid = 0; soid < N_DUPLICATES; soid++) {
+            assertEquals(soid, cursor.next().soid());
+        }
+        assertNull(cursor.next());
+    }
+
+    @Test
+    public void testDeleteAllWithCursor() throws Exception
+    {
+        BTree<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_DUPLICATES; soid++) {
+            index.add(record(soid, z(soid)));
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        int expected = 0;
+        while ((record = cursor.next()) != null) {
+            assertEquals(expected++, record.soid());
+            assertTrue(cursor.deleteCurrent());
+        }
+        assertEquals(N_DUPLICATES, expected);
+        assertEquals(0, index.size());
+        cursor.goTo(key);
+        assertNull(cursor.next());
+    }
+
+    // Add and remove records through the index during a scan, splitting the cursor's leaf, shifting records within
+    // it, and emptying it. The cursor must continue from the last record returned.
+    @Test
+    public void testUpdateDuringScan() throws Exception
+    {
+        BTree<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            index.add(record(soid, z(soid / Z_COPIES * GAP)));
+        }
+        Set<Integer> remaining = new HashSet<>();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            remaining.add(soid);
+        }
+        int addedSoid = N_RECORDS;
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        int expectedSoid = 0;
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            int soid = record.soid();
+            assertEquals(expectedSoid, soid);
+            if (soid % 20 == 0 && soid > 0) {
+                // Remove the record just returned, and the ones following it.
+                for (int removeSoid = soid; removeSoid < Math.min(soid + 10, N_RECORDS); removeSoid++) {
+                    assertTrue(index.remove(z(removeSoid / Z_COPIES * GAP), soidFilter(removeSoid)));
+                    remaining.remove(removeSoid);
+                }
+                expectedSoid = soid + 10;
+            } else if (soid % 20 == 15) {
+                // Add a record preceding the cursor's position, in or near the cursor's leaf, and then delete the
+                // record just returned.
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                remaining.remove(soid);
+                expectedSoid = soid + 1;
+            } else if (soid % 10 == 7) {
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                expectedSoid = soid + 1;
+            } else {
+                expectedSoid = soid + 1;
+            }
+        }
+        assertEquals(N_RECORDS, expectedSoid);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        Set<Integer> actual = new HashSet<>();
+        while ((record = cursor.next()) != null) {
+            actual.add(record.soid());
+        }
+        assertEquals(remaining, actual);
+    }
+
+    @Override
+    protected BTree<TestRecord> newIndex()
+    {
+        return
+            new BTree<TestRecord>(NODE_CAPACITY)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static TestRecord record(int soid, long z)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z);
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    // Small nodes exercise splits and the removal of empty leaves.
+    private static final int NODE_CAPACITY = 4;
+    private static final int N_DUPLICATES = 1000;
+    private static final int N_RECORDS = 1000;
+    private static final int Z_COPIES = 3;
+    private static final int GAP = 10;
+}
@@ -0,0 +1,159 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.caching;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.index.sortedarray.SortedArray;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CachingIndexTest extends IndexTestBase
+{
+    // Compare a CachingIndex with the index it wraps, for short scans following goTo, interleaved with adds and
+    // removes that invalidate cached ranges. Keys are clustered, so that many goTos are cache hits.
+    @Test
+    public void testRandomAccessWithUpdates() throws Exception
+    {
+        Random random = new Random(444);
+        SortedArray<TestRecord> expectedIndex = newSortedArray();
+        CachingIndex<TestRecord> index = new CachingIndex<>(newSortedArray(), MAX_RANGES, RANGE_SIZE);
+        int soid = 0;
+        while (soid < N_RECORDS) {
+            add(expectedIndex, index, soid++);
+        }
+        TestRecord key = index.newKeyRecord();
+        for (int i = 0; i < N_PROBES; i++) {
+            switch (random.nextInt(10)) {
+                case 0:
+                    add(expectedIndex, index, soid++);
+                    break;
+                case 1:
+                    final int removeSoid = random.nextInt(soid);
+                    Record.Filter<TestRecord> filter =
+                        new Record.Filter<TestRecord>()
+                        {
+                            @Override
+                            public boolean select(TestRecord record)
+                            {
+                                return record.soid() == removeSoid;
+                            }
+                        };
+                    long z = z(x(removeSoid));
+                    assertEquals(expectedIndex.remove(z, filter), index.remove(z, filter));
+                    break;
+                default:
+                    break;
+            }
+            key.z(z(random.nextInt(10) < 8 ? random.nextInt(N_HOT) : random.nextInt(N_DISTINCT_Z)));
+            Cursor<TestRecord> expectedCursor = expectedIndex.cursor();
+            Cursor<TestRecord> cursor = index.cursor();
+            expectedCursor.goTo(key);
+            cursor.goTo(key);
+            int n = random.nextInt(3 * RANGE_SIZE);
+            for (int j = 0; j < n; j++) {
+                TestRecord expected = expectedCursor.next();
+                TestRecord actual = cursor.next();
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.z(), actual.z());
+                    assertEquals(expected.soid(), actual.soid());
+                }
+            }
+        }
+        assertTrue(index.cachedRanges() <= MAX_RANGES);
+        assertTrue(index.hits() > 0);
+        assertTrue(index.misses() > 0);
+    }
+
+    // Repeated searches of a small part of the index are served from the cache.
+    @Test
+    public void testHitRate() throws Exception
+    {
+        Random random = new Random(445);
+        CachingIndex<TestRecord> index = new CachingIndex<>(newSortedArray(), MAX_RANGES, RANGE_SIZE);
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(soid));
+            index.add(record);
+        }
+        assertEquals(0, index.hitRate(), 0);
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        for (int i = 0; i < N_PROBES; i++) {
+            // The first range retrieved starts at z(0), and ends before the last record retrieved.
+            int soid = i == 0 ? 0 : random.nextInt(RANGE_SIZE - 1);
+            key.z(z(soid));
+            cursor.goTo(key);
+            assertEquals(soid, cursor.next().soid());
+        }
+        assertEquals(1, index.misses());
+        assertEquals(N_PROBES - 1, index.hits());
+        // Adding a record to the range invalidates it.
+        TestRecord record = new TestRecord(new TestSpatialObject(N_RECORDS), N_RECORDS);
+        record.z(z(0));
+        index.add(record);
+        assertEquals(0, index.cachedRanges());
+        key.z(z(0));
+        cursor.goTo(key);
+        assertEquals(0, cursor.next().soid());
+        assertEquals(N_RECORDS, cursor.next().soid());
+        assertEquals(1, cursor.next().soid());
+        assertEquals(2, index.misses());
+    }
+
+    @Override
+    protected CachingIndex<TestRecord> newIndex()
+    {
+        return new CachingIndex<>(newSortedArray(), MAX_RANGES, RANGE_SIZE);
+    }
+
+    private static void add(SortedArray<TestRecord> expectedIndex,
+                            CachingIndex<TestRecord> index,
+                            int soid) throws Exception
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z(x(soid)));
+        expectedIndex.add(record);
+        index.add(record);
+    }
+
+    private static SortedArray<TestRecord> newSortedArray()
+    {
+        return
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    // Several records share each x, and so each z-value.
+    private static long x(int soid)
+    {
+        return (soid * 7919L) % N_DISTINCT_Z;
+    }
+
+    private static final int N_RECORDS = 10000;
+    private static final int N_DISTINCT_Z = 2000;
+    private static final int N_HOT = 100;
+    private static final int N_PROBES = 2000;
+    private static final int MAX_RANGES = 8;
+    private static final int RANGE_SIZE = 16;
+}
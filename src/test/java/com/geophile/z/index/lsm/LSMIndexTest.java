@@ -0,0 +1,120 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.lsm;
+
+import com.geophile.z.Index;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestRecordSerializer;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LSMIndexTest extends IndexTestBase
+{
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = File.createTempFile("lsmindex", null);
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void closeIndexes() throws IOException
+    {
+        for (LSMIndex<TestRecord> index : indexes) {
+            index.close();
+        }
+        indexes.clear();
+        // All run files should have been deleted
+        assertEquals(0, directory.list().length);
+        directory.delete();
+    }
+
+    // Index contents are the ancestors, with lengths that are multiples of 4, of random z-values.
+    // ancestorCandidates must return every ancestor present, and few that are absent.
+    @Test
+    public void testAncestorCandidates() throws IOException, InterruptedException
+    {
+        Random random = new Random(440);
+        long[] bases = new long[N_BASES];
+        Index<TestRecord> source = newIndex();
+        for (int i = 0; i < N_BASES; i++) {
+            bases[i] = SpaceImpl.z(random.nextLong() & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+            for (long z = bases[i]; SpaceImpl.length(z) > 0; z = SpaceImpl.parent(z)) {
+                if (SpaceImpl.length(z) % 4 == 0) {
+                    TestRecord record = new TestRecord(new TestSpatialObject(i), i);
+                    record.z(z);
+                    source.add(record);
+                }
+            }
+        }
+        Index<TestRecord> index = source;
+        long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+        int absent = 0;
+        int absentCandidates = 0;
+        for (int i = 0; i < N_BASES; i++) {
+            long z = bases[i];
+            int n = index.ancestorCandidates(z, SpaceImpl.Z_MIN, candidates);
+            assertEquals(z, candidates[0]);
+            int c = 1;
+            for (long ancestor = SpaceImpl.parent(z);
+                 SpaceImpl.length(ancestor) > 0;
+                 ancestor = SpaceImpl.parent(ancestor)) {
+                if (c < n && candidates[c] == ancestor) {
+                    c++;
+                    if (SpaceImpl.length(ancestor) % 4 != 0) {
+                        absentCandidates++;
+                    }
+                } else {
+                    assertTrue(SpaceImpl.length(ancestor) % 4 != 0);
+                }
+                if (SpaceImpl.length(ancestor) % 4 != 0) {
+                    absent++;
+                }
+            }
+            assertEquals(n, c);
+        }
+        assertTrue(absentCandidates < absent / 10);
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        // A small memtable and few runs exercise flushing, tombstones, and compaction.
+        LSMIndex<TestRecord> index =
+            new LSMIndex<TestRecord>(directory, new TestRecordSerializer(), MEMTABLE_SIZE, MAX_RUNS)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        indexes.add(index);
+        return index;
+    }
+
+    private static final int MEMTABLE_SIZE = 50;
+    private static final int N_BASES = 200;
+    private static final int MAX_RUNS = 3;
+
+    private final List<LSMIndex<TestRecord>> indexes = new ArrayList<>();
+    private File directory;
+}
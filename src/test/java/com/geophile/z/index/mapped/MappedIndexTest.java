@@ -0,0 +1,217 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.TestRecordSerializer;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.geophile.z.index.IndexTestBase.z;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedIndexTest
+{
+    @Test
+    public void testRetrieval() throws IOException, InterruptedException
+    {
+        for (int n = 0; n <= 1000; n += 100) {
+            for (int copies = 1; copies <= MAX_COPIES; copies++) {
+                TestIndex source = new TestIndex();
+                load(source, n, copies);
+                File file = File.createTempFile("mappedindex", null);
+                file.deleteOnExit();
+                assertEquals(n * copies, MappedIndexWriter.write(source, new TestRecordSerializer(), file));
+                MappedIndex<TestRecord> index = newIndex(file);
+                assertEquals(n * copies, index.size());
+                // Full scan
+                assertEquals(contents(source, SpaceImpl.Z_MIN), contents(index, SpaceImpl.Z_MIN));
+                // goTo each key, and each gap between keys
+                Cursor<TestRecord> cursor = index.cursor();
+                for (int i = 0; i < n; i++) {
+                    cursor.goTo(key(index, z(i * GAP)));
+                    for (int c = 0; c < copies; c++) {
+                        TestRecord record = cursor.next();
+                        assertEquals(z(i * GAP), record.z());
+                        assertEquals(i * MAX_COPIES + c, record.soid());
+                        assertEquals(new TestSpatialObject(i), record.spatialObject());
+                    }
+                    cursor.goTo(key(index, z(i * GAP + GAP / 2)));
+                    TestRecord record = cursor.next();
+                    if (i == n - 1) {
+                        assertNull(record);
+                    } else {
+                        assertEquals(z((i + 1) * GAP), record.z());
+                    }
+                }
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws IOException, InterruptedException
+    {
+        TestIndex source = new TestIndex();
+        load(source, 10, 1);
+        File file = File.createTempFile("mappedindex", null);
+        file.deleteOnExit();
+        MappedIndexWriter.write(source, new TestRecordSerializer(), file);
+        MappedIndex<TestRecord> index = newIndex(file);
+        try {
+            index.add(new TestRecord());
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(key(index, SpaceImpl.Z_MIN));
+        cursor.next();
+        try {
+            cursor.deleteCurrent();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testOutOfOrderAppend() throws IOException
+    {
+        File file = File.createTempFile("mappedindex", null);
+        file.deleteOnExit();
+        try (MappedIndexWriter<TestRecord> writer = new MappedIndexWriter<>(file, new TestRecordSerializer())) {
+            writer.append(record(z(GAP), 1));
+            try {
+                writer.append(record(z(0), 0));
+                fail();
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        file.delete();
+    }
+
+    // Index contents are the ancestors, with lengths that are multiples of 4, of random z-values.
+    // ancestorCandidates must return every ancestor present, and few that are absent.
+    @Test
+    public void testAncestorCandidates() throws IOException, InterruptedException
+    {
+        Random random = new Random(440);
+        long[] bases = new long[N_BASES];
+        TestIndex source = new TestIndex();
+        for (int i = 0; i < N_BASES; i++) {
+            bases[i] = SpaceImpl.z(random.nextLong() & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+            for (long z = bases[i]; SpaceImpl.length(z) > 0; z = SpaceImpl.parent(z)) {
+                if (SpaceImpl.length(z) % 4 == 0) {
+                    TestRecord record = new TestRecord(new TestSpatialObject(i), i);
+                    record.z(z);
+                    source.add(record);
+                }
+            }
+        }
+        File file = File.createTempFile("mappedindex", null);
+        file.deleteOnExit();
+        MappedIndexWriter.write(source, new TestRecordSerializer(), file);
+        MappedIndex<TestRecord> index = newIndex(file);
+        long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+        int absent = 0;
+        int absentCandidates = 0;
+        for (int i = 0; i < N_BASES; i++) {
+            long z = bases[i];
+            int n = index.ancestorCandidates(z, SpaceImpl.Z_MIN, candidates);
+            assertEquals(z, candidates[0]);
+            int c = 1;
+            for (long ancestor = SpaceImpl.parent(z);
+                 SpaceImpl.length(ancestor) > 0;
+                 ancestor = SpaceImpl.parent(ancestor)) {
+                if (c < n && candidates[c] == ancestor) {
+                    c++;
+                    if (SpaceImpl.length(ancestor) % 4 != 0) {
+                        absentCandidates++;
+                    }
+                } else {
+                    assertTrue(SpaceImpl.length(ancestor) % 4 != 0);
+                }
+                if (SpaceImpl.length(ancestor) % 4 != 0) {
+                    absent++;
+                }
+            }
+            assertEquals(n, c);
+        }
+        assertTrue(absentCandidates < absent / 10);
+        file.delete();
+    }
+
+    private MappedIndex<TestRecord> newIndex(File file) throws IOException
+    {
+        return
+            new MappedIndex<TestRecord>(file, new TestRecordSerializer())
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private void load(Index<TestRecord> index, int n, int copies) throws IOException, InterruptedException
+    {
+        for (int id = 0; id < n; id++) {
+            for (int c = 0; c < copies; c++) {
+                TestRecord record = record(z(id * GAP), id * MAX_COPIES + c);
+                record.spatialObject(new TestSpatialObject(id));
+                index.add(record);
+            }
+        }
+    }
+
+    private List<String> contents(Index<TestRecord> index, long zStart) throws IOException, InterruptedException
+    {
+        List<String> contents = new ArrayList<>();
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(key(index, zStart));
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            contents.add(record.toString());
+        }
+        return contents;
+    }
+
+    private TestRecord record(long z, int id)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(id), id);
+        record.z(z);
+        return record;
+    }
+
+    private TestRecord key(Index<TestRecord> index, long z)
+    {
+        TestRecord key = index.newKeyRecord();
+        key.z(z);
+        return key;
+    }
+
+    private static final int GAP = 10;
+    private static final int MAX_COPIES = 3;
+    private static final int N_BASES = 200;
+}
@@ -0,0 +1,122 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.navigable;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NavigableMapIndexTest extends IndexTestBase
+{
+    // Scans of records with many duplicate z-values, with updates during the scans. The expected records are
+    // computed by a TreeSet.
+    @Test
+    public void testDuplicatesWithUpdates() throws Exception
+    {
+        Random random = new Random(451);
+        TreeSet<TestRecord> expected = new TreeSet<>(TestRecord.COMPARATOR);
+        Index<TestRecord> index = newIndex();
+        int soid = 0;
+        while (soid < N_RECORDS) {
+            add(expected, index, soid++, random.nextInt(N_DISTINCT_Z));
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        for (int i = 0; i < N_PROBES; i++) {
+            key.z(z(random.nextInt(N_DISTINCT_Z + 1)));
+            cursor.goTo(key);
+            TestRecord last = null;
+            int n = random.nextInt(30);
+            for (int j = 0; j < n; j++) {
+                TestRecord expectedRecord = last == null ? expected.ceiling(key) : expected.higher(last);
+                TestRecord actual = cursor.next();
+                if (expectedRecord == null) {
+                    assertNull(actual);
+                    break;
+                }
+                assertEquals(expectedRecord.z(), actual.z());
+                assertEquals(expectedRecord.soid(), actual.soid());
+                last = expectedRecord;
+                switch (random.nextInt(8)) {
+                    case 0:
+                        assertTrue(cursor.deleteCurrent());
+                        expected.remove(expectedRecord);
+                        break;
+                    case 1:
+                        add(expected, index, soid++, random.nextInt(N_DISTINCT_Z));
+                        break;
+                    case 2:
+                        final int removeSoid = random.nextInt(soid);
+                        Record.Filter<TestRecord> filter =
+                            new Record.Filter<TestRecord>()
+                            {
+                                @Override
+                                public boolean select(TestRecord record)
+                                {
+                                    return record.soid() == removeSoid;
+                                }
+                            };
+                        TestRecord removed = null;
+                        for (TestRecord record : expected) {
+                            if (record.soid() == removeSoid) {
+                                removed = record;
+                            }
+                        }
+                        if (removed == null) {
+                            assertTrue(!index.remove(z(0), filter));
+                        } else {
+                            assertTrue(index.remove(removed.z(), filter));
+                            expected.remove(removed);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return
+            new NavigableMapIndex<TestRecord>(new ConcurrentSkipListMap<Long, List<TestRecord>>(), TestRecord.COMPARATOR)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static void add(TreeSet<TestRecord> expected, Index<TestRecord> index, int soid, long x)
+        throws Exception
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z(x));
+        expected.add(record);
+        index.add(record);
+    }
+
+    private static final int N_RECORDS = 5000;
+    private static final int N_DISTINCT_Z = 300;
+    private static final int N_PROBES = 2000;
+}
@@ -0,0 +1,271 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.pagedbtree;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestRecordSerializer;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PagedBTreeTest extends IndexTestBase
+{
+    @Test
+    public void testReopen() throws Exception
+    {
+        File file = newFile();
+        PagedBTree<TestRecord> index = newIndex(file);
+        for (int id = 0; id < N_RECORDS; id++) {
+            index.add(record(id));
+        }
+        // Remove every other record, freeing pages
+        for (int id = 0; id < N_RECORDS; id += 2) {
+            final int soid = id;
+            index.remove(z(id * GAP),
+                         new Record.Filter<TestRecord>()
+                         {
+                             @Override
+                             public boolean select(TestRecord record)
+                             {
+                                 return record.soid() == soid;
+                             }
+                         });
+        }
+        index.close();
+        index = newIndex(file);
+        assertEquals(N_RECORDS / 2, index.size());
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        for (int id = 1; id < N_RECORDS; id += 2) {
+            TestRecord record = cursor.next();
+            assertEquals(z(id * GAP), record.z());
+            assertEquals(id, record.soid());
+            assertEquals(new TestSpatialObject(id), record.spatialObject());
+        }
+        assertNull(cursor.next());
+        // Add records again, reusing freed pages
+        for (int id = 0; id < N_RECORDS; id += 2) {
+            index.add(record(id));
+        }
+        index.close();
+        index = newIndex(file);
+        assertEquals(N_RECORDS, index.size());
+        cursor = index.cursor();
+        cursor.goTo(key);
+        for (int id = 0; id < N_RECORDS; id++) {
+            assertEquals(id, cursor.next().soid());
+        }
+        assertNull(cursor.next());
+    }
+
+    // Remove records through the index during a scan, emptying and freeing the cursor's leaf, and add records behind
+    // the cursor, possibly reusing freed pages. The cursor must continue from the last record returned.
+    @Test
+    public void testUpdateDuringScan() throws Exception
+    {
+        PagedBTree<TestRecord> index = newIndex(newFile());
+        for (int id = 0; id < N_RECORDS; id++) {
+            index.add(record(id, z(id / Z_COPIES * GAP)));
+        }
+        Set<Integer> remaining = new HashSet<>();
+        for (int id = 0; id < N_RECORDS; id++) {
+            remaining.add(id);
+        }
+        int addedId = N_RECORDS;
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        int expectedId = 0;
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            int id = record.soid();
+            assertEquals(expectedId, id);
+            if (id % 20 == 0 && id > 0) {
+                // Remove the record just returned, and the ones following it.
+                for (int removeId = id; removeId < Math.min(id + 10, N_RECORDS); removeId++) {
+                    assertTrue(index.remove(z(removeId / Z_COPIES * GAP), soidFilter(removeId)));
+                    remaining.remove(removeId);
+                }
+                index.add(record(addedId, z(0)));
+                remaining.add(addedId++);
+                expectedId = id + 10;
+            } else if (id % 20 == 15) {
+                index.add(record(addedId, z(0)));
+                remaining.add(addedId++);
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                remaining.remove(id);
+                expectedId = id + 1;
+            } else {
+                expectedId = id + 1;
+            }
+        }
+        assertEquals(N_RECORDS, expectedId);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        Set<Integer> actual = new HashSet<>();
+        while ((record = cursor.next()) != null) {
+            actual.add(record.soid());
+        }
+        assertEquals(remaining, actual);
+    }
+
+    // Index contents are the ancestors, with lengths that are multiples of 4, of random z-values. Ancestors with
+    // lengths that are 2 mod 4 are added, filling and rebuilding the filter, and then removed. ancestorCandidates
+    // must return every ancestor present, and once the file is reopened, few that are absent.
+    @Test
+    public void testAncestorCandidates() throws Exception
+    {
+        Random random = new Random(441);
+        long[] bases = new long[N_BASES];
+        File file = newFile();
+        PagedBTree<TestRecord> index = newIndex(file);
+        for (int i = 0; i < N_BASES; i++) {
+            bases[i] = SpaceImpl.z(random.nextLong() & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+            for (long z = bases[i]; SpaceImpl.length(z) > 0; z = SpaceImpl.parent(z)) {
+                if (SpaceImpl.length(z) % 2 == 0) {
+                    index.add(record(i, z));
+                }
+            }
+        }
+        for (int i = 0; i < N_BASES; i++) {
+            for (long z = bases[i]; SpaceImpl.length(z) > 0; z = SpaceImpl.parent(z)) {
+                if (SpaceImpl.length(z) % 4 == 2) {
+                    assertTrue(index.remove(z, soidFilter(i)));
+                }
+            }
+        }
+        checkAncestorCandidates(index, bases);
+        index.close();
+        index = newIndex(file);
+        int[] counts = checkAncestorCandidates(index, bases);
+        assertTrue(counts[1] < counts[0] / 10);
+    }
+
+    @After
+    public void closeIndexes() throws IOException
+    {
+        for (PagedBTree<TestRecord> index : indexes) {
+            index.close();
+        }
+        indexes.clear();
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex() throws IOException
+    {
+        return newIndex(newFile());
+    }
+
+    private PagedBTree<TestRecord> newIndex(File file) throws IOException
+    {
+        // Small pages and a small buffer pool exercise splits and eviction.
+        PagedBTree<TestRecord> index =
+            new PagedBTree<TestRecord>(file, new TestRecordSerializer(), PAGE_SIZE, BUFFER_POOL_PAGES)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        indexes.add(index);
+        return index;
+    }
+
+    // Checks that ancestorCandidates returns every ancestor present, i.e. those with lengths that are multiples of 4.
+    // Returns the number of absent ancestors, and the number of them returned as candidates.
+    private int[] checkAncestorCandidates(PagedBTree<TestRecord> index, long[] bases)
+    {
+        long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+        int absent = 0;
+        int absentCandidates = 0;
+        for (long z : bases) {
+            int n = index.ancestorCandidates(z, SpaceImpl.Z_MIN, candidates);
+            assertEquals(z, candidates[0]);
+            int c = 1;
+            for (long ancestor = SpaceImpl.parent(z);
+                 SpaceImpl.length(ancestor) > 0;
+                 ancestor = SpaceImpl.parent(ancestor)) {
+                if (c < n && candidates[c] == ancestor) {
+                    c++;
+                    if (SpaceImpl.length(ancestor) % 4 != 0) {
+                        absentCandidates++;
+                    }
+                } else {
+                    assertTrue(SpaceImpl.length(ancestor) % 4 != 0);
+                }
+                if (SpaceImpl.length(ancestor) % 4 != 0) {
+                    absent++;
+                }
+            }
+            assertEquals(n, c);
+        }
+        return new int[]{absent, absentCandidates};
+    }
+
+    private File newFile() throws IOException
+    {
+        File file = File.createTempFile("pagedbtree", null);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private TestRecord record(int id)
+    {
+        return record(id, z(id * GAP));
+    }
+
+    private TestRecord record(int id, long z)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(id), id);
+        record.z(z);
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final int N_BASES = 200;
+    private static final int GAP = 10;
+    private static final int Z_COPIES = 3;
+    private static final int PAGE_SIZE = 256;
+    private static final int BUFFER_POOL_PAGES = 8;
+    private static final int N_RECORDS = 1000;
+
+    private final List<PagedBTree<TestRecord>> indexes = new ArrayList<>();
+}
@@ -0,0 +1,207 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.radixtrie;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.pairSet;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RadixTrieTest extends IndexTestBase
+{
+    // z-values of all lengths, many of them nested, with duplicates. Check scans, goTo, and ancestorCandidates,
+    // and check them again after removing half the records.
+    @Test
+    public void testNestedZValues() throws Exception
+    {
+        Random random = new Random(438);
+        long[] bases = new long[N_BASES];
+        for (int i = 0; i < N_BASES; i++) {
+            bases[i] = SpaceImpl.z(random.nextLong() & (~0L << 7), SpaceImpl.MAX_Z_BITS);
+        }
+        RadixTrie<TestRecord> index = newIndex();
+        List<TestRecord> expected = new ArrayList<>();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(ancestor(bases[random.nextInt(N_BASES)], random.nextInt(SpaceImpl.MAX_Z_BITS + 1)));
+            index.add(record);
+            expected.add(record);
+        }
+        Collections.sort(expected, RECORD_ORDER);
+        check(index, expected, random, bases);
+        // Remove every other record, alternating between index.remove and deleteCurrent.
+        List<TestRecord> remaining = new ArrayList<>();
+        Set<Integer> deleteWithCursor = new HashSet<>();
+        for (int i = 0; i < expected.size(); i++) {
+            final TestRecord record = expected.get(i);
+            if (i % 2 == 0) {
+                remaining.add(record);
+            } else if (i % 4 == 1) {
+                assertTrue(index.remove(record.z(),
+                                        new Record.Filter<TestRecord>()
+                                        {
+                                            @Override
+                                            public boolean select(TestRecord r)
+                                            {
+                                                return r.soid() == record.soid();
+                                            }
+                                        }));
+            } else {
+                deleteWithCursor.add(record.soid());
+            }
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (deleteWithCursor.remove(record.soid())) {
+                assertTrue(cursor.deleteCurrent());
+            }
+        }
+        assertTrue(deleteWithCursor.isEmpty());
+        check(index, remaining, random, bases);
+    }
+
+    // A spatial join using a RadixTrie, whose ancestorCandidates omits absent ancestors, must find the same pairs
+    // as a spatial join using an index that doesn't.
+    @Test
+    public void testSpatialJoin() throws Exception
+    {
+        Random random = new Random(439);
+        SpatialIndex<TestRecord> trieBoxes = SpatialIndex.newSpatialIndex(SPACE, newIndex());
+        SpatialIndex<TestRecord> treeBoxes = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        SpatialIndex<TestRecord> queryBoxes = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int soid = 0; soid < N_BOXES; soid++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            trieBoxes.add(box, recordFactory.setup(box, soid));
+            treeBoxes.add(box, recordFactory.setup(box, soid));
+            box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            queryBoxes.add(box, recordFactory.setup(box, soid));
+        }
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+        Set<Long> expected = pairSet(spatialJoin.iterator(treeBoxes, queryBoxes));
+        assertTrue(!expected.isEmpty());
+        assertEquals(expected, pairSet(spatialJoin.iterator(trieBoxes, queryBoxes)));
+        assertEquals(pairSet(spatialJoin.iterator(queryBoxes, treeBoxes)),
+                     pairSet(spatialJoin.iterator(queryBoxes, trieBoxes)));
+    }
+
+    @Override
+    protected RadixTrie<TestRecord> newIndex()
+    {
+        return
+            new RadixTrie<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private void check(RadixTrie<TestRecord> index, List<TestRecord> expected, Random random, long[] bases)
+        throws Exception
+    {
+        // Full scan
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        for (TestRecord expectedRecord : expected) {
+            TestRecord record = cursor.next();
+            assertEquals(expectedRecord.z(), record.z());
+            assertEquals(expectedRecord.soid(), record.soid());
+        }
+        assertNull(cursor.next());
+        // goTo and ancestorCandidates
+        TreeSet<Long> zs = new TreeSet<>();
+        for (TestRecord record : expected) {
+            zs.add(record.z());
+        }
+        long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+        for (int i = 0; i < N_PROBES; i++) {
+            long z = ancestor(bases[random.nextInt(N_BASES)], random.nextInt(SpaceImpl.MAX_Z_BITS + 1));
+            key.z(z);
+            cursor.goTo(key);
+            TestRecord record = cursor.next();
+            Long expectedZ = zs.ceiling(z);
+            if (expectedZ == null) {
+                assertNull(record);
+            } else {
+                assertEquals(expectedZ.longValue(), record.z());
+            }
+            long zLowerBound = ancestor(z, random.nextInt(SpaceImpl.length(z) + 1));
+            int n = index.ancestorCandidates(z, zLowerBound, candidates);
+            assertEquals(z, candidates[0]);
+            int c = 1;
+            long ancestor = z;
+            while (SpaceImpl.length(ancestor) > 0 && (ancestor = SpaceImpl.parent(ancestor)) > zLowerBound) {
+                if (zs.contains(ancestor)) {
+                    assertEquals(ancestor, candidates[c++]);
+                }
+            }
+            assertEquals(c, n);
+        }
+    }
+
+    private static long ancestor(long z, int length)
+    {
+        while (SpaceImpl.length(z) > length) {
+            z = SpaceImpl.parent(z);
+        }
+        return z;
+    }
+
+    private static final int N_BASES = 20;
+    private static final int N_RECORDS = 5000;
+    private static final int N_PROBES = 1000;
+    private static final int N_BOXES = 1000;
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final int MAX_BOX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+    private static final Comparator<TestRecord> RECORD_ORDER =
+        new Comparator<TestRecord>()
+        {
+            @Override
+            public int compare(TestRecord r, TestRecord s)
+            {
+                return
+                    r.z() < s.z() ? -1 :
+                    r.z() > s.z() ? 1 :
+                    r.soid() - s.soid();
+            }
+        };
+}
@@ -0,0 +1,283 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.readahead;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.geophile.z.index.IndexTestBase.z;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.pairSet;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadAheadIndexTest
+{
+    @After
+    public void after()
+    {
+        executor.shutdownNow();
+    }
+
+    // Compare a ReadAheadIndex with the index it wraps, for short scans following goTo, with prefetch hints that
+    // are sometimes correct.
+    @Test
+    public void testCursor() throws Exception
+    {
+        Random random = new Random(442);
+        SortedArray<TestRecord> expectedIndex = newSortedArray();
+        ReadAheadIndex<TestRecord> index = new ReadAheadIndex<>(newSortedArray(), executor, BATCH_SIZE);
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(random.nextInt(N_RECORDS)));
+            expectedIndex.add(record);
+            index.add(record);
+        }
+        Cursor<TestRecord> expectedCursor = expectedIndex.cursor();
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        long[] xs = new long[N_PROBES + 1];
+        for (int i = 1; i <= N_PROBES; i++) {
+            int step = random.nextInt(4);
+            xs[i] = step == 0 ? random.nextInt(N_RECORDS + 10) : xs[i - 1] + random.nextInt(BATCH_SIZE << step);
+        }
+        for (int i = 1; i < N_PROBES; i++) {
+            key.z(z(xs[i]));
+            expectedCursor.goTo(key);
+            cursor.goTo(key);
+            int n = random.nextInt(2 * BATCH_SIZE);
+            for (int j = 0; j < n; j++) {
+                if (random.nextInt(10) == 0) {
+                    // A correct hint, or a random one
+                    cursor.prefetch(z(random.nextBoolean() ? xs[i + 1] : random.nextInt(N_RECORDS)));
+                }
+                TestRecord expected = expectedCursor.next();
+                TestRecord actual = cursor.next();
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.z(), actual.z());
+                    assertEquals(expected.soid(), actual.soid());
+                }
+            }
+        }
+    }
+
+    // Hints that are never followed by a goTo to the hinted z-value must not open more cursors on the wrapped index.
+    @Test
+    public void testMissedHints() throws Exception
+    {
+        Random random = new Random(444);
+        final int[] cursors = new int[1];
+        SortedArray<TestRecord> wrappedIndex =
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+
+                @Override
+                public Cursor<TestRecord> cursor()
+                {
+                    cursors[0]++;
+                    return super.cursor();
+                }
+            };
+        SortedArray<TestRecord> expectedIndex = newSortedArray();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(soid));
+            wrappedIndex.add(record);
+            expectedIndex.add(record);
+        }
+        ReadAheadIndex<TestRecord> index = new ReadAheadIndex<>(wrappedIndex, executor, BATCH_SIZE);
+        Cursor<TestRecord> expectedCursor = expectedIndex.cursor();
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        for (int i = 0; i < N_PROBES; i++) {
+            cursor.prefetch(z(random.nextInt(N_RECORDS)));
+            key.z(z(random.nextInt(N_RECORDS)));
+            expectedCursor.goTo(key);
+            cursor.goTo(key);
+            TestRecord expected = expectedCursor.next();
+            TestRecord actual = cursor.next();
+            assertEquals(expected.soid(), actual.soid());
+        }
+        // One cursor for read ahead, and one for prefetching.
+        assertTrue(cursors[0] <= 2);
+    }
+
+    // Delete records during a scan, including records in a batch retrieved before the delete.
+    @Test
+    public void testDeleteCurrent() throws Exception
+    {
+        Random random = new Random(445);
+        SortedArray<TestRecord> expectedIndex = newSortedArray();
+        ReadAheadIndex<TestRecord> index = new ReadAheadIndex<>(newSortedArray(), executor, BATCH_SIZE);
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(random.nextInt(N_RECORDS)));
+            expectedIndex.add(record);
+            index.add(record);
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(z(0));
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 3 == 0) {
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                assertTrue(expectedIndex.remove(record.z(), soidFilter(record.soid())));
+            }
+        }
+        Cursor<TestRecord> expectedCursor = expectedIndex.cursor();
+        expectedCursor.goTo(key);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        TestRecord expected;
+        while ((expected = expectedCursor.next()) != null) {
+            TestRecord actual = cursor.next();
+            assertEquals(expected.z(), actual.z());
+            assertEquals(expected.soid(), actual.soid());
+        }
+        assertNull(cursor.next());
+    }
+
+    @Test
+    public void testSpatialJoin() throws Exception
+    {
+        Random random = new Random(443);
+        SpatialIndex<TestRecord> readAheadBoxes =
+            SpatialIndex.newSpatialIndex(SPACE, new ReadAheadIndex<>(newSortedArray(), executor, BATCH_SIZE));
+        SpatialIndex<TestRecord> treeBoxes = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        SpatialIndex<TestRecord> readAheadQueryBoxes =
+            SpatialIndex.newSpatialIndex(SPACE, new ReadAheadIndex<>(newSortedArray(), executor, BATCH_SIZE));
+        SpatialIndex<TestRecord> queryBoxes = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int soid = 0; soid < N_BOXES; soid++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            readAheadBoxes.add(box, recordFactory.setup(box, soid));
+            treeBoxes.add(box, recordFactory.setup(box, soid));
+            box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            readAheadQueryBoxes.add(box, recordFactory.setup(box, soid));
+            queryBoxes.add(box, recordFactory.setup(box, soid));
+        }
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+        Set<Long> expected = pairSet(spatialJoin.iterator(treeBoxes, queryBoxes));
+        assertTrue(!expected.isEmpty());
+        assertEquals(expected, pairSet(spatialJoin.iterator(readAheadBoxes, queryBoxes)));
+        assertEquals(expected, pairSet(spatialJoin.iterator(readAheadBoxes, readAheadQueryBoxes)));
+    }
+
+    // A spatial join sends a hint only when a random access is expected, not on every sequential step.
+    @Test
+    public void testSpatialJoinHints() throws Exception
+    {
+        Random random = new Random(446);
+        final int[] hints = new int[1];
+        final int[] randomAccesses = new int[1];
+        ReadAheadIndex<TestRecord> readAheadIndex =
+            new ReadAheadIndex<TestRecord>(newSortedArray(), executor, BATCH_SIZE)
+            {
+                @Override
+                public Cursor<TestRecord> cursor() throws IOException, InterruptedException
+                {
+                    return
+                        new ReadAheadCursor<TestRecord>(this)
+                        {
+                            @Override
+                            public void goTo(TestRecord key) throws IOException, InterruptedException
+                            {
+                                randomAccesses[0]++;
+                                super.goTo(key);
+                            }
+
+                            @Override
+                            public void prefetch(long z)
+                            {
+                                hints[0]++;
+                                super.prefetch(z);
+                            }
+                        };
+                }
+            };
+        SpatialIndex<TestRecord> readAheadBoxes = SpatialIndex.newSpatialIndex(SPACE, readAheadIndex);
+        SpatialIndex<TestRecord> queryBoxes = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int soid = 0; soid < N_BOXES / 10; soid++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            readAheadBoxes.add(box, recordFactory.setup(box, soid));
+        }
+        for (int soid = 0; soid < N_BOXES; soid++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            queryBoxes.add(box, recordFactory.setup(box, soid));
+        }
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+        assertTrue(!pairSet(spatialJoin.iterator(readAheadBoxes, queryBoxes)).isEmpty());
+        assertTrue(hints[0] > 0);
+        assertTrue(hints[0] <= randomAccesses[0]);
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static SortedArray<TestRecord> newSortedArray()
+    {
+        return
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static final int N_RECORDS = 10000;
+    private static final int N_PROBES = 2000;
+    private static final int BATCH_SIZE = 16;
+    private static final int N_BOXES = 1000;
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final int MAX_BOX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+}
@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SkipListIndexTest extends IndexTestBase
+{
+    // Writers add and then remove records while readers scan. Each writer adds N_RECORDS records, all with
+    // distinct soids, and removes the odd-numbered ones.
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        final SkipListIndex<TestRecord> index = newIndex();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < N_WRITERS; w++) {
+            final int writer = w;
+            writers.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        for (int i = 0; i < N_RECORDS; i++) {
+                            index.add(record(i, soid(writer, i)));
+                        }
+                        for (int i = 1; i < N_RECORDS; i += 2) {
+                            final int soid = soid(writer, i);
+                            assertTrue(index.remove(z(i),
+                                                    new Record.Filter<TestRecord>()
+                                                    {
+                                                        @Override
+                                                        public boolean select(TestRecord record)
+                                                        {
+                                                            return record.soid() == soid;
+                                                        }
+                                                    }));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < N_READERS; r++) {
+            readers.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try {
+                        while (writing.get()) {
+                            // Records must be returned in z-order.
+                            Cursor<TestRecord> cursor = index.cursor();
+                            cursor.goTo(key(index, SpaceImpl.Z_MIN));
+                            long previousZ = SpaceImpl.Z_MIN;
+                            TestRecord record;
+                            while ((record = cursor.next()) != null) {
+                                assertTrue(record.z() >= previousZ);
+                                previousZ = record.z();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(N_WRITERS * N_RECORDS / 2, index.size());
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(key(index, SpaceImpl.Z_MIN));
+        for (int i = 0; i < N_RECORDS; i += 2) {
+            for (int w = 0; w < N_WRITERS; w++) {
+                TestRecord record = cursor.next();
+                assertEquals(z(i), record.z());
+                assertEquals(0, record.soid() % N_RECORDS % 2);
+            }
+        }
+        assertNull(cursor.next());
+    }
+
+    @Override
+    protected SkipListIndex<TestRecord> newIndex()
+    {
+        return
+            new SkipListIndex<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private TestRecord record(int i, int soid)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z(i));
+        return record;
+    }
+
+    private TestRecord key(SkipListIndex<TestRecord> index, long z)
+    {
+        TestRecord key = index.newKeyRecord();
+        key.z(z);
+        return key;
+    }
+
+    private static int soid(int writer, int i)
+    {
+        return writer * N_RECORDS + i;
+    }
+
+    private static long z(int i)
+    {
+        return SpaceImpl.z(((long) i * GAP) << SpaceImpl.LENGTH_BITS, SpaceImpl.MAX_Z_BITS);
+    }
+
+    private static final int N_WRITERS = 4;
+    private static final int N_READERS = 2;
+    private static final int N_RECORDS = 10000;
+    private static final int GAP = 10;
+}
@@ -4,25 +4,254 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/.
  */
 
-/*
- * This Source Code Form is subject to the terms of the Mozilla Public
- * License, v. 2.0. If a copy of the MPL was not distributed with this
- * file, You can obtain one at http://mozilla.org/MPL/2.0/.
- */
-
 package com.geophile.z.index.sortedarray;
 
+import com.geophile.z.Cursor;
 import com.geophile.z.Index;
+import com.geophile.z.Record;
 import com.geophile.z.TestRecord;
 import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class SortedArrayTest extends IndexTestBase
 {
+    // Interleave adds with scans, so that records are added to the sorted tail, and the tail is merged.
+    @Test
+    public void testInterleavedAddAndScan() throws Exception
+    {
+        Random random = new Random(419);
+        Index<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(random.nextInt(N_DISTINCT_Z)));
+            index.add(record);
+            if (soid % 10 == 0) {
+                checkOrder(index, soid + 1);
+            }
+        }
+        checkOrder(index, N_RECORDS);
+    }
+
+    // Delete some records using a cursor, leaving tombstones, and then more through the index, causing compaction.
+    @Test
+    public void testDeleteAndCompact() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(soid));
+            index.add(record);
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 10 == 0) {
+                assertTrue(cursor.deleteCurrent());
+                // The record has already been deleted
+                assertTrue(!cursor.deleteCurrent());
+            }
+        }
+        checkOrder(index, N_RECORDS - N_RECORDS / 10);
+        for (int soid = 1; soid < N_RECORDS; soid += 10) {
+            final int removeSoid = soid;
+            assertTrue(index.remove(z(soid),
+                                    new Record.Filter<TestRecord>()
+                                    {
+                                        @Override
+                                        public boolean select(TestRecord record)
+                                        {
+                                            return record.soid() == removeSoid;
+                                        }
+                                    }));
+        }
+        checkOrder(index, N_RECORDS - 2 * (N_RECORDS / 10));
+        cursor = index.cursor();
+        cursor.goTo(key);
+        while ((record = cursor.next()) != null) {
+            assertTrue(record.soid() % 10 > 1);
+        }
+    }
+
+    // Compare goTo results of each search method with BINARY, for z-values that are clustered and have duplicates.
+    // Remove records through the index during a scan, causing compaction, and add records behind the cursor,
+    // causing merges of the tail. The cursor must continue from the last record returned.
+    @Test
+    public void testUpdateDuringScan() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        Set<Integer> remaining = new HashSet<>();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            index.add(record(soid, z(soid / Z_COPIES)));
+            remaining.add(soid);
+        }
+        int addedSoid = N_RECORDS;
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        int expectedSoid = 0;
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            int soid = record.soid();
+            assertEquals(expectedSoid, soid);
+            if (soid % 20 == 0 && soid > 0) {
+                // Remove the record just returned, and the ones following it.
+                for (int removeSoid = soid; removeSoid < Math.min(soid + 10, N_RECORDS); removeSoid++) {
+                    assertTrue(index.remove(z(removeSoid / Z_COPIES), soidFilter(removeSoid)));
+                    remaining.remove(removeSoid);
+                }
+                index.add(record(addedSoid, z(0)));
+                remaining.add(addedSoid++);
+                expectedSoid = soid + 10;
+            } else if (soid % 20 == 15) {
+                index.add(record(addedSoid, z(0)));
+                remaining.add(addedSoid++);
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                remaining.remove(soid);
+                expectedSoid = soid + 1;
+            } else {
+                expectedSoid = soid + 1;
+            }
+        }
+        assertEquals(N_RECORDS, expectedSoid);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        Set<Integer> actual = new HashSet<>();
+        while ((record = cursor.next()) != null) {
+            actual.add(record.soid());
+        }
+        assertEquals(remaining, actual);
+    }
+
+    @Test
+    public void testSearch() throws Exception
+    {
+        for (SortedArray.Search search : SortedArray.Search.values()) {
+            Random random = new Random(420);
+            SortedArray<TestRecord> binary = newIndex(SortedArray.Search.BINARY);
+            SortedArray<TestRecord> index = newIndex(search);
+            for (int soid = 0; soid < N_RECORDS * 10; soid++) {
+                TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+                // Half the records are in a dense cluster, the rest are spread out.
+                long x = random.nextBoolean() ? random.nextInt(N_DISTINCT_Z) : random.nextInt(Integer.MAX_VALUE);
+                record.z(z(x));
+                binary.add(record);
+                index.add(record);
+            }
+            Cursor<TestRecord> binaryCursor = binary.cursor();
+            Cursor<TestRecord> cursor = index.cursor();
+            TestRecord key = binary.newKeyRecord();
+            for (int i = 0; i < N_RECORDS; i++) {
+                long x = random.nextBoolean() ? random.nextInt(N_DISTINCT_Z) : random.nextInt(Integer.MAX_VALUE);
+                key.z(z(x) + random.nextInt(3) - 1);
+                binaryCursor.goTo(key);
+                cursor.goTo(key);
+                TestRecord expected = binaryCursor.next();
+                TestRecord actual = cursor.next();
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.soid(), actual.soid());
+                }
+            }
+            checkOrder(index, N_RECORDS * 10);
+        }
+    }
+
+    // Compare goToForward with goTo, for keys that are mostly a short distance ahead, with records in the tail,
+    // and deleted records.
+    @Test
+    public void testGoToForward() throws Exception
+    {
+        Random random = new Random(421);
+        SortedArray<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(random.nextInt(N_RECORDS)));
+            index.add(record);
+            if (soid == N_RECORDS / 2) {
+                // Sort, so that the remaining records go to the tail.
+                index.cursor();
+            }
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 7 == 0) {
+                cursor.deleteCurrent();
+            }
+        }
+        Cursor<TestRecord> expectedCursor = index.cursor();
+        cursor = index.cursor();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        cursor.next();
+        long x = 0;
+        for (int i = 0; i < N_RECORDS; i++) {
+            int step = random.nextInt(10);
+            x = step == 0 ? random.nextInt(N_RECORDS) : x + random.nextInt(1 << step);
+            key.z(z(x));
+            expectedCursor.goTo(key);
+            cursor.goToForward(key);
+            for (int j = 0; j < 3; j++) {
+                TestRecord expected = expectedCursor.next();
+                TestRecord actual = cursor.next();
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.soid(), actual.soid());
+                }
+            }
+        }
+    }
+
+    // An index of points contains z-values of one length, so a spatial join never needs to search for ancestors.
+    @Test
+    public void testPointZLengths() throws Exception
+    {
+        SortedArray<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(soid));
+            index.add(record);
+        }
+        assertEquals(1L << SpaceImpl.MAX_Z_BITS, index.zLengths());
+        long[] candidates = new long[SpaceImpl.MAX_Z_BITS];
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            assertEquals(1, index.ancestorCandidates(z(soid), SpaceImpl.Z_MIN, candidates));
+            assertEquals(z(soid), candidates[0]);
+        }
+        index.reset();
+        assertEquals(0, index.zLengths());
+    }
+
     @Override
-    protected Index<TestRecord> newIndex()
+    protected SortedArray<TestRecord> newIndex()
+    {
+        return newIndex(SortedArray.Search.BINARY);
+    }
+
+    private SortedArray<TestRecord> newIndex(SortedArray.Search search)
     {
         return
-            new SortedArray<TestRecord>()
+            new SortedArray<TestRecord>(search)
             {
                 @Override
                 public TestRecord newRecord()
@@ -31,4 +260,50 @@ public class SortedArrayTest extends IndexTestBase
                 }
             };
     }
+
+    // Records must be in z-order, and records with the same z-value must be in insertion (soid) order.
+    private static TestRecord record(int soid, long z)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z);
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private void checkOrder(Index<TestRecord> index, int expectedCount) throws Exception
+    {
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord previous = null;
+        TestRecord record;
+        int count = 0;
+        while ((record = cursor.next()) != null) {
+            if (previous != null) {
+                assertTrue(previous.z() < record.z() ||
+                           previous.z() == record.z() && previous.soid() < record.soid());
+            }
+            previous = record;
+            count++;
+        }
+        assertEquals(expectedCount, count);
+        assertNull(cursor.next());
+    }
+
+    private static final int N_RECORDS = 5000;
+    private static final int Z_COPIES = 3;
+    private static final int N_DISTINCT_Z = 500;
 }
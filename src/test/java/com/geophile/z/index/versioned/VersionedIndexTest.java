@@ -0,0 +1,197 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.versioned;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VersionedIndexTest extends IndexTestBase
+{
+    // A batch creates a new version that shares unaffected blocks with the previous one, which is unchanged.
+    @Test
+    public void testStructuralSharing() throws Exception
+    {
+        VersionedIndex<TestRecord> index = newIndex();
+        VersionedIndex<TestRecord>.Batch batch = index.newBatch();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            batch.add(record(soid, soid));
+        }
+        Version<TestRecord> before = batch.commit();
+        assertSame(before, index.current());
+        assertTrue(before.blocks() >= N_RECORDS / (2 * BLOCK_SIZE));
+        // Update the first and last records
+        batch = index.newBatch();
+        batch.add(record(N_RECORDS, 0));
+        batch.remove(z(N_RECORDS - 1), soidFilter(N_RECORDS - 1));
+        Version<TestRecord> after = batch.commit();
+        assertEquals(before.blocks(), after.blocks());
+        for (int b = 1; b < after.blocks() - 1; b++) {
+            assertSame(before.block(b), after.block(b));
+        }
+        assertTrue(before.block(0) != after.block(0));
+        assertTrue(before.block(before.blocks() - 1) != after.block(after.blocks() - 1));
+        // The old version is unchanged
+        checkSoids(before, 0, N_RECORDS);
+        List<Integer> expected = new ArrayList<>();
+        expected.add(0);
+        expected.add(N_RECORDS);
+        for (int soid = 1; soid < N_RECORDS - 1; soid++) {
+            expected.add(soid);
+        }
+        assertEquals(expected, soids(after));
+        // A positioned cursor isn't affected by later updates, until it is repositioned.
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(z(1));
+        cursor.goTo(key);
+        index.remove(z(1), soidFilter(1));
+        assertEquals(1, cursor.next().soid());
+        cursor.goTo(key);
+        assertEquals(2, cursor.next().soid());
+        // A cursor on a Version always sees that Version.
+        cursor = after.cursor();
+        cursor.goTo(key);
+        assertEquals(1, cursor.next().soid());
+        try {
+            after.add(record(0, 0));
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    // Readers scan the current version while a writer commits batches. Each batch adds BATCH_SIZE records, so each
+    // version seen by a reader must contain a multiple of BATCH_SIZE records, in z-order.
+    @Test
+    public void testConcurrentReaders() throws Exception
+    {
+        final VersionedIndex<TestRecord> index = newIndex();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < N_READERS; r++) {
+            readers.add(
+                new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            do {
+                                List<Integer> soids = soids(index.current());
+                                assertEquals(0, soids.size() % BATCH_SIZE);
+                            } while (writing.get());
+                        } catch (Throwable e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        int soid = 0;
+        for (int i = 0; i < N_BATCHES; i++) {
+            VersionedIndex<TestRecord>.Batch batch = index.newBatch();
+            for (int j = 0; j < BATCH_SIZE; j++) {
+                // Spread out the z-values, so that batches update many blocks
+                batch.add(record(soid, (soid * 7919L) % (N_BATCHES * BATCH_SIZE)));
+                soid++;
+            }
+            batch.commit();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(N_BATCHES * BATCH_SIZE, soids(index.current()).size());
+    }
+
+    @Override
+    protected VersionedIndex<TestRecord> newIndex()
+    {
+        return
+            new VersionedIndex<TestRecord>(BLOCK_SIZE)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static TestRecord record(int soid, long x)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z(x));
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static void checkSoids(Index<TestRecord> index, int start, int end) throws Exception
+    {
+        List<Integer> expected = new ArrayList<>();
+        for (int soid = start; soid < end; soid++) {
+            expected.add(soid);
+        }
+        assertEquals(expected, soids(index));
+    }
+
+    // Returns the soids of the index's records, checking that they are in z-order.
+    private static List<Integer> soids(Index<TestRecord> index) throws Exception
+    {
+        List<Integer> soids = new ArrayList<>();
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        long zPrevious = SpaceImpl.Z_MIN;
+        while ((record = cursor.next()) != null) {
+            assertTrue(record.z() >= zPrevious);
+            zPrevious = record.z();
+            soids.add(record.soid());
+        }
+        return soids;
+    }
+
+    private static final int N_RECORDS = 1000;
+    private static final int BLOCK_SIZE = 16;
+    private static final int N_READERS = 4;
+    private static final int N_BATCHES = 200;
+    private static final int BATCH_SIZE = 10;
+}
@@ -0,0 +1,243 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedZArrayTest extends IndexTestBase
+{
+    // A dense index: consecutive z-values, at the maximum length, differ by small deltas.
+    @Test
+    public void testDense() throws Exception
+    {
+        CompressedZArray<TestRecord> index = newIndex();
+        for (int id = 0; id < N_RECORDS; id++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(id), id);
+            record.z(z(id));
+            index.add(record);
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        assertTrue(index.zBytes() * 4 <= N_RECORDS * 8L);
+        TestRecord key = index.newKeyRecord();
+        // Full scan
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        for (int id = 0; id < N_RECORDS; id++) {
+            TestRecord record = cursor.next();
+            assertEquals(z(id), record.z());
+            assertEquals(id, record.soid());
+        }
+        assertNull(cursor.next());
+        // goTo each block boundary and its neighbors
+        for (int id = 1; id < N_RECORDS; id += CompressedZArray.BLOCK_SIZE) {
+            for (int start = id - 1; start <= id + 1; start++) {
+                key.z(z(start));
+                cursor.goTo(key);
+                assertEquals(start, cursor.next().soid());
+            }
+        }
+    }
+
+    // Rounds of adds, scattered over the index or clustered in one z-range, interleaved with scans and removals.
+    // Each build merges pending records into the blocks they belong to, and moves the records of other blocks.
+    @Test
+    public void testIncrementalBuild() throws Exception
+    {
+        Random random = new Random(341);
+        CompressedZArray<TestRecord> index = newIndex();
+        // Expected contents: z-value and soid of each record, in z-order, and then in order of insertion.
+        List<long[]> expected = new ArrayList<>();
+        int soid = 0;
+        for (int round = 0; round < N_ROUNDS; round++) {
+            int clusterStart = random.nextInt(N_DISTINCT_Z);
+            int adds = 1 + random.nextInt(2 * CompressedZArray.BLOCK_SIZE);
+            for (int i = 0; i < adds; i++) {
+                int x = round % 2 == 0
+                        ? random.nextInt(N_DISTINCT_Z)
+                        : Math.min(N_DISTINCT_Z - 1, clusterStart + random.nextInt(10));
+                TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+                record.z(z(x));
+                index.add(record);
+                expected.add(new long[]{z(x), soid});
+                soid++;
+            }
+            Collections.sort(expected,
+                             new Comparator<long[]>()
+                             {
+                                 @Override
+                                 public int compare(long[] a, long[] b)
+                                 {
+                                     return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+                                 }
+                             });
+            // Remove some records, through the index and through a cursor. Occasionally remove enough to cause
+            // deleted records to be purged.
+            int removes = round % 10 == 9 ? expected.size() / 2 : adds / 4;
+            for (int i = 0; i < removes; i++) {
+                final long[] victim = expected.remove(random.nextInt(expected.size()));
+                assertTrue(index.remove(victim[0],
+                                        new Record.Filter<TestRecord>()
+                                        {
+                                            @Override
+                                            public boolean select(TestRecord record)
+                                            {
+                                                return record.soid() == victim[1];
+                                            }
+                                        }));
+            }
+            Cursor<TestRecord> cursor = index.cursor();
+            TestRecord key = index.newKeyRecord();
+            long[] victim = expected.remove(random.nextInt(expected.size()));
+            key.z(victim[0]);
+            cursor.goTo(key);
+            TestRecord record;
+            while ((record = cursor.next()).soid() != victim[1]) {
+                assertEquals(victim[0], record.z());
+            }
+            assertTrue(cursor.deleteCurrent());
+            // Full scan
+            cursor = index.cursor();
+            key.z(SpaceImpl.Z_MIN);
+            cursor.goTo(key);
+            for (long[] zSoid : expected) {
+                record = cursor.next();
+                assertEquals(zSoid[0], record.z());
+                assertEquals(zSoid[1], record.soid());
+            }
+            assertNull(cursor.next());
+        }
+    }
+
+    // Add and remove records through the index during a scan. A remove following an add rebuilds the index,
+    // merging the added records and purging deleted ones, which moves records.
+    // The cursor must continue from the last record returned.
+    @Test
+    public void testUpdateDuringScan() throws Exception
+    {
+        CompressedZArray<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_SCAN_RECORDS; soid++) {
+            index.add(record(soid, z(soid / Z_COPIES * GAP)));
+        }
+        Set<Integer> remaining = new HashSet<>();
+        for (int soid = 0; soid < N_SCAN_RECORDS; soid++) {
+            remaining.add(soid);
+        }
+        int addedSoid = N_SCAN_RECORDS;
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        int expectedSoid = 0;
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            int soid = record.soid();
+            assertEquals(expectedSoid, soid);
+            if (soid % 20 == 0 && soid > 0) {
+                // Remove the record just returned, and the ones following it.
+                for (int removeSoid = soid; removeSoid < Math.min(soid + 10, N_SCAN_RECORDS); removeSoid++) {
+                    assertTrue(index.remove(z(removeSoid / Z_COPIES * GAP), soidFilter(removeSoid)));
+                    remaining.remove(removeSoid);
+                }
+                expectedSoid = soid + 10;
+            } else if (soid % 20 == 15) {
+                // Add a record preceding the cursor's position, and then delete the record just returned.
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                remaining.remove(soid);
+                expectedSoid = soid + 1;
+            } else if (soid % 10 == 7) {
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                expectedSoid = soid + 1;
+            } else {
+                expectedSoid = soid + 1;
+            }
+        }
+        assertEquals(N_SCAN_RECORDS, expectedSoid);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        Set<Integer> actual = new HashSet<>();
+        while ((record = cursor.next()) != null) {
+            actual.add(record.soid());
+        }
+        assertEquals(remaining, actual);
+    }
+
+    @Override
+    protected CompressedZArray<TestRecord> newIndex()
+    {
+        return
+            new CompressedZArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+
+                @Override
+                protected long recordId(TestRecord record)
+                {
+                    return record.soid();
+                }
+
+                @Override
+                protected void setupRecord(TestRecord record, long recordId)
+                {
+                    record.soid((int) recordId);
+                    record.spatialObject(new TestSpatialObject(recordId));
+                }
+            };
+    }
+
+    private static TestRecord record(int soid, long z)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z);
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final int N_RECORDS = 100000;
+    private static final int N_ROUNDS = 100;
+    private static final int N_DISTINCT_Z = 2000;
+    private static final int N_SCAN_RECORDS = 1000;
+    private static final int Z_COPIES = 3;
+    private static final int GAP = 10;
+}
@@ -0,0 +1,164 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.zarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZArrayTest extends IndexTestBase
+{
+    @Test
+    public void testDeleteCurrent() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+            record.z(z(soid));
+            index.add(record);
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 10 == 0) {
+                assertTrue(cursor.deleteCurrent());
+                // The record has already been deleted
+                assertTrue(!cursor.deleteCurrent());
+            }
+        }
+        cursor = index.cursor();
+        cursor.goTo(key);
+        int count = 0;
+        while ((record = cursor.next()) != null) {
+            assertTrue(record.soid() % 10 != 0);
+            count++;
+        }
+        assertEquals(N_RECORDS - N_RECORDS / 10, count);
+    }
+
+    // Add and remove records through the index during a scan. Adds leave the array unsorted, and removes shift
+    // records.
+    // The cursor must continue from the last record returned.
+    @Test
+    public void testUpdateDuringScan() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            index.add(record(soid, z(soid / Z_COPIES * GAP)));
+        }
+        Set<Integer> remaining = new HashSet<>();
+        for (int soid = 0; soid < N_RECORDS; soid++) {
+            remaining.add(soid);
+        }
+        int addedSoid = N_RECORDS;
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        int expectedSoid = 0;
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            int soid = record.soid();
+            assertEquals(expectedSoid, soid);
+            if (soid % 20 == 0 && soid > 0) {
+                // Remove the record just returned, and the ones following it.
+                for (int removeSoid = soid; removeSoid < Math.min(soid + 10, N_RECORDS); removeSoid++) {
+                    assertTrue(index.remove(z(removeSoid / Z_COPIES * GAP), soidFilter(removeSoid)));
+                    remaining.remove(removeSoid);
+                }
+                expectedSoid = soid + 10;
+            } else if (soid % 20 == 15) {
+                // Add a record preceding the cursor's position, and then delete the record just returned.
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                assertTrue(cursor.deleteCurrent());
+                assertTrue(!cursor.deleteCurrent());
+                remaining.remove(soid);
+                expectedSoid = soid + 1;
+            } else if (soid % 10 == 7) {
+                index.add(record(addedSoid, z(soid / Z_COPIES * GAP - 1)));
+                remaining.add(addedSoid++);
+                expectedSoid = soid + 1;
+            } else {
+                expectedSoid = soid + 1;
+            }
+        }
+        assertEquals(N_RECORDS, expectedSoid);
+        cursor = index.cursor();
+        cursor.goTo(key);
+        Set<Integer> actual = new HashSet<>();
+        while ((record = cursor.next()) != null) {
+            actual.add(record.soid());
+        }
+        assertEquals(remaining, actual);
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return
+            new ZArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+
+                @Override
+                protected long recordId(TestRecord record)
+                {
+                    return record.soid();
+                }
+
+                @Override
+                protected void setupRecord(TestRecord record, long recordId)
+                {
+                    record.soid((int) recordId);
+                    record.spatialObject(new TestSpatialObject(recordId));
+                }
+            };
+    }
+
+    private static TestRecord record(int soid, long z)
+    {
+        TestRecord record = new TestRecord(new TestSpatialObject(soid), soid);
+        record.z(z);
+        return record;
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final int N_RECORDS = 1000;
+    private static final int Z_COPIES = 3;
+    private static final int GAP = 10;
+}
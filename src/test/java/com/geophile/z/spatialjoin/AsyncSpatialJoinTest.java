@@ -0,0 +1,164 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.AsyncIndex;
+import com.geophile.z.AsyncSpatialJoin;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.async.AsyncIndexAdapter;
+import com.geophile.z.index.async.SimulatedLatencyAsyncIndex;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.pair;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.pairSet;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncSpatialJoinTest
+{
+    @After
+    public void after()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testInMemory() throws Exception
+    {
+        Random random = new Random(431);
+        SortedArray<TestRecord> data = newSortedArray();
+        SortedArray<TestRecord> query = newSortedArray();
+        load(random, data, N_BOXES);
+        load(random, query, N_BOXES);
+        AsyncIndex<TestRecord> asyncData = new AsyncIndexAdapter<>(data);
+        AsyncIndex<TestRecord> asyncQuery = new AsyncIndexAdapter<>(query);
+        // Without a filter
+        Set<Long> expected = pairSet(SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE)
+                                                .iterator(SpatialIndex.newSpatialIndex(SPACE, data),
+                                                          SpatialIndex.newSpatialIndex(SPACE, query)));
+        assertTrue(!expected.isEmpty());
+        Set<Long> actual = new HashSet<>();
+        AsyncSpatialJoin.newAsyncSpatialJoin().join(asyncData, asyncQuery, collector(actual)).get();
+        assertEquals(expected, actual);
+        // With a filter
+        expected = pairSet(SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE, FILTER)
+                                      .iterator(SpatialIndex.newSpatialIndex(SPACE, data),
+                                                SpatialIndex.newSpatialIndex(SPACE, query)));
+        assertTrue(!expected.isEmpty());
+        actual.clear();
+        AsyncSpatialJoin.newAsyncSpatialJoin(FILTER).join(asyncData, asyncQuery, collector(actual)).get();
+        assertEquals(expected, actual);
+        // Empty input
+        actual.clear();
+        AsyncSpatialJoin.newAsyncSpatialJoin()
+                        .join(asyncData, new AsyncIndexAdapter<>(newSortedArray()), collector(actual)).get();
+        assertTrue(actual.isEmpty());
+    }
+
+    // Many concurrent joins against high-latency indexes, completed by a small number of threads.
+    @Test
+    public void testConcurrentJoinsWithLatency() throws Exception
+    {
+        Random random = new Random(432);
+        SortedArray<TestRecord> data = newSortedArray();
+        load(random, data, N_BOXES);
+        AsyncIndex<TestRecord> asyncData =
+            new SimulatedLatencyAsyncIndex<>(new AsyncIndexAdapter<>(data), scheduler, 200, 10);
+        List<Set<Long>> expected = new ArrayList<>();
+        List<Set<Long>> actual = new ArrayList<>();
+        List<CompletableFuture<Void>> joins = new ArrayList<>();
+        for (int j = 0; j < N_JOINS; j++) {
+            SortedArray<TestRecord> query = newSortedArray();
+            load(random, query, 1 + random.nextInt(3));
+            expected.add(pairSet(SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE, FILTER)
+                                            .iterator(SpatialIndex.newSpatialIndex(SPACE, data),
+                                                      SpatialIndex.newSpatialIndex(SPACE, query))));
+            Set<Long> pairs = new HashSet<>();
+            actual.add(pairs);
+            AsyncIndex<TestRecord> asyncQuery =
+                new SimulatedLatencyAsyncIndex<>(new AsyncIndexAdapter<>(query), scheduler, 200, 10);
+            joins.add(AsyncSpatialJoin.newAsyncSpatialJoin(FILTER).join(asyncData, asyncQuery, collector(pairs)));
+        }
+        for (int j = 0; j < N_JOINS; j++) {
+            joins.get(j).get();
+            assertEquals(expected.get(j), actual.get(j));
+        }
+    }
+
+    private void load(Random random, SortedArray<TestRecord> index, int nBoxes) throws Exception
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, index);
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int i = 0; i < nBoxes; i++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            spatialIndex.add(box, recordFactory.setup(box, soid++));
+        }
+    }
+
+    private static SortedArray<TestRecord> newSortedArray()
+    {
+        return
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static AsyncSpatialJoin.Output<TestRecord, TestRecord> collector(final Set<Long> pairs)
+    {
+        return
+            new AsyncSpatialJoin.Output<TestRecord, TestRecord>()
+            {
+                @Override
+                public void add(TestRecord left, TestRecord right)
+                {
+                    pairs.add(pair(left, right));
+                }
+            };
+    }
+
+    private static final int N_BOXES = 1000;
+    private static final int N_JOINS = 500;
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final int MAX_BOX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+    private static final BoxOverlapTester OVERLAP_TESTER = new BoxOverlapTester();
+    private static final SpatialJoin.Filter<TestRecord, TestRecord> FILTER =
+        new SpatialJoin.Filter<TestRecord, TestRecord>()
+        {
+            @Override
+            public boolean overlap(TestRecord r, TestRecord s)
+            {
+                return OVERLAP_TESTER.overlap(r.spatialObject(), s.spatialObject());
+            }
+        };
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private int soid = 0;
+}
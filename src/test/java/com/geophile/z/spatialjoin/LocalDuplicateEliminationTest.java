@@ -0,0 +1,125 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.sortedPairs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Duplicates.EXCLUDE_LOCAL must return the same pairs as Duplicates.EXCLUDE.
+
+public class LocalDuplicateEliminationTest
+{
+    @Test
+    public void testBoxes() throws Exception
+    {
+        Random random = new Random(501);
+        for (int maxBoxSize : MAX_BOX_SIZES) {
+            SpatialIndex<TestRecord> left = spatialIndex(SpatialIndex.Options.DEFAULT);
+            SpatialIndex<TestRecord> right = spatialIndex(SpatialIndex.Options.DEFAULT);
+            for (int i = 0; i < N_OBJECTS; i++) {
+                add(left, randomBox(random, SPACE_SIZE, maxBoxSize));
+                add(right, randomBox(random, SPACE_SIZE, maxBoxSize));
+            }
+            checkJoins(left, right);
+        }
+    }
+
+    @Test
+    public void testSelfJoin() throws Exception
+    {
+        Random random = new Random(502);
+        SpatialIndex<TestRecord> boxes = spatialIndex(SpatialIndex.Options.DEFAULT);
+        for (int i = 0; i < N_OBJECTS; i++) {
+            add(boxes, randomBox(random, SPACE_SIZE, MAX_BOX_SIZES[1]));
+        }
+        checkJoins(boxes, boxes);
+    }
+
+    @Test
+    public void testPointsAndBoxes() throws Exception
+    {
+        Random random = new Random(503);
+        SpatialIndex<TestRecord> points = spatialIndex(SpatialIndex.Options.SINGLE_CELL);
+        SpatialIndex<TestRecord> boxes = spatialIndex(SpatialIndex.Options.DEFAULT);
+        for (int i = 0; i < N_OBJECTS; i++) {
+            add(points, new Point(random.nextInt(SPACE_SIZE), random.nextInt(SPACE_SIZE)));
+            add(boxes, randomBox(random, SPACE_SIZE, MAX_BOX_SIZES[2]));
+        }
+        checkJoins(points, boxes);
+        checkJoins(boxes, points);
+    }
+
+    // A box approximated by a single z-value may contain several z-values of a box in the other input.
+    @Test
+    public void testSingleCellBoxes() throws Exception
+    {
+        Random random = new Random(504);
+        SpatialIndex<TestRecord> singleCellBoxes = spatialIndex(SpatialIndex.Options.SINGLE_CELL);
+        SpatialIndex<TestRecord> boxes = spatialIndex(SpatialIndex.Options.DEFAULT);
+        for (int i = 0; i < N_OBJECTS; i++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZES[2]);
+            singleCellBoxes.add(box, recordFactory.setup(box, soid++), 1);
+            add(boxes, randomBox(random, SPACE_SIZE, MAX_BOX_SIZES[1]));
+        }
+        checkJoins(singleCellBoxes, boxes);
+        checkJoins(boxes, singleCellBoxes);
+    }
+
+    private void checkJoins(SpatialIndex<TestRecord> left, SpatialIndex<TestRecord> right) throws Exception
+    {
+        List<Long> expected =
+            sortedPairs(SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE).iterator(left, right));
+        assertTrue(!expected.isEmpty());
+        List<Long> actual =
+            sortedPairs(SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE_LOCAL).iterator(left, right));
+        assertEquals(expected, actual);
+    }
+
+    private void add(SpatialIndex<TestRecord> spatialIndex, SpatialObject spatialObject) throws Exception
+    {
+        spatialIndex.add(spatialObject, recordFactory.setup(spatialObject, soid++));
+    }
+
+    private static SpatialIndex<TestRecord> spatialIndex(SpatialIndex.Options options) throws Exception
+    {
+        SortedArray<TestRecord> index =
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        return SpatialIndex.newSpatialIndex(SPACE, index, options);
+    }
+
+    private static final int N_OBJECTS = 1000;
+    private static final int[] MAX_BOX_SIZES = {1_000, 20_000, 100_000};
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+
+    private final TestRecord.Factory recordFactory = new TestRecord.Factory();
+    private int soid = 0;
+}
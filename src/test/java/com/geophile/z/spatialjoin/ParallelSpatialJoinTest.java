@@ -0,0 +1,152 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.sortedPairs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSpatialJoinTest
+{
+    @After
+    public void after()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBoxes() throws Exception
+    {
+        Random random = new Random(471);
+        SpatialIndex<TestRecord> left = spatialIndex(SpatialIndex.Options.DEFAULT);
+        SpatialIndex<TestRecord> right = spatialIndex(SpatialIndex.Options.DEFAULT);
+        loadBoxes(random, left, N_OBJECTS);
+        loadBoxes(random, right, N_OBJECTS);
+        checkJoins(left, right);
+    }
+
+    @Test
+    public void testPointsAndBoxes() throws Exception
+    {
+        Random random = new Random(472);
+        SpatialIndex<TestRecord> points = spatialIndex(SpatialIndex.Options.SINGLE_CELL);
+        SpatialIndex<TestRecord> boxes = spatialIndex(SpatialIndex.Options.DEFAULT);
+        loadPoints(random, points, N_OBJECTS * 10);
+        loadBoxes(random, boxes, N_OBJECTS);
+        checkJoins(points, boxes);
+        checkJoins(boxes, points);
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        Random random = new Random(473);
+        SpatialIndex<TestRecord> boxes = spatialIndex(SpatialIndex.Options.DEFAULT);
+        SpatialIndex<TestRecord> empty = spatialIndex(SpatialIndex.Options.DEFAULT);
+        loadBoxes(random, boxes, N_OBJECTS);
+        for (int partitions : PARTITIONS) {
+            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
+            assertTrue(sortedPairs(spatialJoin.parallelIterator(boxes, empty, executor, partitions)).isEmpty());
+            assertTrue(sortedPairs(spatialJoin.parallelIterator(empty, boxes, executor, partitions)).isEmpty());
+            assertTrue(sortedPairs(spatialJoin.parallelIterator(empty, empty, executor, partitions)).isEmpty());
+        }
+    }
+
+    // Parallel output must be the same as sequential output, counting duplicates, for any number of partitions.
+    private void checkJoins(SpatialIndex<TestRecord> left, SpatialIndex<TestRecord> right) throws Exception
+    {
+        for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+            for (SpatialJoin.Filter<TestRecord, TestRecord> filter : Arrays.asList(null, FILTER)) {
+                SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(duplicates, filter);
+                List<Long> expected = sortedPairs(spatialJoin.iterator(left, right));
+                assertTrue(!expected.isEmpty());
+                for (int partitions : PARTITIONS) {
+                    List<Long> actual = sortedPairs(spatialJoin.parallelIterator(left, right, executor, partitions));
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    private void loadBoxes(Random random, SpatialIndex<TestRecord> spatialIndex, int n) throws Exception
+    {
+        for (int i = 0; i < n; i++) {
+            add(spatialIndex, randomBox(random, SPACE_SIZE, MAX_BOX_SIZE));
+        }
+    }
+
+    private void loadPoints(Random random, SpatialIndex<TestRecord> spatialIndex, int n) throws Exception
+    {
+        for (int i = 0; i < n; i++) {
+            add(spatialIndex, new Point(random.nextInt(SPACE_SIZE), random.nextInt(SPACE_SIZE)));
+        }
+    }
+
+    private void add(SpatialIndex<TestRecord> spatialIndex, SpatialObject spatialObject) throws Exception
+    {
+        spatialIndex.add(spatialObject, recordFactory.setup(spatialObject, soid++));
+    }
+
+    private static SpatialIndex<TestRecord> spatialIndex(SpatialIndex.Options options) throws Exception
+    {
+        SortedArray<TestRecord> index =
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        return SpatialIndex.newSpatialIndex(SPACE, index, options);
+    }
+
+    private static final int N_OBJECTS = 1000;
+    private static final int[] PARTITIONS = {1, 2, 3, 8, 64, 10_000};
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final int MAX_BOX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+    private static final BoxOverlapTester BOX_OVERLAP_TESTER = new BoxOverlapTester();
+    private static final BoxPointOverlapTester BOX_POINT_OVERLAP_TESTER = new BoxPointOverlapTester();
+    private static final SpatialJoin.Filter<TestRecord, TestRecord> FILTER =
+        new SpatialJoin.Filter<TestRecord, TestRecord>()
+        {
+            @Override
+            public boolean overlap(TestRecord r, TestRecord s)
+            {
+                SpatialObject a = r.spatialObject();
+                SpatialObject b = s.spatialObject();
+                return
+                    a instanceof Point ? BOX_POINT_OVERLAP_TESTER.overlap(b, a) :
+                    b instanceof Point ? BOX_POINT_OVERLAP_TESTER.overlap(a, b) :
+                    BOX_OVERLAP_TESTER.overlap(a, b);
+            }
+        };
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final TestRecord.Factory recordFactory = new TestRecord.Factory();
+    private int soid = 0;
+}
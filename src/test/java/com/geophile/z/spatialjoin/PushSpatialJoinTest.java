@@ -0,0 +1,145 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.pair;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.randomBox;
+import static com.geophile.z.spatialjoin.SpatialJoinTestUtil.sortedPairs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PushSpatialJoinTest
+{
+    @Test
+    public void testSameAsIterator() throws Exception
+    {
+        Random random = new Random(481);
+        SpatialIndex<TestRecord> left = spatialIndex();
+        SpatialIndex<TestRecord> right = spatialIndex();
+        loadBoxes(random, left, N_BOXES);
+        loadBoxes(random, right, N_BOXES);
+        for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+            for (SpatialJoin.Filter<TestRecord, TestRecord> filter : Arrays.asList(null, FILTER)) {
+                SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(duplicates, filter);
+                List<Long> expected = sortedPairs(spatialJoin.iterator(left, right));
+                assertTrue(!expected.isEmpty());
+                List<Long> actual = new ArrayList<>();
+                assertTrue(spatialJoin.join(left, right, collector(actual, Integer.MAX_VALUE)));
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEarlyTermination() throws Exception
+    {
+        Random random = new Random(482);
+        SpatialIndex<TestRecord> left = spatialIndex();
+        SpatialIndex<TestRecord> right = spatialIndex();
+        loadBoxes(random, left, N_BOXES);
+        loadBoxes(random, right, N_BOXES);
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
+        int total = sortedPairs(spatialJoin.iterator(left, right)).size();
+        assertTrue(total > 10);
+        for (int limit : new int[]{1, 2, total / 2, total - 1}) {
+            List<Long> actual = new ArrayList<>();
+            assertFalse(spatialJoin.join(left, right, collector(actual, limit)));
+            assertEquals(limit, actual.size());
+        }
+        List<Long> actual = new ArrayList<>();
+        assertTrue(spatialJoin.join(left, right, collector(actual, total + 1)));
+        assertEquals(total, actual.size());
+    }
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        Random random = new Random(483);
+        SpatialIndex<TestRecord> boxes = spatialIndex();
+        SpatialIndex<TestRecord> empty = spatialIndex();
+        loadBoxes(random, boxes, N_BOXES);
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
+        List<Long> actual = new ArrayList<>();
+        assertTrue(spatialJoin.join(boxes, empty, collector(actual, Integer.MAX_VALUE)));
+        assertTrue(spatialJoin.join(empty, boxes, collector(actual, Integer.MAX_VALUE)));
+        assertTrue(actual.isEmpty());
+    }
+
+    // Collects pairs, asking for the join to stop once limit pairs have been collected.
+    private static SpatialJoin.PairConsumer<TestRecord, TestRecord> collector(final List<Long> pairs, final int limit)
+    {
+        return
+            new SpatialJoin.PairConsumer<TestRecord, TestRecord>()
+            {
+                @Override
+                public boolean accept(TestRecord left, TestRecord right)
+                {
+                    assertTrue(pairs.size() < limit);
+                    pairs.add(pair(left, right));
+                    return pairs.size() < limit;
+                }
+            };
+    }
+
+    private void loadBoxes(Random random, SpatialIndex<TestRecord> spatialIndex, int n) throws Exception
+    {
+        for (int i = 0; i < n; i++) {
+            Box box = randomBox(random, SPACE_SIZE, MAX_BOX_SIZE);
+            spatialIndex.add(box, recordFactory.setup(box, soid++));
+        }
+    }
+
+    private static SpatialIndex<TestRecord> spatialIndex() throws Exception
+    {
+        SortedArray<TestRecord> index =
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        return SpatialIndex.newSpatialIndex(SPACE, index);
+    }
+
+    private static final int N_BOXES = 1000;
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final int MAX_BOX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+    private static final BoxOverlapTester OVERLAP_TESTER = new BoxOverlapTester();
+    private static final SpatialJoin.Filter<TestRecord, TestRecord> FILTER =
+        new SpatialJoin.Filter<TestRecord, TestRecord>()
+        {
+            @Override
+            public boolean overlap(TestRecord r, TestRecord s)
+            {
+                return OVERLAP_TESTER.overlap(r.spatialObject(), s.spatialObject());
+            }
+        };
+
+    private final TestRecord.Factory recordFactory = new TestRecord.Factory();
+    private int soid = 0;
+}
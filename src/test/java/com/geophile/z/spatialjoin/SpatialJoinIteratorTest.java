@@ -0,0 +1,82 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpatialJoinIteratorTest
+{
+    // Many copies of a large box on the left, and a point inside it on the right. Exiting the point combines it
+    // with every copy of the large box in the left nest. That output must be generated as the iterator is consumed,
+    // not all at once.
+    @Test
+    public void testLazyExitOutput() throws Exception
+    {
+        SpatialIndex<TestRecord> left = spatialIndex();
+        SpatialIndex<TestRecord> right = spatialIndex();
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        int soid = 0;
+        Box large = new Box(100_000, 900_000, 100_000, 900_000);
+        for (int i = 0; i < N_COPIES; i++) {
+            left.add(large, recordFactory.setup(large, soid++));
+        }
+        Point point = new Point(500_000, 500_000);
+        right.add(point, recordFactory.setup(point, soid++));
+        final int[] filterCalls = new int[1];
+        SpatialJoin.Filter<TestRecord, TestRecord> countingFilter =
+            new SpatialJoin.Filter<TestRecord, TestRecord>()
+            {
+                @Override
+                public boolean overlap(TestRecord r, TestRecord s)
+                {
+                    filterCalls[0]++;
+                    return true;
+                }
+            };
+        Iterator<Pair<TestRecord, TestRecord>> iterator =
+            SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE, countingFilter).iterator(left, right);
+        int pairs = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            pairs++;
+            assertEquals(pairs, filterCalls[0]);
+        }
+        assertEquals(N_COPIES, pairs);
+    }
+
+    private static SpatialIndex<TestRecord> spatialIndex() throws Exception
+    {
+        SortedArray<TestRecord> index =
+            new SortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+        return SpatialIndex.newSpatialIndex(SPACE, index);
+    }
+
+    private static final int N_COPIES = 10_000;
+    private static final int SPACE_SIZE = 1_000_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{SPACE_SIZE, SPACE_SIZE},
+                                                      new int[]{20, 20});
+}
@@ -57,7 +57,7 @@ public abstract class SpatialJoinTestBase
             Map<Record, Integer> actual = computeOneManySpatialJoin();
             Set<Record> expected = null;
             if (verify()) {
-                if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
+                if (duplicates != SpatialJoin.Duplicates.INCLUDE) {
                     checkNoDuplicates(actual);
                 }
                 expected = computeExpectedOneManySpatialJoin();
@@ -109,7 +109,7 @@ public abstract class SpatialJoinTestBase
             Map<Pair<TestRecord, TestRecord>, Integer> actual = computeManyManySpatialJoin();
             Set<Pair<TestRecord, TestRecord>> expected = null;
             if (verify()) {
-                if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
+                if (duplicates != SpatialJoin.Duplicates.INCLUDE) {
                     checkNoDuplicates(actual);
                 }
                 expected = computeExpectedManyManySpatialJoin();
@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.TestRecord;
+import com.geophile.z.spatialobject.d2.Box;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Random boxes, and spatial join output reduced to pairs of soids, for tests comparing one spatial join to another.
+
+public class SpatialJoinTestUtil
+{
+    // Returns a box inside [0, spaceSize) x [0, spaceSize), with sides of length 1 .. maxBoxSize.
+    public static Box randomBox(Random random, int spaceSize, int maxBoxSize)
+    {
+        int xSize = 1 + random.nextInt(maxBoxSize);
+        int ySize = 1 + random.nextInt(maxBoxSize);
+        int xLo = random.nextInt(spaceSize - xSize);
+        int yLo = random.nextInt(spaceSize - ySize);
+        return new Box(xLo, xLo + xSize, yLo, yLo + ySize);
+    }
+
+    // Returns the distinct pairs of the spatial join output.
+    public static Set<Long> pairSet(Iterator<Pair<TestRecord, TestRecord>> iterator)
+    {
+        Set<Long> pairs = new HashSet<>();
+        while (iterator.hasNext()) {
+            Pair<TestRecord, TestRecord> pair = iterator.next();
+            pairs.add(pair(pair.left(), pair.right()));
+        }
+        return pairs;
+    }
+
+    // Returns all pairs of the spatial join output, including duplicates, in sorted order.
+    public static List<Long> sortedPairs(Iterator<Pair<TestRecord, TestRecord>> iterator)
+    {
+        List<Long> pairs = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Pair<TestRecord, TestRecord> pair = iterator.next();
+            pairs.add(pair(pair.left(), pair.right()));
+        }
+        Collections.sort(pairs);
+        return pairs;
+    }
+
+    public static long pair(TestRecord left, TestRecord right)
+    {
+        return ((long) left.soid() << 32) | right.soid();
+    }
+}